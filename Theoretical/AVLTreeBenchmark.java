@@ -0,0 +1,484 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// benchmarks every AVLTree operation against java.util.TreeMap.
+// the harness follows JMH's model without depending on it: for every operation, size and key order
+// it runs warmup iterations, then measured iterations, and reports the average time per operation
+// together with the bytes allocated per operation and the collections that ran (what JMH's -prof gc gives).
+// the results are written as JSON in the layout of JMH's -rf json output, so they can be compared between runs.
+//
+// usage: java AVLTreeBenchmark [-op insert,delete,...] [-size 1000,...] [-order RANDOM,...]
+//                              [-impl AVLTree,TreeMap] [-wi 3] [-i 5] [-o results.json]
+public class AVLTreeBenchmark {
+    private static final String[] OPS = {"insert", "delete", "search", "minMax", "keysToArray", "split", "join"};
+    private static final String[] IMPLS = {"AVLTree", "TreeMap"};
+    private static final String INFO = "v";
+    private static final double ZIPF_THETA = 0.99;
+    private static final double Z_999 = 3.291; // normal quantile for JMH's 99.9% score error
+
+    private enum Order { RANDOM, ASCENDING, DESCENDING, ZIPFIAN }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // sums results so the measured calls cannot be optimized away
+    private static volatile long sink;
+    // min and max read the same fields every call, so the tree is reloaded from here each time
+    // to keep the JIT from hoisting the reads out of the loop
+    private static volatile Object target;
+
+    // time and allocation of the timed parts of one iteration
+    private static final class Timer {
+        long nanos;
+        long bytes;
+        private long startNanos;
+        private long startBytes;
+
+        void start() {
+            this.startBytes = THREADS.getCurrentThreadAllocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        void stop() {
+            this.nanos += System.nanoTime() - this.startNanos;
+            this.bytes += THREADS.getCurrentThreadAllocatedBytes() - this.startBytes;
+        }
+    }
+
+    private static final class Result {
+        String benchmark;
+        int size;
+        Order order;
+        double[] nsPerOp;
+        double bytesPerOp;
+        long gcCount;
+        long gcMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] ops = OPS;
+        String[] impls = IMPLS;
+        int[] sizes = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+        Order[] orders = Order.values();
+        int warmups = 3;
+        int iterations = 5;
+        String out = "avltree-benchmark.json";
+        for (int a = 0; a + 1 < args.length; a += 2) {
+            String value = args[a + 1];
+            switch (args[a]) {
+                case "-op": ops = value.split(","); break;
+                case "-impl": impls = value.split(","); break;
+                case "-size": sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "-order": orders = Arrays.stream(value.split(",")).map(Order::valueOf).toArray(Order[]::new); break;
+                case "-wi": warmups = Integer.parseInt(value); break;
+                case "-i": iterations = Integer.parseInt(value); break;
+                case "-o": out = value; break;
+                default: throw new IllegalArgumentException("unknown option " + args[a]);
+            }
+        }
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-22s %10s %-10s %12s %10s %10s%n", "benchmark", "size", "order", "ns/op", "error", "B/op");
+        for (int size : sizes) {
+            for (Order order : orders) {
+                int[] sequence = sequence(size, order);
+                for (String op : ops) {
+                    for (String impl : impls) {
+                        Result result = run(impl, op, size, order, sequence, warmups, iterations);
+                        results.add(result);
+                        System.out.printf("%-22s %10d %-10s %12.2f %10.2f %10.1f%n", result.benchmark, size, order,
+                                mean(result.nsPerOp), error(result.nsPerOp), result.bytesPerOp);
+                    }
+                }
+            }
+        }
+        writeJson(results, out, warmups, iterations);
+        System.out.println("results written to " + out);
+    }
+
+    // the keys an operation goes over, as indices into 0..size-1. zipfian indices repeat (hot keys).
+    private static int[] sequence(int size, Order order) {
+        int[] ret = new int[size];
+        if (order == Order.ASCENDING || order == Order.DESCENDING) {
+            for (int i = 0; i < size; i++) {
+                ret[i] = order == Order.ASCENDING ? i : size - 1 - i;
+            }
+            return ret;
+        }
+        Random random = new Random(size);
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+        if (order == Order.RANDOM) {
+            return permutation;
+        }
+        // Zipfian ranks (Gray et al.), scrambled by the permutation so the hot keys are spread over the tree
+        double zetan = 0;
+        for (int i = 1; i <= size; i++) {
+            zetan += 1 / Math.pow(i, ZIPF_THETA);
+        }
+        double zeta2 = 1 + Math.pow(0.5, ZIPF_THETA);
+        double alpha = 1 / (1 - ZIPF_THETA);
+        double eta = (1 - Math.pow(2.0 / size, 1 - ZIPF_THETA)) / (1 - zeta2 / zetan);
+        for (int i = 0; i < size; i++) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            int rank;
+            if (uz < 1) {
+                rank = 0;
+            }
+            else if (uz < zeta2) {
+                rank = 1;
+            }
+            else {
+                rank = (int) Math.min(size - 1, (long) (size * Math.pow(eta * u - eta + 1, alpha)));
+            }
+            ret[i] = permutation[rank];
+        }
+        return ret;
+    }
+
+    private static int key(int index) {
+        return 2 * index; // even keys, starting at 0 (AVLTree keeps -1 for its virtual node)
+    }
+
+    private static Result run(String impl, String op, int size, Order order, int[] sequence, int warmups, int iterations) {
+        Result result = new Result();
+        result.benchmark = impl + "." + op;
+        result.size = size;
+        result.order = order;
+        result.nsPerOp = new double[iterations];
+        long gcCountBefore = 0;
+        long gcMillisBefore = 0;
+        long bytes = 0;
+        long ops = 0;
+        for (int it = -warmups; it < iterations; it++) {
+            if (it == 0) {
+                gcCountBefore = gcCount();
+                gcMillisBefore = gcMillis();
+            }
+            Timer timer = new Timer();
+            long itOps = impl.equals("AVLTree") ? runAvl(op, size, sequence, timer) : runTreeMap(op, size, sequence, timer);
+            if (it >= 0) {
+                result.nsPerOp[it] = (double) timer.nanos / itOps;
+                bytes += timer.bytes;
+                ops += itOps;
+            }
+        }
+        result.bytesPerOp = (double) bytes / ops;
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcMillis = gcMillis() - gcMillisBefore;
+        return result;
+    }
+
+    // number of single-tree operations per iteration for split and join, which need a fresh tree each time
+    private static int rebuildOps(int size) {
+        return Math.max(1, Math.min(1000, 1_000_000 / size));
+    }
+
+    // number of calls per iteration for keysToArray, so every iteration does about 10^7 steps
+    private static int arrayOps(int size) {
+        return Math.max(1, 10_000_000 / size);
+    }
+
+    private static AVLTree fullAvl(int from, int to) {
+        int[] keys = new int[to - from];
+        String[] infos = new String[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = key(i);
+            infos[i - from] = INFO;
+        }
+        return AVLTree.fromSorted(keys, infos);
+    }
+
+    private static TreeMap<Integer, String> fullMap(int from, int to) {
+        TreeMap<Integer, String> map = new TreeMap<>();
+        for (int i = from; i < to; i++) {
+            map.put(key(i), INFO);
+        }
+        return map;
+    }
+
+    // runs one iteration of op on an AVLTree, timing only the operation. returns the number of operations.
+    private static long runAvl(String op, int size, int[] sequence, Timer timer) {
+        long acc = 0;
+        switch (op) {
+            case "insert": {
+                AVLTree tree = new AVLTree();
+                timer.start();
+                for (int index : sequence) {
+                    acc += tree.insert(key(index), INFO);
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "delete": {
+                AVLTree tree = fullAvl(0, size);
+                timer.start();
+                for (int index : sequence) {
+                    acc += tree.delete(key(index));
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "search": {
+                AVLTree tree = fullAvl(0, size);
+                timer.start();
+                for (int index : sequence) {
+                    String info = tree.search(key(index));
+                    acc += info == null ? 0 : info.length();
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "minMax": {
+                target = fullAvl(0, size);
+                timer.start();
+                for (int i = 0; i < size; i++) {
+                    AVLTree tree = (AVLTree) target;
+                    acc += tree.min().length() + tree.max().length();
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "keysToArray": {
+                AVLTree tree = fullAvl(0, size);
+                int calls = arrayOps(size);
+                timer.start();
+                for (int i = 0; i < calls; i++) {
+                    acc += tree.keysToArray().length;
+                }
+                timer.stop();
+                sink += acc;
+                return calls;
+            }
+            case "split": {
+                int calls = rebuildOps(size);
+                for (int i = 0; i < calls; i++) {
+                    AVLTree tree = fullAvl(0, size);
+                    int x = key(sequence[i]);
+                    timer.start();
+                    AVLTree[] parts = tree.split(x);
+                    timer.stop();
+                    acc += parts[0].size();
+                }
+                sink += acc;
+                return calls;
+            }
+            case "join": {
+                int calls = rebuildOps(size);
+                for (int i = 0; i < calls; i++) {
+                    int middle = sequence[i];
+                    AVLTree smaller = fullAvl(0, middle);
+                    AVLTree bigger = fullAvl(middle + 1, size);
+                    AVLTree.IAVLNode x = smaller.new AVLNode(key(middle), INFO);
+                    timer.start();
+                    acc += smaller.join(x, bigger);
+                    timer.stop();
+                }
+                sink += acc;
+                return calls;
+            }
+            default:
+                throw new IllegalArgumentException("unknown operation " + op);
+        }
+    }
+
+    // the same operations on a TreeMap. split copies the two halves, join copies the smaller map into the bigger.
+    private static long runTreeMap(String op, int size, int[] sequence, Timer timer) {
+        long acc = 0;
+        switch (op) {
+            case "insert": {
+                TreeMap<Integer, String> map = new TreeMap<>();
+                timer.start();
+                for (int index : sequence) {
+                    acc += map.putIfAbsent(key(index), INFO) == null ? 0 : -1;
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "delete": {
+                TreeMap<Integer, String> map = fullMap(0, size);
+                timer.start();
+                for (int index : sequence) {
+                    acc += map.remove(key(index)) == null ? -1 : 0;
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "search": {
+                TreeMap<Integer, String> map = fullMap(0, size);
+                timer.start();
+                for (int index : sequence) {
+                    String info = map.get(key(index));
+                    acc += info == null ? 0 : info.length();
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "minMax": {
+                target = fullMap(0, size);
+                timer.start();
+                for (int i = 0; i < size; i++) {
+                    @SuppressWarnings("unchecked")
+                    TreeMap<Integer, String> map = (TreeMap<Integer, String>) target;
+                    acc += map.firstEntry().getValue().length() + map.lastEntry().getValue().length();
+                }
+                timer.stop();
+                sink += acc;
+                return size;
+            }
+            case "keysToArray": {
+                TreeMap<Integer, String> map = fullMap(0, size);
+                int calls = arrayOps(size);
+                timer.start();
+                for (int i = 0; i < calls; i++) {
+                    int[] keys = new int[map.size()];
+                    int c = 0;
+                    for (int k : map.keySet()) {
+                        keys[c++] = k;
+                    }
+                    acc += keys.length;
+                }
+                timer.stop();
+                sink += acc;
+                return calls;
+            }
+            case "split": {
+                int calls = rebuildOps(size);
+                for (int i = 0; i < calls; i++) {
+                    TreeMap<Integer, String> map = fullMap(0, size);
+                    int x = key(sequence[i]);
+                    timer.start();
+                    TreeMap<Integer, String> smaller = new TreeMap<>(map.headMap(x, false));
+                    TreeMap<Integer, String> bigger = new TreeMap<>(map.tailMap(x, false));
+                    timer.stop();
+                    acc += smaller.size() + bigger.size();
+                }
+                sink += acc;
+                return calls;
+            }
+            case "join": {
+                int calls = rebuildOps(size);
+                for (int i = 0; i < calls; i++) {
+                    int middle = sequence[i];
+                    TreeMap<Integer, String> smaller = fullMap(0, middle);
+                    TreeMap<Integer, String> bigger = fullMap(middle + 1, size);
+                    timer.start();
+                    TreeMap<Integer, String> into = smaller.size() >= bigger.size() ? smaller : bigger;
+                    into.putAll(into == smaller ? bigger : smaller);
+                    into.put(key(middle), INFO);
+                    timer.stop();
+                    acc += into.size();
+                }
+                sink += acc;
+                return calls;
+            }
+            default:
+                throw new IllegalArgumentException("unknown operation " + op);
+        }
+    }
+
+    private static long gcCount() {
+        long ret = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ret += Math.max(0, gc.getCollectionCount());
+        }
+        return ret;
+    }
+
+    private static long gcMillis() {
+        long ret = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ret += Math.max(0, gc.getCollectionTime());
+        }
+        return ret;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    // half width of the 99.9% confidence interval of the mean, like JMH's scoreError
+    private static double error(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        double mean = mean(values);
+        double sq = 0;
+        for (double value : values) {
+            sq += (value - mean) * (value - mean);
+        }
+        return Z_999 * Math.sqrt(sq / (values.length - 1)) / Math.sqrt(values.length);
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : Double.toString(value);
+    }
+
+    private static void writeJson(List<Result> results, String path, int warmups, int iterations) throws IOException {
+        try (PrintWriter out = new PrintWriter(path, "UTF-8")) {
+            out.println("[");
+            for (int r = 0; r < results.size(); r++) {
+                Result result = results.get(r);
+                Map<String, String> params = new TreeMap<>();
+                params.put("order", result.order.name());
+                params.put("size", Integer.toString(result.size));
+                out.println("    {");
+                out.println("        \"benchmark\" : \"AVLTreeBenchmark." + result.benchmark + "\",");
+                out.println("        \"mode\" : \"avgt\",");
+                out.println("        \"threads\" : 1,");
+                out.println("        \"warmupIterations\" : " + warmups + ",");
+                out.println("        \"measurementIterations\" : " + iterations + ",");
+                out.print("        \"params\" : {");
+                int p = 0;
+                for (Map.Entry<String, String> param : params.entrySet()) {
+                    out.print((p++ == 0 ? " " : ", ") + "\"" + param.getKey() + "\" : \"" + param.getValue() + "\"");
+                }
+                out.println(" },");
+                out.println("        \"primaryMetric\" : {");
+                out.println("            \"score\" : " + number(mean(result.nsPerOp)) + ",");
+                out.println("            \"scoreError\" : " + number(error(result.nsPerOp)) + ",");
+                out.println("            \"scoreUnit\" : \"ns/op\",");
+                StringBuilder raw = new StringBuilder();
+                for (int i = 0; i < result.nsPerOp.length; i++) {
+                    raw.append(i == 0 ? "" : ", ").append(result.nsPerOp[i]);
+                }
+                out.println("            \"rawData\" : [ [ " + raw + " ] ]");
+                out.println("        },");
+                out.println("        \"secondaryMetrics\" : {");
+                out.println("            \"gc.alloc.rate.norm\" : { \"score\" : " + number(result.bytesPerOp) + ", \"scoreUnit\" : \"B/op\" },");
+                out.println("            \"gc.count\" : { \"score\" : " + result.gcCount + ", \"scoreUnit\" : \"counts\" },");
+                out.println("            \"gc.time\" : { \"score\" : " + result.gcMillis + ", \"scoreUnit\" : \"ms\" }");
+                out.println("        }");
+                out.println(r + 1 < results.size() ? "    }," : "    }");
+            }
+            out.println("]");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+// checks that an AVLTree holds exactly the entries of a TreeMap and is a valid AVL tree:
+// keys in order, parent pointers, heights, balance factors, subtree sizes, size, empty, min and max.
+// the stress tests call it after every operation and throw AssertionError with where it failed.
+final class AVLTreeChecker {
+
+    private AVLTreeChecker() {
+    }
+
+    static void check(AVLTree tree, TreeMap<Integer, String> expected, String where) {
+        AVLTree.IAVLNode root = tree.getRoot();
+        if (root.isRealNode() && root.getParent() != null) {
+            throw new AssertionError(where + ": the root has a parent");
+        }
+        checkNode(root, null, Long.MIN_VALUE, Long.MAX_VALUE, where);
+        int size = root.isRealNode() ? ((AVLTree.AVLNode) root).getSize() : 0;
+        if (size != expected.size() || tree.size() != expected.size() || tree.empty() != expected.isEmpty()) {
+            throw new AssertionError(where + ": size " + tree.size() + ", root size " + size + ", expected " + expected.size());
+        }
+        int[] keys = tree.keysToArray();
+        String[] infos = tree.infoToArray();
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            if (keys[i] != entry.getKey() || !same(infos[i], entry.getValue())) {
+                throw new AssertionError(where + ": item " + i + " is (" + keys[i] + ", " + infos[i] + "), expected " + entry);
+            }
+            i++;
+        }
+        String min = expected.isEmpty() ? null : expected.firstEntry().getValue();
+        String max = expected.isEmpty() ? null : expected.lastEntry().getValue();
+        if (!same(tree.min(), min) || !same(tree.max(), max)) {
+            throw new AssertionError(where + ": min " + tree.min() + ", max " + tree.max() + ", expected " + min + ", " + max);
+        }
+    }
+
+    // checks the subtree of node, whose keys must be in (lo, hi), and returns its height
+    private static int checkNode(AVLTree.IAVLNode node, AVLTree.IAVLNode parent, long lo, long hi, String where) {
+        if (!node.isRealNode()) {
+            if (node.getHeight() != -1) {
+                throw new AssertionError(where + ": a virtual node has height " + node.getHeight());
+            }
+            return -1;
+        }
+        int key = node.getKey();
+        if (node.getParent() != parent) {
+            throw new AssertionError(where + ": wrong parent at " + key);
+        }
+        if (key <= lo || key >= hi) {
+            throw new AssertionError(where + ": " + key + " is out of order");
+        }
+        int left = checkNode(node.getLeft(), node, lo, key, where);
+        int right = checkNode(node.getRight(), node, key, hi, where);
+        if (Math.abs(left - right) > 1) {
+            throw new AssertionError(where + ": balance factor " + (left - right) + " at " + key);
+        }
+        if (node.getHeight() != Math.max(left, right) + 1) {
+            throw new AssertionError(where + ": height " + node.getHeight() + " at " + key + ", expected " + (Math.max(left, right) + 1));
+        }
+        int size = 1 + subtreeSize(node.getLeft()) + subtreeSize(node.getRight());
+        if (((AVLTree.AVLNode) node).getSize() != size) {
+            throw new AssertionError(where + ": subtree size " + ((AVLTree.AVLNode) node).getSize() + " at " + key + ", expected " + size);
+        }
+        return node.getHeight();
+    }
+
+    private static int subtreeSize(AVLTree.IAVLNode node) {
+        return node.isRealNode() ? ((AVLTree.AVLNode) node).getSize() : 0;
+    }
+
+    static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Random;
+import java.util.TreeMap;
+
+// randomized test of AVLTree.insert and delete against a TreeMap.
+// every tree gets its own key range, so some trees stay small and dense and deletes hit the root,
+// nodes with two children and long retrace paths. after every operation the tree is checked
+// with AVLTreeChecker: order, parents, heights, balance, subtree sizes, size, min and max.
+public class AVLTreeDeleteStress {
+    private static final int TREES = 500;
+    private static final int OPS_PER_TREE = 600;
+    private static final int MAX_RANGE = 1000;
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 3);
+        long deletes = 0;
+        for (int t = 0; t < TREES; t++) {
+            AVLTree tree = new AVLTree();
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int range = 1 + random.nextInt(MAX_RANGE);
+            for (int op = 0; op < OPS_PER_TREE; op++) {
+                int k = random.nextInt(range);
+                String where = "tree " + t + ", op " + op;
+                // more deletes once the tree is full, so it keeps shrinking and growing
+                if (random.nextInt(expected.size() + range) < range) {
+                    String info = "v" + t + "/" + op;
+                    int result = tree.insert(k, info);
+                    if ((result == -1) != expected.containsKey(k)) {
+                        throw new AssertionError(where + ": insert(" + k + ") returned " + result);
+                    }
+                    expected.putIfAbsent(k, info);
+                }
+                else {
+                    int result = tree.delete(k);
+                    if ((result == -1) != !expected.containsKey(k)) {
+                        throw new AssertionError(where + ": delete(" + k + ") returned " + result);
+                    }
+                    expected.remove(k);
+                    deletes++;
+                }
+                AVLTreeChecker.check(tree, expected, where);
+                int q = random.nextInt(range);
+                if (!AVLTreeChecker.same(tree.search(q), expected.get(q))) {
+                    throw new AssertionError(where + ": search(" + q + ") returned " + tree.search(q));
+                }
+            }
+        }
+        System.out.println("ok: " + (long) TREES * OPS_PER_TREE + " operations, " + deletes + " deletes");
+    }
+}
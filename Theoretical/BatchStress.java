@@ -0,0 +1,119 @@
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// randomized test of AVLTree.insertAll and deleteAll against a TreeMap.
+// batches of random size (empty, one key, a few keys, more keys than the tree has) are mixed with
+// single inserts and deletes, on trees with finger search, the hot-key cache and the Bloom filter
+// turned on in turn, so a batch must also leave those in a state the single operations can use.
+// every batch has to report how many keys it inserted or deleted, and after every operation the tree
+// is checked with AVLTreeChecker and with searches for keys in and out of it.
+public class BatchStress {
+    private static final int TREES = 400;
+    private static final int OPS_PER_TREE = 300;
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 9);
+        long batchKeys = 0;
+        for (int t = 0; t < TREES; t++) {
+            AVLTree tree = new AVLTree();
+            switch (t % 4) {
+                case 1:
+                    tree.setFingerSearch(true);
+                    break;
+                case 2:
+                    tree.setCache(16);
+                    break;
+                case 3:
+                    tree.setFilter(true);
+                    break;
+                default:
+                    break;
+            }
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int range = 1 + random.nextInt(2000);
+            for (int op = 0; op < OPS_PER_TREE; op++) {
+                String where = "tree " + t + ", op " + op;
+                int kind = random.nextInt(4);
+                if (kind < 2) {
+                    int[] keys = batch(random, range);
+                    batchKeys += keys.length;
+                    if (kind == 0) {
+                        String[] infos = new String[keys.length];
+                        int inserted = 0;
+                        for (int i = 0; i < keys.length; i++) {
+                            infos[i] = "b" + op + "/" + keys[i];
+                            if (expected.putIfAbsent(keys[i], infos[i]) == null) {
+                                inserted++;
+                            }
+                        }
+                        int count = tree.insertAll(keys, infos).getCount();
+                        if (count != inserted) {
+                            throw new AssertionError(where + ": insertAll of " + keys.length + " keys inserted " + count + ", expected " + inserted);
+                        }
+                    }
+                    else {
+                        int deleted = 0;
+                        for (int key : keys) {
+                            if (expected.remove(key) != null) {
+                                deleted++;
+                            }
+                        }
+                        int count = tree.deleteAll(keys).getCount();
+                        if (count != deleted) {
+                            throw new AssertionError(where + ": deleteAll of " + keys.length + " keys deleted " + count + ", expected " + deleted);
+                        }
+                    }
+                }
+                else {
+                    int k = random.nextInt(range);
+                    if (kind == 2) {
+                        int result = tree.insert(k, "s" + op);
+                        if ((result == -1) != expected.containsKey(k)) {
+                            throw new AssertionError(where + ": insert(" + k + ") returned " + result);
+                        }
+                        expected.putIfAbsent(k, "s" + op);
+                    }
+                    else {
+                        int result = tree.delete(k);
+                        if ((result == -1) != !expected.containsKey(k)) {
+                            throw new AssertionError(where + ": delete(" + k + ") returned " + result);
+                        }
+                        expected.remove(k);
+                    }
+                }
+                AVLTreeChecker.check(tree, expected, where);
+                for (int j = 0; j < 8; j++) {
+                    // keys near the ones in the tree, so the finger, the cache and the filter are used
+                    Integer near = expected.ceilingKey(random.nextInt(range));
+                    int q = near != null && random.nextBoolean() ? near : random.nextInt(range);
+                    if (!AVLTreeChecker.same(tree.search(q), expected.get(q))) {
+                        throw new AssertionError(where + ": search(" + q + ") returned " + tree.search(q) + ", expected " + expected.get(q));
+                    }
+                }
+            }
+        }
+        System.out.println("ok: " + TREES * OPS_PER_TREE + " operations, " + batchKeys + " keys in batches");
+    }
+
+    // sorted distinct keys in [0, range): mostly small batches, sometimes one spanning most of the range
+    private static int[] batch(Random random, int range) {
+        int size;
+        switch (random.nextInt(5)) {
+            case 0:
+                size = random.nextInt(2);
+                break;
+            case 1:
+                size = random.nextInt(range) + 1;
+                break;
+            default:
+                size = random.nextInt(20) + 1;
+                break;
+        }
+        TreeSet<Integer> keys = new TreeSet<>();
+        for (int i = 0; i < size; i++) {
+            keys.add(random.nextInt(range));
+        }
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Random;
+
+// AVLTree with and without its BlockedBloomFilter (AVLTree.setFilter) on one tree of n random keys.
+//   mixed search:     60% present and 40% absent keys
+//   absent search:    only absent keys, the case the filter answers without a descent
+//   duplicate insert: inserts of keys already in the tree, which all return -1
+//   new insert:       inserts of absent keys (undone after the round), where the filter only costs
+// every workload is run ROUNDS times per mode, alternating the modes, and the best round is reported
+// in ns per operation, with the false positive rate the filter measured.
+//   java BloomFilterBenchmark [n] [ops]
+public class BloomFilterBenchmark {
+    private static final int ROUNDS = 5;
+    private static final double PRESENT_SHARE = 0.6;
+
+    private interface Workload {
+        void run(AVLTree tree);
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        Random random = new Random(1);
+        AVLTree tree = new AVLTree();
+        int[] present = new int[n];
+        for (int i = 0; i < n; i++) {
+            int k;
+            do {
+                k = random.nextInt(Integer.MAX_VALUE);
+            } while (tree.insert(k, "value-" + k) == -1);
+            present[i] = k;
+        }
+        int[] absent = new int[ops];
+        for (int i = 0; i < ops; i++) {
+            do {
+                absent[i] = random.nextInt(Integer.MAX_VALUE);
+            } while (tree.search(absent[i]) != null);
+        }
+        int[] mixed = new int[ops];
+        int[] duplicates = new int[ops];
+        for (int i = 0; i < ops; i++) {
+            mixed[i] = random.nextDouble() < PRESENT_SHARE ? present[random.nextInt(n)] : absent[random.nextInt(ops)];
+            duplicates[i] = present[random.nextInt(n)];
+        }
+        System.out.printf("n=%,d, %,d operations per round%n%-18s %14s %14s %8s %9s%n",
+                n, ops, "workload", "off (ns/op)", "filter (ns/op)", "speedup", "fp rate");
+        report("mixed search", tree, ops, t -> {
+            for (int k : mixed) {
+                sink += t.search(k) == null ? 0 : 1;
+            }
+        });
+        report("absent search", tree, ops, t -> {
+            for (int k : absent) {
+                sink += t.search(k) == null ? 0 : 1;
+            }
+        });
+        report("duplicate insert", tree, ops, t -> {
+            for (int k : duplicates) {
+                sink += t.insert(k, "again");
+            }
+        });
+        report("new insert", tree, ops, t -> {
+            for (int k : absent) {
+                sink += t.insert(k, "new");
+            }
+        });
+    }
+
+    private static void report(String name, AVLTree tree, int ops, Workload workload) {
+        double off = Double.MAX_VALUE;
+        double on = Double.MAX_VALUE;
+        double fpRate = 0;
+        int[] before = tree.keysToArray();
+        for (int round = 0; round < ROUNDS; round++) {
+            tree.setFilter(false);
+            off = Math.min(off, time(tree, ops, workload, before));
+            tree.setFilter(true);
+            on = Math.min(on, time(tree, ops, workload, before));
+            fpRate = tree.getFilter().getFalsePositiveRate();
+        }
+        tree.setFilter(false);
+        System.out.printf("%-18s %14.1f %14.1f %7.2fx %8.2f%%%n", name, off, on, off / on, fpRate * 100);
+    }
+
+    // times one round, then deletes the keys the round inserted
+    private static double time(AVLTree tree, int ops, Workload workload, int[] before) {
+        System.gc();
+        long start = System.nanoTime();
+        workload.run(tree);
+        double time = (System.nanoTime() - start) / (double) ops;
+        if (tree.size() != before.length) {
+            int[] after = tree.keysToArray();
+            int[] added = new int[after.length - before.length];
+            for (int a = 0, b = 0, c = 0; a < after.length; a++) {
+                if (b < before.length && before[b] == after[a]) {
+                    b++;
+                }
+                else {
+                    added[c++] = after[a];
+                }
+            }
+            tree.deleteAll(added);
+        }
+        return time;
+    }
+}
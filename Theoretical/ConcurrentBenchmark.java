@@ -0,0 +1,106 @@
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+// measures ConcurrentAVLTree, OptimisticAVLTree and ShardedAVLTree against an AVLTree behind a single synchronized lock,
+// for 1, 8, 32 and 64 threads and read/write mixes of 100/0, 95/5 and 50/50.
+public class ConcurrentBenchmark {
+    private static final int SIZE = 1 << 20;
+    private static final int KEY_RANGE = 2 * SIZE;
+    private static final long MILLIS_PER_RUN = 1000;
+
+    private interface Target {
+        String search(int k);
+        void write(int k, boolean insert);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] threadCounts = {1, 8, 32, 64};
+        int[] readPercents = {100, 95, 50};
+        System.out.println("threads read% stampedOps/s optimisticOps/s shardedOps/s synchronizedOps/s");
+        for (int readPercent : readPercents) {
+            for (int threads : threadCounts) {
+                ConcurrentAVLTree concurrent = new ConcurrentAVLTree(fill());
+                OptimisticAVLTree optimistic = new OptimisticAVLTree();
+                ShardedAVLTree sharded = new ShardedAVLTree();
+                for (int k = 0; k < KEY_RANGE; k += 2) {
+                    optimistic.insert(k, "v");
+                    sharded.insert(k, "v");
+                }
+                AVLTree plain = fill();
+                Target stamped = new Target() {
+                    public String search(int k) { return concurrent.search(k); }
+                    public void write(int k, boolean insert) {
+                        if (insert) concurrent.insert(k, "v"); else concurrent.delete(k);
+                    }
+                };
+                Target optimisticTarget = new Target() {
+                    public String search(int k) { return optimistic.search(k); }
+                    public void write(int k, boolean insert) {
+                        if (insert) optimistic.insert(k, "v"); else optimistic.delete(k);
+                    }
+                };
+                Target shardedTarget = new Target() {
+                    public String search(int k) { return sharded.search(k); }
+                    public void write(int k, boolean insert) {
+                        if (insert) sharded.insert(k, "v"); else sharded.delete(k);
+                    }
+                };
+                Target synced = new Target() {
+                    public synchronized String search(int k) { return plain.search(k); }
+                    public synchronized void write(int k, boolean insert) {
+                        if (insert) plain.insert(k, "v"); else plain.delete(k);
+                    }
+                };
+                System.out.printf("%7d %5d %12.0f %15.0f %12.0f %17.0f%n", threads, readPercent,
+                        run(stamped, threads, readPercent), run(optimisticTarget, threads, readPercent),
+                        run(shardedTarget, threads, readPercent), run(synced, threads, readPercent));
+            }
+        }
+    }
+
+    private static AVLTree fill() {
+        int[] keys = new int[SIZE];
+        String[] infos = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = 2 * i;
+            infos[i] = "v";
+        }
+        return AVLTree.fromSorted(keys, infos);
+    }
+
+    // returns operations per second over all threads
+    private static double run(Target target, int threads, int readPercent) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            new Thread(() -> {
+                Random random = new Random(seed);
+                long cnt = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    int k = random.nextInt(KEY_RANGE);
+                    if (random.nextInt(100) < readPercent) {
+                        target.search(k);
+                    } else {
+                        target.write(k, random.nextBoolean());
+                    }
+                    cnt++;
+                }
+                ops.add(cnt);
+                done.countDown();
+            }).start();
+        }
+        deadline[0] = System.nanoTime() + MILLIS_PER_RUN * 1_000_000;
+        start.countDown();
+        done.await();
+        return ops.sum() * 1000.0 / MILLIS_PER_RUN;
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// ingest throughput of DurableAVLTree under each SyncPolicy against the in-memory AVLTree.
+// every thread runs ops updates on its own key range: 80% inserts and 20% deletes of random keys.
+// EVERY_COMMIT is run with one thread (one fsync per update) and with many (group commit shares fsyncs).
+//   java DurableAVLTreeBenchmark [ops] [dir]
+public class DurableAVLTreeBenchmark {
+    private static final int KEYS_PER_THREAD = 1 << 22;
+
+    private interface Target {
+        void update(Random random, int base);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path dir = Paths.get(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"))
+                .resolve("DurableAVLTreeBenchmark");
+
+        AVLTree plain = new AVLTree();
+        double base = run("in-memory AVLTree", 1, ops, (random, offset) -> update(plain, random, offset));
+        for (DurableAVLTree.SyncPolicy policy : DurableAVLTree.SyncPolicy.values()) {
+            int threads = 1;
+            int n = ops;
+            if (policy == DurableAVLTree.SyncPolicy.EVERY_COMMIT) { // an fsync per update, keep it short
+                n = Math.min(ops, 2_000);
+            }
+            measure(dir, policy, threads, n, base);
+        }
+        measure(dir, DurableAVLTree.SyncPolicy.EVERY_COMMIT, 64, Math.min(ops, 100_000), base);
+        measure(dir, DurableAVLTree.SyncPolicy.INTERVAL, 8, ops, base);
+    }
+
+    private static void measure(Path dir, DurableAVLTree.SyncPolicy policy, int threads, int ops, double base)
+            throws Exception {
+        delete(dir);
+        DurableAVLTree tree = DurableAVLTree.open(dir, policy, DurableAVLTree.DEFAULT_SYNC_INTERVAL_MILLIS,
+                DurableAVLTree.DEFAULT_CHECKPOINT_EVERY);
+        double rate = run("DurableAVLTree " + policy + ", " + threads + " thread" + (threads > 1 ? "s" : ""),
+                threads, ops, (random, offset) -> update(tree, random, offset));
+        System.out.printf("    %.2fx slower than in-memory%n", base / rate);
+        long start = System.nanoTime();
+        tree.close();
+        double close = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        DurableAVLTree reopened = DurableAVLTree.open(dir, policy, DurableAVLTree.DEFAULT_SYNC_INTERVAL_MILLIS,
+                DurableAVLTree.DEFAULT_CHECKPOINT_EVERY);
+        System.out.printf("    close %.3f s, recovery %.3f s (%,d items)%n",
+                close, (System.nanoTime() - start) / 1e9, reopened.size());
+        reopened.close();
+        delete(dir);
+    }
+
+    private static void update(AVLTree tree, Random random, int base) {
+        int k = base + random.nextInt(KEYS_PER_THREAD);
+        if (random.nextInt(5) == 0) {
+            tree.delete(k);
+        }
+        else {
+            tree.insert(k, "value-" + k);
+        }
+    }
+
+    private static void update(DurableAVLTree tree, Random random, int base) {
+        int k = base + random.nextInt(KEYS_PER_THREAD);
+        if (random.nextInt(5) == 0) {
+            tree.delete(k);
+        }
+        else {
+            tree.insert(k, "value-" + k);
+        }
+    }
+
+    // runs ops updates split over the threads and returns updates per second
+    private static double run(String name, int threads, int ops, Target target) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                for (int i = id; i < ops; i += threads) {
+                    target.update(random, id * KEYS_PER_THREAD);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double rate = ops / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("%-40s %,12.0f updates/s%n", name, rate);
+        return rate;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.Random;
+
+// AVLTree with finger search (the default) against the root descent (setFingerSearch(false)).
+//   append:         insert 0, 1, 2, ... n-1
+//   sliding window: insert i and delete i - WINDOW, like a time window over sequence numbers
+//   near sequence:  insert keys that are ascending with a small random jitter, then search them again
+//   random insert / random search: uniform keys, the case finger search can not help
+// every workload is run ROUNDS times per mode, alternating the modes, and the best round is reported
+// in ns per operation. setup (filling the tree) is not timed, and a GC runs before every round.
+//   java FingerSearchBenchmark [n]
+public class FingerSearchBenchmark {
+    private static final int ROUNDS = 7;
+    private static final int WINDOW = 1 << 20;
+    private static final int JITTER = 16;
+
+    private interface Workload {
+        default void setup(AVLTree tree, int n) {
+        }
+
+        // returns the number of operations done on the tree
+        long run(AVLTree tree, int n);
+    }
+
+    private static AVLTree sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        System.out.printf("n=%,d%n%-16s %14s %14s %8s%n", n, "workload", "root (ns/op)", "finger (ns/op)", "speedup");
+        report("append", n, (tree, size) -> {
+            for (int i = 0; i < size; i++) {
+                tree.insert(i, "v");
+            }
+            return size;
+        });
+        report("sliding window", n, new Workload() {
+            public void setup(AVLTree tree, int size) {
+                for (int i = 0; i < WINDOW; i++) {
+                    tree.insert(i, "v");
+                }
+            }
+
+            public long run(AVLTree tree, int size) {
+                for (int i = WINDOW; i < WINDOW + size; i++) {
+                    tree.insert(i, "v");
+                    tree.delete(i - WINDOW);
+                }
+                return 2L * size;
+            }
+        });
+        report("near sequence", n, (tree, size) -> {
+            Random random = new Random(1);
+            for (int i = 0; i < size; i++) {
+                tree.insert(i * JITTER + random.nextInt(4 * JITTER), "v");
+            }
+            for (int i = 0; i < size; i++) {
+                tree.search(i * JITTER + random.nextInt(4 * JITTER));
+            }
+            return 2L * size;
+        });
+        report("random insert", n, (tree, size) -> {
+            Random random = new Random(2);
+            for (int i = 0; i < size; i++) {
+                tree.insert(random.nextInt(Integer.MAX_VALUE), "v");
+            }
+            return size;
+        });
+        report("random search", n, new Workload() {
+            public void setup(AVLTree tree, int size) {
+                Random random = new Random(3);
+                for (int i = 0; i < size; i++) {
+                    tree.insert(random.nextInt(Integer.MAX_VALUE), "v");
+                }
+            }
+
+            public long run(AVLTree tree, int size) {
+                Random random = new Random(4);
+                for (int i = 0; i < size; i++) {
+                    tree.search(random.nextInt(Integer.MAX_VALUE));
+                }
+                return size;
+            }
+        });
+    }
+
+    private static void report(String name, int n, Workload workload) {
+        double root = Double.MAX_VALUE;
+        double finger = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            root = Math.min(root, time(n, workload, false));
+            finger = Math.min(finger, time(n, workload, true));
+        }
+        System.out.printf("%-16s %14.1f %14.1f %7.2fx%n", name, root, finger, root / finger);
+    }
+
+    private static double time(int n, Workload workload, boolean fingerSearch) {
+        AVLTree tree = new AVLTree();
+        tree.setFingerSearch(fingerSearch);
+        workload.setup(tree, n);
+        sink = null;
+        System.gc();
+        long start = System.nanoTime();
+        long ops = workload.run(tree, n);
+        double time = (System.nanoTime() - start) / (double) ops;
+        sink = tree;
+        return time;
+    }
+}
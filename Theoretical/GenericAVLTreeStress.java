@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+// randomized test of GenericAVLTree, IntAVLTree and LongAVLTree against AVLTree and a TreeMap.
+// the same inserts and deletes go to all of them (LongAVLTree gets keys beyond the int range, and one
+// GenericAVLTree gets -k ordered by a reversed comparator, which gives it the same shape);
+// every variant must return AVLTree's rotation count.
+// split and join are checked on all three variants. after every step each tree is checked to hold
+// the TreeMap's items in order with the right size, min and max, and to be an AVL tree with right
+// parents and subtree sizes.
+public class GenericAVLTreeStress {
+    private static final int TREES = 300;
+    private static final int OPS_PER_TREE = 600;
+    private static final int SPLIT_ROUNDS = 500;
+    private static final int KEYS = 1000;
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 5);
+        insertDelete(random);
+        splitJoin(random);
+        System.out.println("ok: " + TREES * OPS_PER_TREE + " operations, " + SPLIT_ROUNDS + " split/join rounds");
+    }
+
+    // keeps the order of the int keys, but needs more than 32 bits
+    private static long wide(int k) {
+        return k * (1L << 32) + 7;
+    }
+
+    private static void insertDelete(Random random) {
+        for (int t = 0; t < TREES; t++) {
+            AVLTree reference = new AVLTree();
+            IntAVLTree<String> ints = new IntAVLTree<>();
+            LongAVLTree<String> longs = new LongAVLTree<>();
+            GenericAVLTree<Integer, String> generic = new GenericAVLTree<>();
+            GenericAVLTree<Integer, String> reversed = new GenericAVLTree<>(Comparator.reverseOrder());
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int range = 1 + random.nextInt(300);
+            for (int op = 0; op < OPS_PER_TREE; op++) {
+                int k = random.nextInt(range);
+                String where = "tree " + t + ", op " + op;
+                int[] results = new int[5];
+                if (random.nextInt(3) > 0) {
+                    String v = "v" + t + "/" + op;
+                    results[0] = reference.insert(k, v);
+                    results[1] = ints.insert(k, v);
+                    results[2] = longs.insert(wide(k), v);
+                    results[3] = generic.insert(k, v);
+                    results[4] = reversed.insert(-k, v);
+                    expected.putIfAbsent(k, v);
+                }
+                else {
+                    results[0] = reference.delete(k);
+                    results[1] = ints.delete(k);
+                    results[2] = longs.delete(wide(k));
+                    results[3] = generic.delete(k);
+                    results[4] = reversed.delete(-k);
+                    expected.remove(k);
+                }
+                for (int j = 1; j < results.length; j++) {
+                    if (results[j] != results[0]) {
+                        throw new AssertionError(where + ": results " + Arrays.toString(results) + " differ from AVLTree's");
+                    }
+                }
+                check(ints, expected, where + ", IntAVLTree");
+                check(longs, expected, where + ", LongAVLTree");
+                check(generic, expected, where + ", GenericAVLTree");
+                checkReversed(reversed, expected, where + ", reversed GenericAVLTree");
+                int q = random.nextInt(range);
+                String found = expected.get(q);
+                if (!AVLTreeChecker.same(ints.search(q), found) || !AVLTreeChecker.same(longs.search(wide(q)), found)
+                        || !AVLTreeChecker.same(generic.search(q), found) || !AVLTreeChecker.same(reversed.search(-q), found)) {
+                    throw new AssertionError(where + ": search(" + q + ") differs from " + found);
+                }
+            }
+        }
+    }
+
+    // splits the same items in all three variants, changes the halves, then joins them back with the split key
+    private static void splitJoin(Random random) {
+        for (int round = 0; round < SPLIT_ROUNDS; round++) {
+            String where = "split round " + round;
+            IntAVLTree<String> ints = new IntAVLTree<>();
+            LongAVLTree<String> longs = new LongAVLTree<>();
+            GenericAVLTree<Integer, String> generic = new GenericAVLTree<>();
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int n = random.nextInt(400);
+            for (int i = 0; i < n; i++) {
+                int k = random.nextInt(KEYS) - KEYS / 2;
+                if (expected.putIfAbsent(k, "v" + k) == null) {
+                    ints.insert(k, "v" + k);
+                    longs.insert(wide(k), "v" + k);
+                    generic.insert(k, "v" + k);
+                }
+            }
+            int x = random.nextInt(KEYS + 100) - (KEYS + 100) / 2;
+            IntAVLTree<String>[] intHalves = ints.split(x);
+            LongAVLTree<String>[] longHalves = longs.split(wide(x));
+            GenericAVLTree<Integer, String>[] genericHalves = generic.split(x);
+            TreeMap<Integer, String> smaller = new TreeMap<>(expected.headMap(x, false));
+            TreeMap<Integer, String> bigger = new TreeMap<>(expected.tailMap(x, false));
+            TreeMap<Integer, String> none = new TreeMap<>();
+            check(ints, none, where + ", split IntAVLTree");
+            check(longs, none, where + ", split LongAVLTree");
+            check(generic, none, where + ", split GenericAVLTree");
+            check(intHalves[0], smaller, where + ", smaller IntAVLTree");
+            check(intHalves[1], bigger, where + ", bigger IntAVLTree");
+            check(longHalves[0], smaller, where + ", smaller LongAVLTree");
+            check(longHalves[1], bigger, where + ", bigger LongAVLTree");
+            check(genericHalves[0], smaller, where + ", smaller GenericAVLTree");
+            check(genericHalves[1], bigger, where + ", bigger GenericAVLTree");
+            for (int j = 0; j < 30; j++) {
+                int k = random.nextInt(KEYS) - KEYS / 2;
+                if (k < x && smaller.remove(k) != null) {
+                    intHalves[0].delete(k);
+                    longHalves[0].delete(wide(k));
+                    genericHalves[0].delete(k);
+                }
+                else if (k > x && bigger.putIfAbsent(k, "w" + k) == null) {
+                    intHalves[1].insert(k, "w" + k);
+                    longHalves[1].insert(wide(k), "w" + k);
+                    genericHalves[1].insert(k, "w" + k);
+                }
+            }
+            // join into either half, so both the taller and the shorter tree get to be the one joined into
+            boolean intoSmaller = random.nextBoolean();
+            int intCost = intoSmaller ? intHalves[0].join(x, "x", intHalves[1]) : intHalves[1].join(x, "x", intHalves[0]);
+            int longCost = intoSmaller ? longHalves[0].join(wide(x), "x", longHalves[1]) : longHalves[1].join(wide(x), "x", longHalves[0]);
+            int genericCost = intoSmaller ? genericHalves[0].join(x, "x", genericHalves[1]) : genericHalves[1].join(x, "x", genericHalves[0]);
+            if (intCost < 1 || intCost != longCost || intCost != genericCost) {
+                throw new AssertionError(where + ": join costs " + intCost + ", " + longCost + ", " + genericCost);
+            }
+            smaller.putAll(bigger);
+            smaller.put(x, "x");
+            int into = intoSmaller ? 0 : 1;
+            check(intHalves[into], smaller, where + ", joined IntAVLTree");
+            check(longHalves[into], smaller, where + ", joined LongAVLTree");
+            check(genericHalves[into], smaller, where + ", joined GenericAVLTree");
+            check(intHalves[1 - into], none, where + ", IntAVLTree joined in");
+            check(longHalves[1 - into], none, where + ", LongAVLTree joined in");
+            check(genericHalves[1 - into], none, where + ", GenericAVLTree joined in");
+        }
+    }
+
+    private static void check(IntAVLTree<String> tree, TreeMap<Integer, String> expected, String where) {
+        int[] keys = tree.keysToArray();
+        List<Integer> found = new ArrayList<>();
+        for (int key : keys) {
+            found.add(key);
+        }
+        checkContents(tree, found, new ArrayList<>(expected.keySet()), expected, where);
+    }
+
+    private static void check(LongAVLTree<String> tree, TreeMap<Integer, String> expected, String where) {
+        List<Long> found = new ArrayList<>();
+        for (long key : tree.keysToArray()) {
+            found.add(key);
+        }
+        List<Long> keys = new ArrayList<>();
+        for (int key : expected.keySet()) {
+            keys.add(wide(key));
+        }
+        checkContents(tree, found, keys, expected, where);
+    }
+
+    private static void check(GenericAVLTree<Integer, String> tree, TreeMap<Integer, String> expected, String where) {
+        checkContents(tree, tree.keys(), new ArrayList<>(expected.keySet()), expected, where);
+    }
+
+    private static void checkReversed(GenericAVLTree<Integer, String> tree, TreeMap<Integer, String> expected, String where) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key : expected.keySet()) {
+            keys.add(-key);
+        }
+        checkContents(tree, tree.keys(), keys, expected, where);
+    }
+
+    // keys are the keys the tree gives in order, expectedKeys the ones it should give
+    private static <K> void checkContents(AbstractAVLTree<String, ?> tree, List<K> keys, List<K> expectedKeys,
+            TreeMap<Integer, String> expected, String where) {
+        if (!keys.equals(expectedKeys)) {
+            throw new AssertionError(where + ": keys " + keys + ", expected " + expectedKeys);
+        }
+        if (!tree.values().equals(new ArrayList<>(expected.values()))
+                || !Arrays.equals(tree.infoToArray(), expected.values().toArray())) {
+            throw new AssertionError(where + ": values " + tree.values() + ", expected " + expected.values());
+        }
+        if (tree.size() != expected.size() || tree.empty() != expected.isEmpty()) {
+            throw new AssertionError(where + ": size " + tree.size() + ", expected " + expected.size());
+        }
+        String min = expected.isEmpty() ? null : expected.firstEntry().getValue();
+        String max = expected.isEmpty() ? null : expected.lastEntry().getValue();
+        if (!AVLTreeChecker.same(tree.min(), min) || !AVLTreeChecker.same(tree.max(), max)) {
+            throw new AssertionError(where + ": min " + tree.min() + ", max " + tree.max() + ", expected " + min + ", " + max);
+        }
+        if (tree.root != null && tree.root.parent != null) {
+            throw new AssertionError(where + ": the root has a parent");
+        }
+        checkNode(tree.root, where);
+    }
+
+    // checks parents, heights, balance factors and subtree sizes below node, returns its height.
+    // the keys are in order if the in-order walk behind keys() matched the TreeMap
+    private static int checkNode(AbstractAVLTree.TreeNode<?, ?> node, String where) {
+        if (node == null) {
+            return -1;
+        }
+        AbstractAVLTree.TreeNode<?, ?> left = node.left;
+        AbstractAVLTree.TreeNode<?, ?> right = node.right;
+        if ((left != null && left.parent != node) || (right != null && right.parent != node)) {
+            throw new AssertionError(where + ": wrong parent below " + node.getValue());
+        }
+        int leftHeight = checkNode(left, where);
+        int rightHeight = checkNode(right, where);
+        if (Math.abs(leftHeight - rightHeight) > 1 || node.height != Math.max(leftHeight, rightHeight) + 1) {
+            throw new AssertionError(where + ": height " + node.height + " at " + node.getValue() + " with children of height "
+                    + leftHeight + " and " + rightHeight);
+        }
+        int size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+        if (node.size != size) {
+            throw new AssertionError(where + ": subtree size " + node.size + " at " + node.getValue() + ", expected " + size);
+        }
+        return node.height;
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Random;
+
+// search with and without a HotKeyCache (AVLTree.setCache) on a skewed and on a uniform workload.
+// the tree holds n random keys. in the skewed workload HOT_SHARE of the searches go to a hot set of
+// HOT_PERCENT of the keys, the others to any key; in the uniform workload every key is equally likely,
+// which shows what the cache costs when it can not help.
+// every configuration is run ROUNDS times, alternating, and the best round is reported in ns per search.
+//   java HotKeyCacheBenchmark [n] [searches]
+public class HotKeyCacheBenchmark {
+    private static final int ROUNDS = 5;
+    private static final double HOT_PERCENT = 1;
+    private static final double HOT_SHARE = 0.8;
+    private static final int[] CAPACITIES = {0, 1 << 12, 1 << 14, 1 << 16, 1 << 18};
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int searches = args.length > 1 ? Integer.parseInt(args[1]) : 4_000_000;
+        Random random = new Random(1);
+        int[] keys = new int[n];
+        AVLTree tree = new AVLTree();
+        for (int i = 0; i < n; i++) {
+            int k;
+            do {
+                k = random.nextInt(Integer.MAX_VALUE);
+            } while (tree.insert(k, "value-" + k) == -1);
+            keys[i] = k;
+        }
+        int hot = Math.max(1, (int) (n * HOT_PERCENT / 100));
+        int[] skewed = new int[searches];
+        int[] uniform = new int[searches];
+        for (int s = 0; s < searches; s++) {
+            skewed[s] = keys[random.nextDouble() < HOT_SHARE ? random.nextInt(hot) : random.nextInt(n)];
+            uniform[s] = keys[random.nextInt(n)];
+        }
+        System.out.printf("n=%,d, %,d searches, %,d hot keys get %.0f%% of the skewed ones%n",
+                n, searches, hot, HOT_SHARE * 100);
+        System.out.printf("%-10s %16s %10s %16s %10s%n", "cache", "skewed (ns/op)", "hit rate", "uniform (ns/op)",
+                "hit rate");
+        double[][] best = new double[CAPACITIES.length][2];
+        double[][] hitRate = new double[CAPACITIES.length][2];
+        for (double[] row : best) {
+            row[0] = row[1] = Double.MAX_VALUE;
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int c = 0; c < CAPACITIES.length; c++) {
+                int[][] workloads = {skewed, uniform};
+                for (int w = 0; w < 2; w++) {
+                    tree.setCache(CAPACITIES[c]);
+                    System.gc();
+                    best[c][w] = Math.min(best[c][w], time(tree, workloads[w]));
+                    hitRate[c][w] = tree.getCache() == null ? 0 : tree.getCache().getHitRate();
+                }
+            }
+        }
+        for (int c = 0; c < CAPACITIES.length; c++) {
+            System.out.printf("%-10s %16.1f %9.1f%% %16.1f %9.1f%%%n",
+                    CAPACITIES[c] == 0 ? "off" : String.format("%,d", CAPACITIES[c]),
+                    best[c][0], hitRate[c][0] * 100, best[c][1], hitRate[c][1] * 100);
+        }
+        tree.setCache(0);
+    }
+
+    private static double time(AVLTree tree, int[] searches) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int k : searches) {
+            if (tree.search(k) != null) {
+                found++;
+            }
+        }
+        double time = (System.nanoTime() - start) / (double) searches.length;
+        sink += found;
+        if (found != searches.length) {
+            throw new AssertionError("only " + found + " of " + searches.length + " searches found their key");
+        }
+        return time;
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// randomized test of IntAvlArena against AVLTree and a TreeMap.
+// inserts and deletes must return the same rotation counts as AVLTree; split and join are run
+// inside one arena and across arenas, where the joined tree is copied and its slots are freed.
+// after every step each tree is checked to be a sorted AVL tree with the right items, and each arena
+// to have exactly as many slots in use as its trees have items, and to reuse freed slots before it grows.
+public class IntAvlArenaStress {
+    private static final int TREES = 300;
+    private static final int OPS_PER_TREE = 600;
+    private static final int SPLIT_ROUNDS = 500;
+    private static final int KEYS = 1000;
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 4);
+        insertDelete(random);
+        splitJoin(random);
+        crossArenaJoin();
+        System.out.println("ok: " + TREES * OPS_PER_TREE + " operations, " + SPLIT_ROUNDS + " split/join rounds");
+    }
+
+    private static void insertDelete(Random random) {
+        for (int t = 0; t < TREES; t++) {
+            IntAvlArena tree = new IntAvlArena();
+            AVLTree reference = new AVLTree();
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int range = 1 + random.nextInt(300);
+            int peak = 0;
+            for (int op = 0; op < OPS_PER_TREE; op++) {
+                int k = random.nextInt(range);
+                String where = "tree " + t + ", op " + op;
+                if (random.nextInt(3) > 0) {
+                    int result = tree.insert(k, "v" + k);
+                    int expectedResult = reference.insert(k, "v" + k);
+                    if (result != expectedResult) {
+                        throw new AssertionError(where + ": insert(" + k + ") returned " + result + ", AVLTree " + expectedResult);
+                    }
+                    expected.put(k, "v" + k);
+                }
+                else {
+                    int result = tree.delete(k);
+                    int expectedResult = reference.delete(k);
+                    if (result != expectedResult) {
+                        throw new AssertionError(where + ": delete(" + k + ") returned " + result + ", AVLTree " + expectedResult);
+                    }
+                    expected.remove(k);
+                }
+                peak = Math.max(peak, expected.size());
+                check(tree, expected, where);
+                checkSlots(tree.store, expected.size(), peak, where);
+                int q = random.nextInt(range);
+                if (!AVLTreeChecker.same(tree.search(q), expected.get(q))) {
+                    throw new AssertionError(where + ": search(" + q + ") returned " + tree.search(q));
+                }
+            }
+        }
+    }
+
+    // split, change both halves, then join them back, half the time after moving one half to another arena
+    private static void splitJoin(Random random) {
+        for (int round = 0; round < SPLIT_ROUNDS; round++) {
+            String where = "split round " + round;
+            IntAvlArena tree = new IntAvlArena();
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            int n = random.nextInt(200);
+            for (int i = 0; i < n; i++) {
+                int k = random.nextInt(KEYS);
+                tree.insert(k, "v" + k);
+                expected.put(k, "v" + k);
+            }
+            int x = random.nextInt(KEYS);
+            IntAvlArena[] halves = tree.split(x);
+            TreeMap<Integer, String> smaller = new TreeMap<>(expected.headMap(x, false));
+            TreeMap<Integer, String> bigger = new TreeMap<>(expected.tailMap(x, false));
+            check(tree, new TreeMap<>(), where + ", split tree");
+            check(halves[0], smaller, where + ", smaller half");
+            check(halves[1], bigger, where + ", bigger half");
+            checkSlots(tree.store, smaller.size() + bigger.size(), Integer.MAX_VALUE, where);
+            for (int j = 0; j < 50; j++) {
+                int k = random.nextInt(KEYS);
+                if (k < x) {
+                    halves[0].insert(k, "w" + k);
+                    smaller.putIfAbsent(k, "w" + k);
+                }
+                else if (k > x) {
+                    halves[1].delete(k);
+                    bigger.remove(k);
+                }
+            }
+            IntAvlArena other = halves[1];
+            if (random.nextBoolean()) {
+                other = new IntAvlArena();
+                for (Map.Entry<Integer, String> entry : bigger.entrySet()) {
+                    other.insert(entry.getKey(), entry.getValue());
+                }
+            }
+            int stillInArena = other == halves[1] ? 0 : halves[1].size(); // a copy was joined, halves[1] keeps its slots
+            halves[0].join(x, "v" + x, other);
+            smaller.putAll(bigger);
+            smaller.put(x, "v" + x);
+            check(halves[0], smaller, where + ", joined");
+            check(other, new TreeMap<>(), where + ", joined tree");
+            checkSlots(tree.store, smaller.size() + stillInArena, Integer.MAX_VALUE, where);
+            if (other.store != tree.store) {
+                checkSlots(other.store, 0, Integer.MAX_VALUE, where + ", joined tree's arena");
+            }
+        }
+    }
+
+    // cross-arena joins whose copies grow the target arena several times, with a tree left in the source arena
+    private static void crossArenaJoin() {
+        for (int n : new int[] {3000, 5000, 20000}) {
+            String where = "cross join of " + n;
+            IntAvlArena small = new IntAvlArena();
+            small.insert(0, "v0");
+            IntAvlArena big = new IntAvlArena();
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            expected.put(0, "v0");
+            expected.put(5, "x");
+            for (int k = 10; k < 10 + n; k++) {
+                big.insert(k, "v" + k);
+                expected.put(k, "v" + k);
+            }
+            IntAvlArena[] halves = big.split(10 + n / 2); // the halves share big's arena
+            TreeMap<Integer, String> rest = new TreeMap<>(expected.tailMap(10 + n / 2, false));
+            expected.keySet().removeAll(new ArrayList<>(expected.tailMap(10 + n / 2, true).keySet()));
+            small.join(5, "x", halves[0]);
+            check(small, expected, where);
+            check(halves[0], new TreeMap<>(), where + ", joined tree");
+            check(halves[1], rest, where + ", tree left in the source arena");
+            checkSlots(small.store, expected.size(), Integer.MAX_VALUE, where);
+            checkSlots(big.store, rest.size(), Integer.MAX_VALUE, where + ", source arena");
+            // the slots freed by the join are reused before the source arena grows
+            int slots = big.store.slotsEverUsed();
+            for (int k = -(n / 2); k < 0; k++) {
+                halves[1].insert(k, "v" + k);
+                rest.put(k, "v" + k);
+            }
+            check(halves[1], rest, where + ", after reuse");
+            if (big.store.slotsEverUsed() != slots) {
+                throw new AssertionError(where + ": the source arena grew from " + slots + " to "
+                        + big.store.slotsEverUsed() + " slots instead of reusing the freed ones");
+            }
+            checkSlots(big.store, rest.size(), Integer.MAX_VALUE, where + ", after reuse");
+        }
+    }
+
+    // checks that the arena has exactly items slots in use, and never had more than peak
+    private static void checkSlots(IntAvlArena.Store store, int items, int peak, String where) {
+        if (store.slotsInUse() != items) {
+            throw new AssertionError(where + ": " + store.slotsInUse() + " slots in use for " + items + " items");
+        }
+        if (store.slotsEverUsed() > peak) {
+            throw new AssertionError(where + ": " + store.slotsEverUsed() + " slots used, at most " + peak + " items");
+        }
+    }
+
+    private static void check(IntAvlArena tree, TreeMap<Integer, String> expected, String where) {
+        checkNode(tree.store, tree.root, Long.MIN_VALUE, Long.MAX_VALUE, where);
+        if (tree.size() != expected.size() || tree.empty() != expected.isEmpty()) {
+            throw new AssertionError(where + ": size " + tree.size() + ", expected " + expected.size());
+        }
+        int[] keys = tree.keysToArray();
+        String[] infos = tree.infoToArray();
+        List<Map.Entry<Integer, String>> entries = new ArrayList<>(expected.entrySet());
+        for (int i = 0; i < entries.size(); i++) {
+            if (keys[i] != entries.get(i).getKey() || !AVLTreeChecker.same(infos[i], entries.get(i).getValue())) {
+                throw new AssertionError(where + ": item " + i + " is (" + keys[i] + ", " + infos[i] + "), expected " + entries.get(i));
+            }
+        }
+        String min = expected.isEmpty() ? null : expected.firstEntry().getValue();
+        String max = expected.isEmpty() ? null : expected.lastEntry().getValue();
+        if (!AVLTreeChecker.same(tree.min(), min) || !AVLTreeChecker.same(tree.max(), max)) {
+            throw new AssertionError(where + ": min " + tree.min() + ", max " + tree.max() + ", expected " + min + ", " + max);
+        }
+    }
+
+    // checks the subtree of node, whose keys must be in (lo, hi), and returns its height
+    private static int checkNode(IntAvlArena.Store store, int node, long lo, long hi, String where) {
+        if (node == 0) {
+            return -1;
+        }
+        int key = store.key(node);
+        if (key <= lo || key >= hi) {
+            throw new AssertionError(where + ": " + key + " is out of order");
+        }
+        int left = checkNode(store, store.left(node), lo, key, where);
+        int right = checkNode(store, store.right(node), key, hi, where);
+        if (Math.abs(left - right) > 1 || store.height(node) != Math.max(left, right) + 1) {
+            throw new AssertionError(where + ": height " + store.height(node) + " at " + key + " with children of height "
+                    + left + " and " + right);
+        }
+        return store.height(node);
+    }
+}
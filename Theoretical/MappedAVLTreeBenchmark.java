@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// compares MappedAVLTree with the heap AVLTree on trees that may not fit in memory.
+// inserts n distinct keys in random order, then times random searches of present keys,
+// and for the mapped tree also force(), close() and reopening.
+// the heap tree stops at the first OutOfMemoryError and reports how far it got.
+// run each implementation in its own JVM, the mapped one with a small heap so the page cache gets the memory:
+//   java -Xmx4g MappedAVLTreeBenchmark heap 50000000
+//   java -Xmx256m MappedAVLTreeBenchmark mapped 150000000 /data/bench 20000
+// once the files are larger than memory most searches fault pages in, and every fault also reads the
+// device's readahead (see /sys/block/<dev>/queue/read_ahead_kb), so use fewer searches there.
+public class MappedAVLTreeBenchmark {
+    private static final int DEFAULT_SEARCHES = 1_000_000;
+    private static final int PROGRESS_EVERY = 10_000_000;
+
+    private interface Target {
+        int insert(int k, String i);
+
+        String search(int k);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("heap") || args[0].equals("mapped"))) {
+            System.err.println("usage: MappedAVLTreeBenchmark heap|mapped <n> [dir] [searches]");
+            System.exit(2);
+        }
+        boolean mapped = args[0].equals("mapped");
+        int n = Integer.parseInt(args[1]);
+        Path dir = Paths.get(args.length > 2 ? args[2] : System.getProperty("java.io.tmpdir"));
+        int searches = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SEARCHES;
+        Path path = dir.resolve("MappedAVLTreeBenchmark.avl");
+        Path valuePath = dir.resolve("MappedAVLTreeBenchmark.avl.values");
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(valuePath);
+
+        MappedAVLTree mappedTree = mapped ? MappedAVLTree.open(path) : null;
+        AVLTree heapTree = mapped ? null : new AVLTree();
+        Target target = mapped ? new Target() {
+            public int insert(int k, String i) {
+                return mappedTree.insert(k, i);
+            }
+
+            public String search(int k) {
+                return mappedTree.search(k);
+            }
+        } : new Target() {
+            public int insert(int k, String i) {
+                return heapTree.insert(k, i);
+            }
+
+            public String search(int k) {
+                return heapTree.search(k);
+            }
+        };
+
+        int inserted = 0;
+        long start = System.nanoTime();
+        long last = start;
+        try {
+            for (int i = 0; i < n; i++) {
+                int k = key(i);
+                if (k == -1) { // reserved by AVLTree's virtual node
+                    continue;
+                }
+                target.insert(k, "v" + i);
+                inserted++;
+                if ((i + 1) % PROGRESS_EVERY == 0) {
+                    long now = System.nanoTime();
+                    System.out.printf("%s: %,d inserted, last %,d at %.0f ns/op%n",
+                            args[0], i + 1, PROGRESS_EVERY, (now - last) / (double) PROGRESS_EVERY);
+                    last = now;
+                }
+            }
+        }
+        catch (OutOfMemoryError e) {
+            System.out.printf("%s: out of memory after %,d inserts (max heap %,d MB)%n",
+                    args[0], inserted, Runtime.getRuntime().maxMemory() >> 20);
+            return;
+        }
+        long insertTime = System.nanoTime() - start;
+        System.out.printf("%s: n=%,d insert %.0f ns/op%n", args[0], inserted, insertTime / (double) inserted);
+
+        System.out.printf("%s: search %.0f ns/op%n", args[0], timeSearches(target, inserted, searches));
+
+        if (mapped) {
+            long t = System.nanoTime();
+            mappedTree.force();
+            System.out.printf("mapped: force %.2f s, files %,d + %,d MB%n",
+                    (System.nanoTime() - t) / 1e9, Files.size(path) >> 20, Files.size(valuePath) >> 20);
+            mappedTree.close();
+            t = System.nanoTime();
+            MappedAVLTree reopened = MappedAVLTree.open(path);
+            System.out.printf("mapped: reopen %.3f s, size %,d%n", (System.nanoTime() - t) / 1e9, reopened.size());
+            System.out.printf("mapped: search after reopen %.0f ns/op%n", timeSearches(new Target() {
+                public int insert(int k, String i) {
+                    return reopened.insert(k, i);
+                }
+
+                public String search(int k) {
+                    return reopened.search(k);
+                }
+            }, inserted, searches));
+            reopened.close();
+            Files.delete(path);
+            Files.delete(valuePath);
+        }
+    }
+
+    // keys are a bijection of 0..2^32-1 with a random looking order, so the first n are distinct
+    private static int key(int i) {
+        return i * 0x9E3779B1;
+    }
+
+    private static double timeSearches(Target target, int inserted, int searches) {
+        Random random = new Random(42);
+        long found = 0;
+        long start = System.nanoTime();
+        for (int s = 0; s < searches; s++) {
+            if (target.search(key(random.nextInt(inserted))) != null) {
+                found++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (found < searches - 1) {
+            throw new AssertionError("only " + found + " of " + searches + " searches found their key");
+        }
+        return time / (double) searches;
+    }
+}
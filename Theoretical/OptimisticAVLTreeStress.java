@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// linearizability stress test for OptimisticAVLTree.
+// threads run random insert / delete / search calls in rounds and record when each call started and ended.
+// an item's history only depends on the calls with its key, so after every round the history of each key
+// is checked on its own (Wing & Gong search): some order of the calls, consistent with their start and
+// end times, has to give every call its result and end in the state the tree has after the round.
+// after every round the tree is also checked to be a sorted AVL tree with the right size.
+public class OptimisticAVLTreeStress {
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 2000;
+    private static final int OPS_PER_ROUND = 200;
+    private static final int HOT_KEYS = 16; // few keys, long overlapping histories
+    private static final int WIDE_KEYS = 1 << 14; // a large tree, so updates rotate deep nodes
+
+    private static final int SEARCH = 0;
+    private static final int INSERT = 1;
+    private static final int DELETE = 2;
+
+    private static final class Call {
+        int type;
+        int key;
+        String info; // the inserted info, or the result of a search
+        int result;
+        long start;
+        long end;
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptimisticAVLTree tree = new OptimisticAVLTree();
+        String[] state = new String[HOT_KEYS + WIDE_KEYS];
+        for (int k = 0; k < state.length; k += 2) { // half of the wide keys are there at the start
+            int key = keyOf(k);
+            state[k] = "init" + key;
+            tree.insert(key, state[k]);
+        }
+        long checked = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            List<List<Call>> histories = runRound(tree, round);
+            List<List<Call>> byKey = new ArrayList<>();
+            for (int k = 0; k < state.length; k++) {
+                byKey.add(new ArrayList<>());
+            }
+            for (List<Call> history : histories) {
+                for (Call call : history) {
+                    byKey.get(indexOf(call.key)).add(call);
+                }
+            }
+            for (int k = 0; k < state.length; k++) {
+                List<Call> calls = byKey.get(k);
+                String end = tree.search(keyOf(k));
+                if (!calls.isEmpty() && !linearizable(calls, state[k], end)) {
+                    throw new AssertionError("round " + round + ": history of key " + keyOf(k) + " is not linearizable");
+                }
+                if (calls.isEmpty() && !same(state[k], end)) {
+                    throw new AssertionError("round " + round + ": key " + keyOf(k) + " changed without calls");
+                }
+                state[k] = end;
+                checked += calls.size();
+            }
+            checkTree(tree, state, round);
+        }
+        System.out.println("ok: " + checked + " calls in " + ROUNDS + " rounds");
+    }
+
+    // hot keys are spread between the wide keys so they sit at different depths
+    private static int keyOf(int index) {
+        return index < HOT_KEYS ? (index * (WIDE_KEYS / HOT_KEYS)) * 2 + 1 : (index - HOT_KEYS) * 2;
+    }
+
+    private static int indexOf(int key) {
+        return key % 2 == 1 ? (key / 2) / (WIDE_KEYS / HOT_KEYS) : key / 2 + HOT_KEYS;
+    }
+
+    private static List<List<Call>> runRound(OptimisticAVLTree tree, int round) throws InterruptedException {
+        List<List<Call>> histories = new ArrayList<>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            List<Call> history = new ArrayList<>(OPS_PER_ROUND);
+            histories.add(history);
+            Random random = new Random(round * (long) THREADS + t);
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < OPS_PER_ROUND; i++) {
+                    Call call = new Call();
+                    call.type = random.nextInt(3);
+                    call.key = keyOf(random.nextBoolean() ? random.nextInt(HOT_KEYS) : HOT_KEYS + random.nextInt(WIDE_KEYS));
+                    if (call.type == INSERT) {
+                        call.info = round + "/" + id + "/" + i;
+                    }
+                    call.start = System.nanoTime();
+                    if (call.type == SEARCH) {
+                        call.info = tree.search(call.key);
+                    }
+                    else if (call.type == INSERT) {
+                        call.result = tree.insert(call.key, call.info);
+                    }
+                    else {
+                        call.result = tree.delete(call.key);
+                    }
+                    call.end = System.nanoTime();
+                    history.add(call);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return histories;
+    }
+
+    // true if the calls on one key can be ordered to take the key from info start to info end
+    private static boolean linearizable(List<Call> calls, String start, String end) {
+        if (calls.size() > 62) {
+            throw new IllegalStateException("too many calls on one key: " + calls.size());
+        }
+        return search(calls, 0L, start, end, new HashSet<>());
+    }
+
+    private static boolean search(List<Call> calls, long done, String state, String end, Set<String> failed) {
+        if (done == (1L << calls.size()) - 1) {
+            return same(state, end);
+        }
+        String memo = done + "|" + state;
+        if (failed.contains(memo)) {
+            return false;
+        }
+        // a call can be next only if no other pending call ended before it started
+        long firstEnd = Long.MAX_VALUE;
+        for (int i = 0; i < calls.size(); i++) {
+            if ((done & (1L << i)) == 0) {
+                firstEnd = Math.min(firstEnd, calls.get(i).end);
+            }
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            Call call = calls.get(i);
+            if ((done & (1L << i)) != 0 || call.start > firstEnd) {
+                continue;
+            }
+            String next;
+            if (call.type == SEARCH) {
+                if (!same(call.info, state)) {
+                    continue;
+                }
+                next = state;
+            }
+            else if (call.type == INSERT) {
+                if (call.result != (state == null ? 0 : -1)) {
+                    continue;
+                }
+                next = state == null ? call.info : state;
+            }
+            else {
+                if (call.result != (state == null ? -1 : 0)) {
+                    continue;
+                }
+                next = null;
+            }
+            if (search(calls, done | (1L << i), next, end, failed)) {
+                return true;
+            }
+        }
+        failed.add(memo);
+        return false;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // checks the tree after a round, when no update is running
+    private static void checkTree(OptimisticAVLTree tree, String[] state, int round) {
+        int[] keys = tree.keysToArray();
+        String[] infos = tree.infoToArray();
+        int expectedSize = 0;
+        for (String info : state) {
+            if (info != null) {
+                expectedSize++;
+            }
+        }
+        if (keys.length != expectedSize || tree.size() != expectedSize) {
+            throw new AssertionError("round " + round + ": size " + tree.size() + ", " + keys.length
+                    + " keys, expected " + expectedSize);
+        }
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        if (!Arrays.equals(keys, sorted)) {
+            throw new AssertionError("round " + round + ": keys are not sorted");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (!same(infos[i], state[indexOf(keys[i])])) {
+                throw new AssertionError("round " + round + ": wrong info for key " + keys[i]);
+            }
+        }
+        if (keys.length > 0 && (!same(tree.min(), infos[0]) || !same(tree.max(), infos[keys.length - 1]))) {
+            throw new AssertionError("round " + round + ": wrong min or max");
+        }
+        // all threads have joined, so every rebalance has finished and the tree must be an AVL tree
+        if (!tree.isAVL()) {
+            throw new AssertionError("round " + round + ": not an AVL tree (a height, balance factor or parent is wrong)");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// randomized test that versions of PersistentAVLTree never change.
+// it keeps a pool of versions, each with a TreeMap copy of what it held when it was made, and
+// derives new versions from random pool members (not only the newest) with insert, delete, split and
+// join, so versions share nodes along many branches. after every operation every version in the pool
+// is checked against its TreeMap: keys, infos, size, min, max and searches. a version that a change
+// wrote through would show up as a difference in one of the older versions.
+public class PersistentAVLTreeStress {
+    private static final int RUNS = 40;
+    private static final int OPS_PER_RUN = 1500;
+    private static final int POOL = 24;
+    private static final int KEYS = 2000;
+
+    private static final class Version {
+        final PersistentAVLTree tree;
+        final TreeMap<Integer, String> items;
+
+        Version(PersistentAVLTree tree, TreeMap<Integer, String> items) {
+            this.tree = tree;
+            this.items = items;
+        }
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 12);
+        long checked = 0;
+        for (int run = 0; run < RUNS; run++) {
+            List<Version> pool = new ArrayList<>();
+            pool.add(new Version(PersistentAVLTree.EMPTY, new TreeMap<>()));
+            for (int op = 0; op < OPS_PER_RUN; op++) {
+                String where = "run " + run + ", op " + op;
+                Version from = pool.get(random.nextInt(pool.size()));
+                List<Version> made = new ArrayList<>();
+                int kind = random.nextInt(10);
+                if (kind < 5) {
+                    int k = random.nextInt(KEYS);
+                    TreeMap<Integer, String> items = new TreeMap<>(from.items);
+                    items.putIfAbsent(k, "v" + run + "/" + op);
+                    made.add(new Version(from.tree.insert(k, "v" + run + "/" + op), items));
+                }
+                else if (kind < 8) {
+                    // mostly keys that are there
+                    Integer present = from.items.ceilingKey(random.nextInt(KEYS));
+                    int k = present != null && random.nextInt(4) > 0 ? present : random.nextInt(KEYS);
+                    TreeMap<Integer, String> items = new TreeMap<>(from.items);
+                    items.remove(k);
+                    made.add(new Version(from.tree.delete(k), items));
+                }
+                else {
+                    int x = random.nextInt(KEYS);
+                    PersistentAVLTree[] halves = from.tree.split(x);
+                    TreeMap<Integer, String> smaller = new TreeMap<>(from.items.headMap(x, false));
+                    TreeMap<Integer, String> bigger = new TreeMap<>(from.items.tailMap(x, false));
+                    made.add(new Version(halves[0], smaller));
+                    made.add(new Version(halves[1], bigger));
+                    if (kind == 9) {
+                        // join the halves back with a new item for x, from either side
+                        TreeMap<Integer, String> joined = new TreeMap<>(smaller);
+                        joined.putAll(bigger);
+                        joined.put(x, "j" + op);
+                        PersistentAVLTree tree = random.nextBoolean() ? halves[0].join(x, "j" + op, halves[1])
+                                : halves[1].join(x, "j" + op, halves[0]);
+                        made.add(new Version(tree, joined));
+                    }
+                }
+                for (Version version : made) {
+                    if (pool.size() < POOL) {
+                        pool.add(version);
+                    }
+                    else {
+                        pool.set(1 + random.nextInt(POOL - 1), version); // the empty version stays
+                    }
+                }
+                for (int v = 0; v < pool.size(); v++) {
+                    check(pool.get(v), random, where + ", version " + v);
+                    checked++;
+                }
+            }
+        }
+        System.out.println("ok: " + RUNS * OPS_PER_RUN + " operations, " + checked + " version checks");
+    }
+
+    private static void check(Version version, Random random, String where) {
+        PersistentAVLTree tree = version.tree;
+        TreeMap<Integer, String> items = version.items;
+        if (tree.size() != items.size() || tree.empty() != items.isEmpty()) {
+            throw new AssertionError(where + ": size " + tree.size() + ", expected " + items.size());
+        }
+        int[] keys = new int[items.size()];
+        String[] infos = new String[items.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : items.entrySet()) {
+            keys[i] = entry.getKey();
+            infos[i++] = entry.getValue();
+        }
+        if (!Arrays.equals(tree.keysToArray(), keys) || !Arrays.equals(tree.infoToArray(), infos)) {
+            throw new AssertionError(where + ": items changed to " + Arrays.toString(tree.keysToArray()));
+        }
+        String min = items.isEmpty() ? null : items.firstEntry().getValue();
+        String max = items.isEmpty() ? null : items.lastEntry().getValue();
+        if (!AVLTreeChecker.same(tree.min(), min) || !AVLTreeChecker.same(tree.max(), max)) {
+            throw new AssertionError(where + ": min " + tree.min() + ", max " + tree.max() + ", expected " + min + ", " + max);
+        }
+        for (int j = 0; j < 4; j++) {
+            int q = random.nextInt(KEYS);
+            if (!AVLTreeChecker.same(tree.search(q), items.get(q))) {
+                throw new AssertionError(where + ": search(" + q + ") returned " + tree.search(q) + ", expected " + items.get(q));
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+// TTL eviction: the tree holds n items keyed by insertion time (0, 1, 2, ...), and the oldest fraction
+// of them is evicted, by looping delete over the expired keys against one deleteRange (or headTree,
+// which keeps the evicted items as a tree). every case is run ROUNDS times on a fresh tree (not timed)
+// and the best round is reported.
+//   java RangeDeleteBenchmark [n]
+public class RangeDeleteBenchmark {
+    private static final int ROUNDS = 5;
+    private static final double[] FRACTIONS = {0.001, 0.01, 0.1, 0.5};
+
+    private interface Eviction {
+        int evict(AVLTree tree, int cutoff);
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        System.out.printf("n=%,d%n%-10s %10s %16s %16s %16s%n", n, "evicted", "items", "delete loop (ms)",
+                "deleteRange (ms)", "headTree (ms)");
+        for (double fraction : FRACTIONS) {
+            int cutoff = (int) (n * fraction);
+            double loop = best(n, cutoff, (tree, k) -> {
+                int removed = 0;
+                for (int i = 0; i < k; i++) {
+                    if (tree.delete(i) != -1) {
+                        removed++;
+                    }
+                }
+                return removed;
+            });
+            double range = best(n, cutoff, (tree, k) -> tree.deleteRange(Integer.MIN_VALUE, k - 1));
+            double head = best(n, cutoff, (tree, k) -> tree.headTree(k).size());
+            System.out.printf("%-10s %,10d %16.3f %16.3f %16.3f%n",
+                    fraction * 100 + "%", cutoff, loop, range, head);
+        }
+    }
+
+    private static double best(int n, int cutoff, Eviction eviction) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            AVLTree tree = new AVLTree();
+            for (int i = 0; i < n; i++) {
+                tree.insert(i, "v");
+            }
+            System.gc();
+            long start = System.nanoTime();
+            int removed = eviction.evict(tree, cutoff);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            if (removed != cutoff || tree.size() != n - cutoff) {
+                throw new AssertionError("evicted " + removed + " of " + cutoff);
+            }
+            sink += removed;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BinaryOperator;
+
+// randomized test of AVLTree.union, intersection and difference against TreeMap.
+// the operands have up to 20k keys each, so most pairs are above the parallel cutoff (4096 nodes
+// in both operands together) and the operations fork into the common pool, which gets 4 threads
+// even on a machine with fewer cores. the keys of the two trees are drawn from ranges that are
+// the same, overlapping, disjoint or nested, and the merge keeps the left, the right or both infos.
+// the result is checked with AVLTreeChecker, and both operands must be empty afterwards.
+public class SetOperationsStress {
+    private static final int ROUNDS = 150;
+    private static final int MAX_KEYS = 20000;
+
+    private static final BinaryOperator<String> BOTH = (left, right) -> left + "+" + right;
+
+    public static void main(String[] args) {
+        // read when the common pool is first used, so it has to be set before any operation
+        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 10);
+        int parallel = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            int n1 = size(random);
+            int n2 = size(random);
+            int range1 = 1 + n1 * (1 + random.nextInt(3));
+            int offset2 = random.nextInt(4) == 0 ? range1 : random.nextInt(range1); // disjoint or overlapping
+            int range2 = 1 + n2 * (1 + random.nextInt(3));
+            TreeMap<Integer, String> items1 = items(random, n1, 0, range1, "a");
+            TreeMap<Integer, String> items2 = items(random, n2, offset2, range2, "b");
+            if (items1.size() + items2.size() > 4096) {
+                parallel++;
+            }
+            BinaryOperator<String> merge = round % 3 == 0 ? AVLTree.KEEP_LEFT : round % 3 == 1 ? AVLTree.KEEP_RIGHT : BOTH;
+
+            TreeMap<Integer, String> union = new TreeMap<>(items1);
+            for (Map.Entry<Integer, String> entry : items2.entrySet()) {
+                union.merge(entry.getKey(), entry.getValue(), merge);
+            }
+            TreeMap<Integer, String> intersection = new TreeMap<>();
+            TreeMap<Integer, String> difference = new TreeMap<>();
+            for (Map.Entry<Integer, String> entry : items1.entrySet()) {
+                String other = items2.get(entry.getKey());
+                if (other != null) {
+                    intersection.put(entry.getKey(), merge.apply(entry.getValue(), other));
+                }
+                else {
+                    difference.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            String where = "round " + round + " (" + items1.size() + " and " + items2.size() + " keys)";
+            AVLTree t1 = tree(items1);
+            AVLTree t2 = tree(items2);
+            check(AVLTree.union(t1, t2, merge), union, t1, t2, where + ", union");
+            t1 = tree(items1);
+            t2 = tree(items2);
+            check(AVLTree.intersection(t1, t2, merge), intersection, t1, t2, where + ", intersection");
+            t1 = tree(items1);
+            t2 = tree(items2);
+            check(AVLTree.difference(t1, t2), difference, t1, t2, where + ", difference");
+        }
+        System.out.println("ok: " + ROUNDS + " rounds, " + parallel + " above the parallel cutoff");
+    }
+
+    // mostly large, sometimes empty or tiny, so one side of the recursion can run out early
+    private static int size(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return random.nextInt(3);
+            case 1:
+                return random.nextInt(100);
+            default:
+                return random.nextInt(MAX_KEYS);
+        }
+    }
+
+    private static TreeMap<Integer, String> items(Random random, int n, int offset, int range, String prefix) {
+        TreeMap<Integer, String> ret = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            int k = offset + random.nextInt(range);
+            ret.put(k, prefix + k);
+        }
+        return ret;
+    }
+
+    // inserted in random order, so the tree's shape does not follow the key order
+    private static AVLTree tree(TreeMap<Integer, String> items) {
+        AVLTree ret = new AVLTree();
+        Integer[] keys = items.keySet().toArray(new Integer[0]);
+        Random random = new Random(keys.length);
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+        for (Integer key : keys) {
+            ret.insert(key, items.get(key));
+        }
+        return ret;
+    }
+
+    private static void check(AVLTree result, TreeMap<Integer, String> expected, AVLTree t1, AVLTree t2, String where) {
+        AVLTreeChecker.check(result, expected, where);
+        AVLTreeChecker.check(t1, new TreeMap<>(), where + ", first operand");
+        AVLTreeChecker.check(t2, new TreeMap<>(), where + ", second operand");
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// randomized test of ShardedAVLTree resharding against a TreeMap.
+// a small split threshold makes the tree split and merge shards all the time: the key set repeatedly
+// grows and shrinks, over the whole range and in narrow bands. after every operation the contents are
+// checked (size, keys, infos, min, max, searches) and so is the shard layout from shardStats: the low
+// keys are increasing from Integer.MIN_VALUE, every shard holds exactly the TreeMap's keys in its
+// range, no shard is above the split threshold, a shard below the merge threshold was only left alone
+// if merging it would have been too big, and the shard count changes exactly when a split or a merge
+// is counted. a last phase runs threads on interleaved keys and checks the same after they joined.
+public class ShardedAVLTreeStress {
+    private static final int SPLIT_THRESHOLD = 16;
+    private static final int CYCLES = 40;
+    private static final int KEYS = 1500;
+    private static final int THREADS = 4;
+    private static final int OPS_PER_THREAD = 50000;
+
+    public static void main(String[] args) throws InterruptedException {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 15);
+        ShardedAVLTree tree = new ShardedAVLTree(SPLIT_THRESHOLD);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        long ops = 0;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            // every other cycle works in a narrow band, so shards there split deeply and merge back
+            int lo = cycle % 2 == 0 ? 0 : random.nextInt(KEYS - 200);
+            int width = cycle % 2 == 0 ? KEYS : 200;
+            int target = random.nextInt(width);
+            for (int op = 0; op < 2 * width; op++, ops++) {
+                String where = "cycle " + cycle + ", op " + op;
+                int k = lo + random.nextInt(width);
+                int shards = tree.shardCount();
+                int splits = tree.getSplits();
+                int merges = tree.getMerges();
+                // grow towards target items in the band, then shrink below it
+                boolean insert = expected.subMap(lo, lo + width).size() < target ? random.nextInt(4) > 0 : random.nextInt(4) == 0;
+                if (insert) {
+                    int result = tree.insert(k, "v" + cycle + "/" + op);
+                    if ((result == -1) != expected.containsKey(k)) {
+                        throw new AssertionError(where + ": insert(" + k + ") returned " + result);
+                    }
+                    expected.putIfAbsent(k, "v" + cycle + "/" + op);
+                    if (tree.getMerges() != merges || tree.shardCount() != shards + tree.getSplits() - splits
+                            || tree.getSplits() - splits > 1) {
+                        throw new AssertionError(where + ": insert went from " + shards + " to " + tree.shardCount()
+                                + " shards with " + (tree.getSplits() - splits) + " splits");
+                    }
+                }
+                else {
+                    int result = tree.delete(k);
+                    if ((result == -1) != !expected.containsKey(k)) {
+                        throw new AssertionError(where + ": delete(" + k + ") returned " + result);
+                    }
+                    expected.remove(k);
+                    if (tree.getSplits() != splits || tree.shardCount() != shards - (tree.getMerges() - merges)
+                            || tree.getMerges() - merges > 1) {
+                        throw new AssertionError(where + ": delete went from " + shards + " to " + tree.shardCount()
+                                + " shards with " + (tree.getMerges() - merges) + " merges");
+                    }
+                    if (result != -1) {
+                        checkNotMergeable(tree, k, where);
+                    }
+                }
+                check(tree, expected, random, where);
+            }
+        }
+        if (tree.getSplits() < 100 || tree.getMerges() < 100) {
+            throw new AssertionError("only " + tree.getSplits() + " splits and " + tree.getMerges() + " merges");
+        }
+        concurrent(tree, expected);
+        System.out.println("ok: " + ops + " operations, " + tree.getSplits() + " splits, " + tree.getMerges() + " merges");
+    }
+
+    // thread t only touches keys k with k % THREADS == t, so each thread can keep its own expected map
+    private static void concurrent(ShardedAVLTree tree, TreeMap<Integer, String> expected) throws InterruptedException {
+        List<TreeMap<Integer, String>> parts = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            TreeMap<Integer, String> part = new TreeMap<>();
+            for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+                if (entry.getKey() % THREADS == t) {
+                    part.put(entry.getKey(), entry.getValue());
+                }
+            }
+            parts.add(part);
+            int id = t;
+            Random random = new Random(id);
+            threads[t] = new Thread(() -> {
+                for (int op = 0; op < OPS_PER_THREAD; op++) {
+                    int k = random.nextInt(KEYS / THREADS) * THREADS + id;
+                    // the first half grows the tree, the second half empties most of it
+                    if (random.nextInt(4) < (op < OPS_PER_THREAD / 2 ? 3 : 1)) {
+                        if ((tree.insert(k, "t" + id + "/" + op) == -1) != part.containsKey(k)) {
+                            throw new AssertionError("thread " + id + ", op " + op + ": wrong insert result for " + k);
+                        }
+                        part.putIfAbsent(k, "t" + id + "/" + op);
+                    }
+                    else {
+                        if ((tree.delete(k) == -1) != !part.containsKey(k)) {
+                            throw new AssertionError("thread " + id + ", op " + op + ": wrong delete result for " + k);
+                        }
+                        part.remove(k);
+                    }
+                    if (!AVLTreeChecker.same(tree.search(k), part.get(k))) {
+                        throw new AssertionError("thread " + id + ", op " + op + ": wrong search result for " + k);
+                    }
+                }
+            });
+            threads[t].setUncaughtExceptionHandler((thread, e) -> failures.add(e));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError("a thread failed", failures.get(0));
+        }
+        expected.clear();
+        for (TreeMap<Integer, String> part : parts) {
+            expected.putAll(part);
+        }
+        check(tree, expected, new Random(0), "after the threads");
+    }
+
+    // a shard left below the merge threshold by a delete must be too big to merge with either neighbour
+    private static void checkNotMergeable(ShardedAVLTree tree, int k, String where) {
+        List<ShardedAVLTree.ShardStats> stats = tree.shardStats();
+        int index = 0;
+        while (index + 1 < stats.size() && stats.get(index + 1).getLowKey() <= k) {
+            index++;
+        }
+        int own = stats.get(index).getSize();
+        if (stats.size() == 1 || own >= SPLIT_THRESHOLD / 4) {
+            return;
+        }
+        for (int neighbour = index - 1; neighbour <= index + 1; neighbour += 2) {
+            if (neighbour >= 0 && neighbour < stats.size() && own + stats.get(neighbour).getSize() <= SPLIT_THRESHOLD / 2) {
+                throw new AssertionError(where + ": shard " + index + " with " + own + " items was not merged with shard "
+                        + neighbour + " with " + stats.get(neighbour).getSize());
+            }
+        }
+    }
+
+    private static void check(ShardedAVLTree tree, TreeMap<Integer, String> expected, Random random, String where) {
+        if (tree.size() != expected.size() || tree.empty() != expected.isEmpty()) {
+            throw new AssertionError(where + ": size " + tree.size() + ", expected " + expected.size());
+        }
+        int[] keys = new int[expected.size()];
+        String[] infos = new String[expected.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            keys[i] = entry.getKey();
+            infos[i++] = entry.getValue();
+        }
+        if (!Arrays.equals(tree.keysToArray(), keys) || !Arrays.equals(tree.infoToArray(), infos)) {
+            throw new AssertionError(where + ": the items differ from the expected ones");
+        }
+        String min = expected.isEmpty() ? null : expected.firstEntry().getValue();
+        String max = expected.isEmpty() ? null : expected.lastEntry().getValue();
+        if (!AVLTreeChecker.same(tree.min(), min) || !AVLTreeChecker.same(tree.max(), max)) {
+            throw new AssertionError(where + ": min " + tree.min() + ", max " + tree.max() + ", expected " + min + ", " + max);
+        }
+        for (int j = 0; j < 4; j++) {
+            int q = random.nextInt(KEYS);
+            if (!AVLTreeChecker.same(tree.search(q), expected.get(q))) {
+                throw new AssertionError(where + ": search(" + q + ") returned " + tree.search(q));
+            }
+        }
+        List<ShardedAVLTree.ShardStats> stats = tree.shardStats();
+        if (stats.size() != tree.shardCount() || stats.get(0).getLowKey() != Integer.MIN_VALUE) {
+            throw new AssertionError(where + ": " + stats.size() + " shards, the first from " + stats.get(0).getLowKey());
+        }
+        for (int s = 0; s < stats.size(); s++) {
+            int lowKey = stats.get(s).getLowKey();
+            boolean last = s + 1 == stats.size();
+            if (!last && stats.get(s + 1).getLowKey() <= lowKey) {
+                throw new AssertionError(where + ": low keys not increasing at shard " + s);
+            }
+            int size = stats.get(s).getSize();
+            int inRange = last ? expected.tailMap(lowKey, true).size() : expected.subMap(lowKey, stats.get(s + 1).getLowKey()).size();
+            if (size != inRange) {
+                throw new AssertionError(where + ": shard " + s + " from " + lowKey + " has " + size + " items, " + inRange + " keys are in its range");
+            }
+            if (size > SPLIT_THRESHOLD) {
+                throw new AssertionError(where + ": shard " + s + " has " + size + " items, more than the split threshold");
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Random;
+
+// value updates on a tree of n random keys, the old way against the single descent operations.
+//   update:  set the info of a present key. old: search, then delete and insert (3 lookups, 2 rebalances;
+//            finger search makes the last two short climbs) against upsert (1 descent, no rebalance)
+//   upsert:  UPDATE_SHARE present keys, the others new. old: search, then delete if found, and insert
+//            against upsert. the new keys are deleted again (untimed) after every round
+//   counter: add 1 to a numeric info. old: search, delete, insert against compute
+// every workload is run ROUNDS times per mode, alternating the modes, and the best round is reported
+// in ns per operation.
+//   java UpsertBenchmark [n] [ops]
+public class UpsertBenchmark {
+    private static final int ROUNDS = 5;
+    private static final double UPDATE_SHARE = 0.9;
+
+    private interface Workload {
+        void run(AVLTree tree, int[] keys);
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        Random random = new Random(1);
+        AVLTree tree = new AVLTree();
+        int[] present = new int[n];
+        for (int i = 0; i < n; i++) {
+            int k;
+            do {
+                k = random.nextInt(Integer.MAX_VALUE);
+            } while (tree.insert(k, "0") == -1);
+            present[i] = k;
+        }
+        int[] updates = new int[ops];
+        int[] mixed = new int[ops];
+        for (int i = 0; i < ops; i++) {
+            updates[i] = present[random.nextInt(n)];
+            mixed[i] = random.nextDouble() < UPDATE_SHARE ? present[random.nextInt(n)] : random.nextInt(Integer.MAX_VALUE);
+        }
+        System.out.printf("n=%,d, %,d operations per round%n%-10s %14s %14s %8s%n",
+                n, ops, "workload", "old (ns/op)", "new (ns/op)", "speedup");
+        report("update", tree, updates, (t, keys) -> {
+            for (int k : keys) {
+                if (t.search(k) != null) {
+                    t.delete(k);
+                }
+                t.insert(k, "1");
+            }
+        }, (t, keys) -> {
+            for (int k : keys) {
+                t.upsert(k, "1");
+            }
+        });
+        report("upsert", tree, mixed, (t, keys) -> {
+            for (int k : keys) {
+                if (t.search(k) != null) {
+                    t.delete(k);
+                }
+                t.insert(k, "1");
+            }
+        }, (t, keys) -> {
+            for (int k : keys) {
+                t.upsert(k, "1");
+            }
+        });
+        report("counter", tree, updates, (t, keys) -> {
+            for (int k : keys) {
+                String info = t.search(k);
+                t.delete(k);
+                t.insert(k, Integer.toString(Integer.parseInt(info) + 1));
+            }
+        }, (t, keys) -> {
+            for (int k : keys) {
+                t.compute(k, info -> Integer.toString(Integer.parseInt(info) + 1));
+            }
+        });
+    }
+
+    private static void report(String name, AVLTree tree, int[] keys, Workload old, Workload single) {
+        double oldTime = Double.MAX_VALUE;
+        double newTime = Double.MAX_VALUE;
+        int[] before = tree.keysToArray();
+        for (int round = 0; round < ROUNDS; round++) {
+            oldTime = Math.min(oldTime, time(tree, keys, old, before));
+            newTime = Math.min(newTime, time(tree, keys, single, before));
+        }
+        System.out.printf("%-10s %14.1f %14.1f %7.2fx%n", name, oldTime, newTime, oldTime / newTime);
+    }
+
+    // times one round, then deletes the keys the round inserted
+    private static double time(AVLTree tree, int[] keys, Workload workload, int[] before) {
+        System.gc();
+        long start = System.nanoTime();
+        workload.run(tree, keys);
+        double time = (System.nanoTime() - start) / (double) keys.length;
+        sink += tree.size();
+        if (tree.size() != before.length) {
+            int[] after = tree.keysToArray();
+            int[] added = new int[after.length - before.length];
+            for (int a = 0, b = 0, c = 0; a < after.length; a++) {
+                if (b < before.length && before[b] == after[a]) {
+                    b++;
+                }
+                else {
+                    added[c++] = after[a];
+                }
+            }
+            tree.deleteAll(added);
+        }
+        return time;
+    }
+}
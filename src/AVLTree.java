@@ -1,5 +1,24 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
 
 /**
  *
@@ -8,49 +27,241 @@ import java.io.OutputStreamWriter;
  * An implementation of a AVL Tree with
  * distinct integer keys and info
  *
+ * The rotations, retracing, joins and splits are the ones of AbstractAVLTree, shared with the
+ * generic trees. Inside the tree a missing child is null; the IAVLNode methods show it as the
+ * virtual leaf of the tree.
+ *
  */
 
 
-public class AVLTree {
+public class AVLTree extends AbstractAVLTree<String, AVLTree.AVLNode> implements Iterable<AVLTree.IAVLNode> {
 
 	//Fields
-	private IAVLNode root;
-	private int size;
-	private IAVLNode min;
-	private IAVLNode max;
+	// single shared virtual leaf of this tree, getLeft and getRight return it for a missing child
+	private final AVLNode virtualNode = new AVLNode();
+	// gets the path lengths and rebalancing work of each operation, null (and never called) unless set
+	private AVLTreeListener listener;
+	// the node last found or inserted, where searches near it start. null when unknown
+	private AVLNode finger;
+	// a finger further than 1/FINGER_REACH of the key range from the key is not used
+	private static final int FINGER_REACH = 64;
+	private boolean fingerSearch = true;
+	// the infos of recently searched keys, null (and never looked at) unless set
+	private HotKeyCache cache;
+	// holds (at least) every key of the tree, null (and never looked at) unless set
+	private BlockedBloomFilter filter;
+	// the filter is sized for twice the keys when it is rebuilt, and for at least MIN_FILTER_CAPACITY
+	private static final int MIN_FILTER_CAPACITY = 1024;
 
 	//Constructor for new empty AVLTree
 	public AVLTree(){
-		this.root = new AVLNode();
-		this.size = 0;
-		this.min = null;
-		this.max = null;
-	}
-	// Sets the root of a tree to a given node
-	private void setRoot(IAVLNode node){
-		this.root = node;
-		IAVLNode parent = node.getParent();
-		if (parent != null) {
-			if(parent.getLeft() == node) {
-				parent.setLeft(new AVLNode());
+	}
+	/**
+	 * public static AVLTree fromSorted(int[] keys, String[] infos)
+	 *
+	 * builds a tree from keys in ascending order and their infos in O(n), without rotations.
+	 * precondition: keys are sorted and distinct, infos.length == keys.length
+	 */
+	public static AVLTree fromSorted(int[] keys, String[] infos){
+		return fromSorted(keys.length, Arrays.stream(keys).iterator(), Arrays.asList(infos).iterator());
+	}
+
+	/**
+	 * public static AVLTree fromSorted(int n, PrimitiveIterator.OfInt keys, Iterator<String> infos)
+	 *
+	 * builds a tree from the next n keys (in ascending order) and infos of the given iterators,
+	 * reading each of them once in order, in O(n) and without rotations.
+	 * precondition: the n keys are sorted and distinct, both iterators have at least n more elements
+	 */
+	public static AVLTree fromSorted(int n, PrimitiveIterator.OfInt keys, Iterator<String> infos){
+		AVLTree tree = new AVLTree();
+		tree.setRoot(tree.buildSorted(n, keys, infos));
+		return tree;
+	}
+
+	// builds a subtree of count nodes taking keys and infos in order, and returns its root.
+	// the two sides get (count-1)/2 and count/2 nodes, so their heights differ by at most 1.
+	private AVLNode buildSorted(int count, PrimitiveIterator.OfInt keys, Iterator<String> infos){
+		if (count == 0) return null;
+		int leftCount = (count - 1) / 2;
+		AVLNode left = buildSorted(leftCount, keys, infos);
+		AVLNode node = new AVLNode(keys.nextInt(), infos.next());
+		AVLNode right = buildSorted(count - 1 - leftCount, keys, infos);
+		linkChildren(node, left, right);
+		return node;
+	}
+
+	// snapshot layout: magic, version, size, min key, max key, length of the key block (all big endian),
+	// then the key block and the info block.
+	// key block: the first key zigzag encoded, then for each next key (key - previous key - 1), all as varints.
+	// info block: per item (in key order) a varint with the UTF-8 length + 1 (0 for null info), then the bytes.
+	private static final int SNAPSHOT_MAGIC = 0x41564c53; // "AVLS"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_HEADER_BYTES = 4 + 4 + 4 + 4 + 4 + 8;
+
+	/**
+	 * public void writeSnapshot(Path path) throws IOException
+	 *
+	 * writes all items of the tree to path (replacing it) in the compact binary format read by loadSnapshot.
+	 * keys are delta encoded, so a dense tree takes about 1 byte per key plus its info.
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+		long keyBytes = 0;
+		long prev = 0;
+		for (AVLNode node = this.min; node != null; node = successor(node)) {
+			keyBytes += varintLength(node == this.min ? zigzag(node.getKey()) : node.getKey() - prev - 1);
+			prev = node.getKey();
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeInt(this.size);
+			out.writeInt(this.min == null ? 0 : this.min.getKey());
+			out.writeInt(this.max == null ? 0 : this.max.getKey());
+			out.writeLong(keyBytes);
+			for (AVLNode node = this.min; node != null; node = successor(node)) {
+				writeVarint(out, node == this.min ? zigzag(node.getKey()) : node.getKey() - prev - 1);
+				prev = node.getKey();
 			}
-			else {
-				parent.setRight(new AVLNode());
+			for (AVLNode node = this.min; node != null; node = successor(node)) {
+				String info = node.getValue();
+				if (info == null) {
+					writeVarint(out, 0);
+				}
+				else {
+					byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+					writeVarint(out, bytes.length + 1L);
+					out.write(bytes);
+				}
 			}
 		}
+	}
 
-		node.setParent(null);
+	/**
+	 * public static AVLTree loadSnapshot(Path path) throws IOException
+	 *
+	 * reads a tree written by writeSnapshot. The file is memory mapped and decoded in one pass
+	 * straight into fromSorted, so the tree is built in O(n) without rotations.
+	 * throws IOException if the file is not a valid snapshot.
+	 */
+	public static AVLTree loadSnapshot(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("snapshot is too large to map: " + path);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (length < SNAPSHOT_HEADER_BYTES || buffer.getInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("not an AVLTree snapshot: " + path);
+			}
+			if (buffer.getInt() != SNAPSHOT_VERSION) {
+				throw new IOException("unknown snapshot version: " + path);
+			}
+			int n = buffer.getInt();
+			int minKey = buffer.getInt();
+			int maxKey = buffer.getInt();
+			long keyBytes = buffer.getLong();
+			if (n < 0 || keyBytes < 0 || keyBytes > length - SNAPSHOT_HEADER_BYTES) {
+				throw new IOException("corrupt snapshot header: " + path);
+			}
+			ByteBuffer keys = buffer.duplicate();
+			ByteBuffer infos = buffer.duplicate();
+			infos.position(SNAPSHOT_HEADER_BYTES + (int) keyBytes);
+			PrimitiveIterator.OfInt keyIterator = new PrimitiveIterator.OfInt() {
+				private long prev;
+				private int read;
+
+				public boolean hasNext() {
+					return this.read < n;
+				}
+
+				public int nextInt() {
+					long value = readVarint(keys);
+					this.prev = this.read++ == 0 ? unzigzag(value) : this.prev + value + 1;
+					if (this.prev > Integer.MAX_VALUE || this.prev < Integer.MIN_VALUE) {
+						throw new IllegalStateException("key out of range");
+					}
+					return (int) this.prev;
+				}
+			};
+			Iterator<String> infoIterator = new Iterator<String>() {
+				private byte[] bytes = new byte[64];
+				private int read;
+
+				public boolean hasNext() {
+					return this.read < n;
+				}
+
+				public String next() {
+					this.read++;
+					long value = readVarint(infos);
+					if (value == 0) {
+						return null;
+					}
+					if (value - 1 > infos.remaining()) {
+						throw new IllegalStateException("info out of range");
+					}
+					int len = (int) (value - 1);
+					if (len > this.bytes.length) {
+						this.bytes = new byte[Math.max(len, 2 * this.bytes.length)];
+					}
+					infos.get(this.bytes, 0, len);
+					return new String(this.bytes, 0, len, StandardCharsets.UTF_8);
+				}
+			};
+			AVLTree tree;
+			try {
+				tree = fromSorted(n, keyIterator, infoIterator);
+			}
+			catch (BufferUnderflowException | IllegalStateException e) {
+				throw new IOException("corrupt snapshot: " + path, e);
+			}
+			boolean valid = keys.position() == SNAPSHOT_HEADER_BYTES + keyBytes && infos.position() == length
+					&& (n == 0 || (tree.min.getKey() == minKey && tree.max.getKey() == maxKey));
+			if (!valid) {
+				throw new IOException("corrupt snapshot: " + path);
+			}
+			return tree;
+		}
 	}
 
-  /**
-   * public boolean empty()
-   *
-   * returns true if and only if the tree is empty
-   *
-   */
-  public boolean empty() {
-    return !this.getRoot().isRealNode();
-  }
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static int varintLength(long value) {
+		int len = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			len++;
+		}
+		return len;
+	}
+
+	// writes value 7 bits at a time, low bits first, with the high bit set on all bytes but the last
+	private static void writeVarint(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarint(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("varint too long");
+	}
 
  /**
    * public String search(int k)
@@ -59,7 +270,14 @@ public class AVLTree {
    * otherwise, returns null
    */
  public String search (int k) {
- 	IAVLNode ret = search_node(k,this.getRoot());
+ 	if (this.cache != null || this.filter != null){
+ 		return searchFront(k);
+	}
+ 	if (this.listener != null){
+ 		AVLNode node = findNodeAndReport(k);
+ 		return node == null ? null : node.getValue();
+	}
+ 	AVLNode ret = findNode(k);
  	if (ret==null) return null;
  	else {
  		return ret.getValue();
@@ -68,254 +286,434 @@ public class AVLTree {
 
  }
 
- // given key k and node recrusivly searches the node with key equals to k.
-  private IAVLNode search_node (int k, IAVLNode node){
-  	if (!node.isRealNode()){
-  		return null;
+ /**
+   * public String peek(int k)
+   *
+   * returns the info of an item with key k if it exists in the tree, otherwise null, like search,
+   * but only reads the tree: it descends from the root and does not move the finger, use the cache
+   * or the filter, or tell the listener. Threads may peek at the same time as long as none changes the tree.
+   */
+ public String peek(int k) {
+ 	AVLNode node = search_node(k, this.root);
+ 	return node == null ? null : node.getValue();
+ }
+
+ // search through the cache and the filter, whichever are set: a cached key is answered from the cache
+ // and a key the filter rules out without a descent. Keys found in the tree are cached.
+ private String searchFront(int k) {
+ 	if (this.cache != null){
+ 		int slot = this.cache.lookup(k);
+ 		if (slot >= 0){
+ 			if (this.listener != null){
+ 				this.listener.onSearch(0);
+			}
+ 			return this.cache.infoAt(slot);
+		}
 	}
-  	if (node.getKey() == k){
-  		return node;
+ 	if (this.filter != null && !this.filter.mightContain(k)){
+ 		if (this.listener != null){
+ 			this.listener.onSearch(0);
+		}
+ 		return null;
 	}
-  	if (node.getKey()<k){
-  		return search_node(k,node.getRight());
+ 	AVLNode node = this.listener != null ? findNodeAndReport(k) : findNode(k);
+ 	if (node == null){
+ 		if (this.filter != null){
+ 			this.filter.recordFalsePositive();
+		}
+ 		return null;
 	}
-  	else{
-  		return search_node(k,node.getLeft());
+ 	if (this.cache != null){
+ 		this.cache.put(k, node.getValue());
 	}
-  }
-	//given a node, find the minimum value of the subtree that node is the root of.
- 	private IAVLNode minNode(IAVLNode node){
- 	while (node.isRealNode()){
- 		node = node.getLeft();
+ 	return node.getValue();
+ }
+
+
+ // findNode that counts the nodes it visits for the listener: the ones climbed over from the finger
+ // and the ones on the way down
+ private AVLNode findNodeAndReport(int k) {
+ 	if (this.min == null || k < this.min.key || k > this.max.key){
+ 		this.listener.onSearch(0);
+ 		return null;
 	}
- 	return node.getParent();
+ 	AVLNode start = this.fingerSearch ? closestFinger(k) : this.root;
+ 	AVLNode node = climb(start, k);
+ 	int pathLength = 0;
+ 	for (AVLNode climbed = start; climbed != node; climbed = climbed.parent){
+ 		pathLength++;
 	}
-	public IAVLNode maxNode(IAVLNode node){
-		while (node.isRealNode()){
-			node = node.getRight();
+ 	while (node != null){
+ 		pathLength++;
+ 		if (node.key == k){
+ 			break;
 		}
-		return node.getParent();
+ 		node = node.key<k ? node.right : node.left;
 	}
+ 	this.listener.onSearch(pathLength);
+ 	if (node != null){
+ 		this.finger = node;
+	}
+ 	return node;
+ }
 
+ /**
+  * public void setListener(AVLTreeListener listener)
+  *
+  * sets the listener that is told the path length and rebalancing work of every search, insert,
+  * delete, split and join, or removes it if listener is null.
+  * without a listener the operations only pay one null check.
+  */
+ public void setListener(AVLTreeListener listener) {
+ 	this.listener = listener;
+ }
 
+ /**
+  * public AVLTreeListener getListener()
+  *
+  * returns the listener of the tree, or null if there is none.
+  */
+ public AVLTreeListener getListener() {
+ 	return this.listener;
+ }
 
-  /**
-   * public int insert(int k, String i)
-   *
-   * inserts an item with key k and info i to the AVL tree.
-   * the tree must remain valid (keep its invariants).
-   * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
-   * promotion/rotation - counted as one rebalnce operation, double-rotation is counted as 2.
-   * returns -1 if an item with key k already exists in the tree.
-   */
-  // node balance factor is -2
-  private void rightRotation (IAVLNode y){
-		IAVLNode x = y.getLeft();
-	  	if (y==this.getRoot()){
-		this.root = x;
-	  	}
-	  	else {
-			if (y.getParent().getLeft() == y) {
-				y.getParent().setLeft(x);
-			} else {
-				y.getParent().setRight(x);
-			}
-		}
-		IAVLNode b  = x.getRight();
-		x.setRight(y);
-		x.setParent(y.getParent());
-		y.setParent(x);
-		y.setLeft(b);
-	  	y.setHeight(calcHeight(y));
-	  	x.setHeight(calcHeight(x));
-		b.setParent(y);
-  }
-	//Performs left Rotation
-  private void leftRotation(IAVLNode y){
-  	IAVLNode x = y.getRight();
-  	if(y==this.getRoot()){
-  		this.root = x;
-	}
-  	else {
-  		if (y.getParent().getRight()==y){
-			y.getParent().setRight(x);
-		}
-		else{
-			y.getParent().setLeft(x);
-		}
-	}
-  	IAVLNode b = x.getLeft();
-  	x.setLeft(y);
-  	x.setParent(y.getParent());
-  	y.setParent(x);
-  	y.setRight(b);
-  	y.setHeight(calcHeight(y));
-  	x.setHeight(calcHeight(x));
-  	b.setParent(y);
-  }
-  // given a node y calculate his height base on his 2 children as in formula.
-  private static int calcHeight (IAVLNode y){
-  	return Math.max(y.getLeft().getHeight(),y.getRight().getHeight())+1;
-  }
-  //Performs right then left Rotation
-  private void rightThenLeftRotation (IAVLNode z){
-  	rightRotation(z.getRight());
-  	leftRotation(z);
-  }
-	//Performs right then left Rotation
-	private void leftThenRightRotation (IAVLNode z){
-  		leftRotation(z.getLeft());
-		rightRotation(z);
-	}
-	//calculate balance factor based on the two children of a given node.
-  private static int getBalanceFactor (IAVLNode node){
-  	return node.getLeft().getHeight()- node.getRight().getHeight();
-  }
+ /**
+  * public void setCache(int capacity)
+  *
+  * puts a HotKeyCache of (at least) capacity entries in front of search, or removes it if capacity is 0.
+  * a key that search finds in the tree is cached with its info, so later searches of a hot key
+  * return without a descent. delete removes the key from the cache, and split, the batch operations
+  * and join clear it; keys that are not in the tree are never cached, so insert needs no update.
+  * the trees made by split, fromSorted and the set operations start without a cache.
+  * without a cache search only pays one null check.
+  * a search with a cache changes it, so such a tree must not be searched by several threads at once.
+  */
+ public void setCache(int capacity) {
+ 	if (capacity < 0){
+ 		throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+	}
+ 	this.cache = capacity == 0 ? null : new HotKeyCache(capacity);
+ }
 
-	//perform insert of a node given its key and info
-	// an envelope function of insert_rec that performs the actual insertion.
-   public int insert(int k, String i) {
-   	IAVLNode node = new AVLNode(k,i);
-   	if (this.empty()){
-		updateMinMaxInsert(node);
-   		this.root = node;
-		this.size++;
-   	}
-   	else {
-		if (insert_rec(this.root, node)){
-			this.size++;
-			updateMinMaxInsert(node);
-		}
-		else {
-			return -1;}
+ /**
+  * public HotKeyCache getCache()
+  *
+  * returns the cache of the tree (for its hit and miss counters), or null if there is none.
+  */
+ public HotKeyCache getCache() {
+ 	return this.cache;
+ }
 
-   	}
+ /**
+  * public void setFilter(boolean enabled)
+  *
+  * keeps a BlockedBloomFilter of the keys alongside the tree, or drops it. A search or delete of a key
+  * the filter rules out returns without a descent. insert still has to descend to link a new key, but
+  * an insert of a key the filter can not rule out returns -1 from the cache, if the key is cached there.
+  * the filter is built here from the keys in O(n), and rebuilt the same way, at twice the size of the
+  * tree, once it holds more keys (live or removed) than it is sized for or the removed keys outnumber
+  * the live ones, so each insert and delete pays O(1) amortized for it. split (which empties the tree)
+  * clears it, join adds the keys of t to it, and the trees made by split, fromSorted and the set
+  * operations start without one.
+  */
+ public void setFilter(boolean enabled) {
+ 	this.filter = enabled ? new BlockedBloomFilter(MIN_FILTER_CAPACITY) : null;
+ 	rebuildFilter();
+ }
+
+ /**
+  * public BlockedBloomFilter getFilter()
+  *
+  * returns the filter of the tree (for its false positive rate), or null if there is none.
+  */
+ public BlockedBloomFilter getFilter() {
+ 	return this.filter;
+ }
 
-   	return keepBalanced(node);
+ /**
+  * public void rebuildFilter()
+  *
+  * builds the filter again from the keys of the tree, sized for twice as many, in O(n).
+  * does nothing without a filter.
+  */
+ public void rebuildFilter() {
+ 	if (this.filter == null){
+ 		return;
 	}
+ 	this.filter.reset((int) Math.min(Math.max(2L * this.size, MIN_FILTER_CAPACITY), Integer.MAX_VALUE));
+ 	for (AVLNode node = this.min; node != null; node = successor(node)){
+ 		this.filter.add(node.key);
+	}
+ }
 
-	// insert_rec is recursive function that makes insert. return true if inserted new node and false if node already exsits and nothing has been done
-	public boolean insert_rec (IAVLNode node , IAVLNode to_insert){
-   	if (!node.isRealNode()){
-   		if (node.getParent().getLeft()==node) node.getParent().setLeft(to_insert);
-   		else node.getParent().setRight(to_insert);
-   		to_insert.setParent(node.getParent());
-   		while (node.getParent()!= null){
-   			node = node.getParent();
-   			node.setHeight(Math.max(node.getLeft().getHeight(),node.getRight().getHeight())+1);
+ // adds a new key of the tree to the filter (if any), and rebuilds it if it is now over capacity
+ private void addToFilter(int k) {
+ 	addToFilter(k, false);
+ }
+
+ // same, where passedFilter tells that the filter did not rule k out before it was inserted
+ private void addToFilter(int k, boolean passedFilter) {
+ 	if (this.filter != null){
+ 		if (passedFilter){
+ 			this.filter.recordFalsePositive();
 		}
-	}
-   	else{
-   		if (node.getKey()<to_insert.getKey()){
-   			return insert_rec(node.getRight() , to_insert);
+ 		this.filter.add(k);
+ 		if (this.size + this.filter.getStale() > this.filter.capacity()){
+ 			rebuildFilter();
 		}
-   		else if (node.getKey()==to_insert.getKey()){
-   			return false;
+	}
+ }
+
+ // counts removed keys as stale in the filter (if any), and rebuilds it once they outnumber the keys left
+ private void removeFromFilter(int removed) {
+ 	if (this.filter != null){
+ 		this.filter.addStale(removed);
+ 		if (this.filter.getStale() > Math.max(this.size, MIN_FILTER_CAPACITY / 2)){
+ 			rebuildFilter();
 		}
-   		else{
-   			return insert_rec(node.getLeft(),to_insert);
+	}
+ }
+
+ /**
+  * public void setFingerSearch(boolean enabled)
+  *
+  * turns finger search on (the default) or off. With finger search, search, insert and delete
+  * start from the node the last one found or inserted (or from min or max, whichever is closest)
+  * and climb only as far as needed, so keys near the previous one cost O(log d), d the distance
+  * between them, instead of a descent from the root. A key above max or below min is inserted
+  * right under max or min. Inserts still add 1 to the subtree size of every ancestor.
+  * Turned off, every operation descends from the root.
+  */
+ public void setFingerSearch(boolean enabled) {
+ 	this.fingerSearch = enabled;
+ 	this.finger = null;
+ }
+
+ // returns the node with key k or null, starting at min, max or the finger when finger search is on
+ private AVLNode findNode(int k) {
+ 	if (this.min == null || k < this.min.key || k > this.max.key){
+ 		return null;
+	}
+ 	AVLNode node = search_node(k, this.fingerSearch ? climb(closestFinger(k), k) : this.root);
+ 	if (node != null){
+ 		this.finger = node;
+	}
+ 	return node;
+ }
+
+ // returns whichever of min, max and the finger has the key closest to k, or the root if even that one
+ // is further than 1/FINGER_REACH of the key range: climbing from there would most likely end at the root.
+ // pre: the tree is not empty
+ private AVLNode closestFinger(int k) {
+ 	long distance = Math.min(k - (long) this.min.key, this.max.key - (long) k);
+ 	AVLNode ret = k - (long) this.min.key == distance ? this.min : this.max;
+ 	if (this.finger != null && Math.abs(k - (long) this.finger.key) < distance){
+ 		distance = Math.abs(k - (long) this.finger.key);
+ 		ret = this.finger;
+	}
+ 	if (distance * FINGER_REACH > this.max.key - (long) this.min.key){
+ 		return this.root;
+	}
+ 	return ret;
+ }
+
+ // climbs from node to the lowest ancestor (or node itself) whose subtree holds the keys around k:
+ // going up from a left child to a parent with a bigger key (or from a right child to one with a
+ // smaller key) bounds the subtree on that side, the other bound was already passed on the way up.
+ private static AVLNode climb(AVLNode node, int k) {
+ 	if (k > node.key){
+ 		for (AVLNode p = node.parent; p != null && !(p.left == node && k < p.key); p = node.parent){
+ 			node = p;
+ 			if (k == p.key){
+ 				break;
+			}
 		}
 	}
-	return true;
+ 	else if (k < node.key){
+ 		for (AVLNode p = node.parent; p != null && !(p.right == node && k > p.key); p = node.parent){
+ 			node = p;
+ 			if (k == p.key){
+ 				break;
+			}
+		}
 	}
+ 	return node;
+ }
 
-	//updates the fields min and max for insertion of new node
-	private void updateMinMaxInsert(IAVLNode node){
-  		// if the first element should be the min and the max
-  		if (this.empty()){
-  			this.min = node;
-  			this.max = node;
+ // given key k and node iteratively searches the node with key equals to k.
+  private AVLNode search_node (int k, AVLNode node){
+  	while (node != null){
+  		if (node.key == k){
+  			return node;
 		}
-  		int key = node.getKey();
-  		if (key<this.min.getKey()){ //if key smaller than minimum -> update minimum
-  			min = node;
+  		if (node.key<k){
+  			node = node.right;
 		}
-  		if (key> this.max.getKey()){ //if key larger than minimum -> update maximum
-  			max = node;
+  		else{
+  			node = node.left;
 		}
-
 	}
+  	return null;
+  }
+  /**
+   * public int rank(int k)
+   *
+   * returns the number of keys in the tree that are smaller than or equal to k.
+   * runs in O(log n) using the subtree sizes.
+   */
+  public int rank(int k) {
+  	return countSmaller(k, true);
+  }
 
-	// determines thae which operation should be used on a specific node.
-	//returns:
-		// 1 - if node is a leaf
-		// 2 - if node has one child
-		// 3 -  if node has 2 children
-	private int nodeKind(IAVLNode node) {
-		if (node.getHeight() == 0) { //node is a leaf
-			return 1;
-		} else if (!node.getLeft().isRealNode() || !node.getRight().isRealNode()) {// node has one child
-			return 2;
-		} else { //node has 2 children
-			return 3;
+  // returns the number of keys smaller than k (or equal to k too, if inclusive).
+  private int countSmaller(int k, boolean inclusive) {
+  	int cnt = 0;
+  	AVLNode node = this.root;
+  	while (node != null){
+  		if (node.key < k || (inclusive && node.key == k)){
+  			cnt += sizeOf(node.left) + 1;
+  			node = node.right;
+		}
+  		else{
+  			node = node.left;
 		}
 	}
+  	return cnt;
+  }
 
-	private void calcHeightLeaf(IAVLNode node){
-		IAVLNode temp = node;
-		while(temp.getKey() != root.getKey()) {
-			temp.setHeight(calcHeight(temp));
-			temp = temp.getParent();
+  /**
+   * public int select(int i)
+   *
+   * returns the i'th smallest key in the tree (i = 1 is the minimum), so rank(select(i)) == i.
+   * returns -1 if i < 1 or i > size().
+   */
+  public int select(int i) {
+  	if (i < 1 || i > this.size){
+  		return -1;
+	}
+  	AVLNode node = this.root;
+  	while (true){
+  		int leftSize = sizeOf(node.left);
+  		if (i == leftSize + 1){
+  			return node.key;
+		}
+  		if (i <= leftSize){
+  			node = node.left;
+		}
+  		else{
+  			i -= leftSize + 1;
+  			node = node.right;
 		}
-		temp.setHeight(calcHeight(temp));
 	}
-	private static boolean isLeaf (IAVLNode node){
-		return (!(node.getRight().isRealNode() || node .getLeft().isRealNode()));
+  }
+
+  /**
+   * public int countInRange(int lo, int hi)
+   *
+   * returns the number of keys k in the tree with lo <= k <= hi, or 0 if lo > hi.
+   */
+  public int countInRange(int lo, int hi) {
+  	if (lo > hi){
+  		return 0;
 	}
+  	return countSmaller(hi, true) - countSmaller(lo, false);
+  }
 
-	//return the predeseccor of a node.
-	// pre: node is in tree
-	// if node == min -> returns null
-	private IAVLNode predecessor (IAVLNode node){
-		if (node == this.min) return null;
-		IAVLNode temp = node .getLeft();
-		if (temp.isRealNode()) {
-			while (temp.getRight().isRealNode()) {
-				temp = temp.getRight();
-			}
-		}
-		else{
-			temp = node.getParent();
-			while (temp.getLeft() == node){
-				node = temp;
-				temp = temp.getParent();
-			}
+	// returns the node with the largest key in the subtree of node
+	public IAVLNode maxNode(IAVLNode node){
+		return node.isRealNode() ? AbstractAVLTree.maxNode((AVLNode) node) : node;
+	}
 
-		}
-		return temp;
 
+
+  /**
+   * public int insert(int k, String i)
+   *
+   * inserts an item with key k and info i to the AVL tree.
+   * the tree must remain valid (keep its invariants).
+   * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+   * promotion/rotation - counted as one rebalnce operation, double-rotation is counted as 2.
+   * returns -1 if an item with key k already exists in the tree.
+   */
+	//perform insert of a node given its key and info
+	// descends iteratively to the virtual leaf where the key belongs, links the new node there
+	// and retraces up only as long as heights keep changing.
+	// subtree sizes are counted up on the way down and undone if the key already exists.
+   public int insert(int k, String i) {
+   	boolean passedFilter = this.filter != null && this.filter.mightContain(k);
+   	if (passedFilter && this.cache != null && this.cache.lookup(k) >= 0){ // a cached key is a duplicate
+   		return -1;
 	}
-	//return the Successor of a node.
-	// pre: node is in tree
-	// if node == max -> returns null
-	private IAVLNode successor(IAVLNode node){
-		if (node == this.max) return null;
-   		IAVLNode temp = node.getRight();
-   		if(temp.isRealNode()){
-   			while (temp.getLeft().isRealNode()){
-   				temp = temp.getLeft();
-			}
-		}
-   		else{
-   			temp = node.getParent();
-   			if (temp!= null){
-				while(temp.getRight()== node){
-					node = temp;
-					temp = temp.getParent();
+   	if (this.empty()){
+   		return linkNew(null, k, i, 0, passedFilter);
+   	}
+   	AVLNode parent;
+   	int pathLength = 1;
+   	if (this.fingerSearch && (k > this.max.key || k < this.min.key)){ // appended or prepended, it goes right under max or min
+   		parent = k > this.max.key ? this.max : this.min;
+   		addToSizes(parent, 1);
+	}
+   	else{
+   		// sizes are counted up on the way down from start (and undone if k is there), above start afterwards
+   		AVLNode start = this.fingerSearch ? climb(closestFinger(k), k) : this.root;
+   		parent = start;
+   		while (true){
+   			if (parent.key==k){
+   				for (AVLNode node = parent.parent; node != start.parent; node = node.parent){
+   					node.size--;
+				}
+   				if (this.fingerSearch){
+   					this.finger = parent;
 				}
+   				return -1;
+			}
+   			parent.size++;
+   			AVLNode next = parent.key<k ? parent.right : parent.left;
+   			if (next == null){
+   				break;
 			}
+   			parent = next;
+   			pathLength++;
 		}
-   		return temp;
+   		addToSizes(start.parent, 1);
 	}
-	// updates min and max of tree before any deletion occoured!
-	// pre: node is in tree
-	private void updateMinMaxDelete(IAVLNode node){
-		if (node == max) { //if no predecessor to max => only one node in tree => the tree becomes empty after delete => should set min and max to null
-			max = predecessor(max);
+   	return linkNew(parent, k, i, pathLength, passedFilter);
+	}
+
+	// links a new node (k, i) under parent, whose subtree size and its ancestors' already count it,
+	// or makes it the root of the empty tree if parent is null. returns the number of rebalancing operations.
+	// passedFilter tells that the filter did not rule k out before.
+	private int linkNew(AVLNode parent, int k, String i, int pathLength, boolean passedFilter){
+		AVLNode node = new AVLNode(k,i);
+		this.finger = node;
+		int rotations = insertLeaf(parent, node, parent != null && parent.key<k);
+		if (this.listener != null){
+			this.listener.onInsert(pathLength, this.retraceDepth, this.heightChanges,
+					rotations == 1 ? 1 : 0, this.doubleRotations);
 		}
-		if (node == min){ //if no successor to min => only one node in tree => the tree becomes empty after delete => should set min and max to null
-			min = successor(min);
+		addToFilter(k, passedFilter);
+		return rotations;
+	}
+
+	// returns the node with key k, or else the node a new node with key k would be linked under
+	// (null if the tree is empty). starts where insert does, and changes nothing but the finger.
+	private AVLNode descend(int k){
+		if (this.empty()){
+			return null;
+		}
+		if (this.fingerSearch && (k > this.max.key || k < this.min.key)){
+			return k > this.max.key ? this.max : this.min;
+		}
+		AVLNode node = this.fingerSearch ? climb(closestFinger(k), k) : this.root;
+		while (node.key != k){
+			AVLNode next = node.key<k ? node.right : node.left;
+			if (next == null){
+				return node;
+			}
+			node = next;
 		}
+		this.finger = node;
+		return node;
 	}
 
 	/**
@@ -328,247 +726,482 @@ public class AVLTree {
 	 * returns -1 if an item with key k was not found in the tree.
 	 */
 	   public int delete(int k) {
-	   		IAVLNode node = search_node(k, this.root);
-		   	if(node == null) {
+		   if (this.filter != null && !this.filter.mightContain(k)) {
 			   return -1;
-		   	}
-		   	updateMinMaxDelete(node);
-		   	this.size--;
-		   	if(node.getKey() == this.getRoot().getKey()) {
-		   		return deleteRoot();
-		   	}
-		   	int kind = nodeKind(node);
-		   	if (kind == 1) {//node is a leaf
-				IAVLNode parent = node.getParent();
-				if (parent.getLeft().getKey() == node.getKey()) {
-					parent.setLeft(new AVLNode());
-				} else {
-					parent.setRight(new AVLNode());
-				}
-				calcHeightLeaf(parent);
-				return keepBalanced(parent);
-			}
-		   	if(kind == 2) { //node has 1 child
-				IAVLNode parent = node.getParent();
-				if(parent.getRight().getKey() == node.getKey()) {
-					if(node.getLeft().isRealNode()) {
-						IAVLNode temp = node.getLeft();
-						parent.setRight(temp);
-						temp.setParent(parent);
-					}
-					else {
-						IAVLNode temp = node.getRight();
-						parent.setRight(temp);
-						temp.setParent(parent);
-					}
-				}
-				else {
-					if(node.getLeft().isRealNode()) {
-						IAVLNode temp = node.getLeft();
-						parent.setLeft(temp);
-						temp.setParent(parent);
-					}
-					else {
-						IAVLNode temp = node.getRight();
-						parent.setLeft(temp);
-						temp.setParent(parent);
-					}
-				}
-				calcHeightLeaf(parent);		
-				return keepBalanced(parent);
-		   	}
-		   	if (kind == 3){// node has 2 children
-		   		IAVLNode successor = successor(node);
-		   		IAVLNode par = node.getParent();
-		   		IAVLNode temp = successor;
-		   		if(successor.getKey() == node.getRight().getKey()) {
-		   			if(par.getRight().getKey() == node.getKey()) {
-		   				par.setRight(successor);
-		   				successor.setParent(par);
-		   				successor.setLeft(node.getLeft());
-		   				node.getLeft().setParent(successor);
-		   			}
-		   			else {
-		   				par.setLeft(successor);
-		   				successor.setParent(par);
-		   				successor.setLeft(node.getLeft());
-		   				node.getLeft().setParent(successor);
-		   			}
-		   			calcHeightLeaf(successor);
-		   			return keepBalanced(successor);
-		   		}
-		   		else {
-		   			if(par.getRight().getKey() == node.getKey()) {
-		   				   
-						   successor.getParent().setLeft(successor.getRight());
-						   successor.getRight().setParent(successor.getParent());
-						   successor.setParent(par);
-						   par.setRight(successor);
-						   successor.setLeft(node.getLeft());
-						   node.getLeft().setParent(successor);
-						   successor.setRight(node.getRight());
-						   node.getRight().setParent(successor);
-		   			}
-		   			else {
-						   successor.getParent().setLeft(successor.getRight());
-						   successor.getRight().setParent(successor.getParent());
-						   successor.setParent(par);
-						   par.setLeft(successor);
-						   successor.setLeft(node.getLeft());
-						   node.getLeft().setParent(successor);
-						   successor.setRight(node.getRight());
-						   node.getRight().setParent(successor);
-		   			}
-		   			if(temp.getRight().isRealNode()) {
-		   				IAVLNode leaf = temp.getRight();
-		   				calcHeightLeaf(leaf);
-			   			return keepBalanced(leaf);
-		   			}
-		   			else {
-		   				IAVLNode leaf = temp.getParent();
-		   				calcHeightLeaf(leaf);
-		   				return keepBalanced(leaf);
-		   				
-		   			}
-		   			
-		   		}
-		   	}
-		   	return 0;
-	   }
-	   
-	   public int deleteRoot() {
-	   		IAVLNode node = this.root;
-		   	int kind = nodeKind(node);
-		   	if (kind == 1) {//node is a leaf
-				setRoot(new AVLNode());
-			}
-		   	if(kind == 2) { //node has 1 child
-				if(node.getRight().isRealNode()) {
-					setRoot(node.getRight());
-					node.getRight().setParent(null);
-				}
-				else {
-					setRoot(node.getLeft());
-					node.getLeft().setParent(null);
-				}
-		   	}
-		   	if (kind == 3){// node has 2 children
-		   		IAVLNode successor = successor(node);
-		   		if(successor.getKey() == node.getRight().getKey()) {
-		   			successor.setLeft(node.getLeft());
-		   			successor.setParent(null);
-		   			setRoot(successor);
-		   			calcHeightLeaf(successor);
-		   			return keepBalanced(successor);
-		   		}
-		   		else {
-		   			IAVLNode parent = successor.getParent();
-		   			parent.setLeft(successor.getRight());
-		   			node.getRight().setParent(successor);
-		   			successor.setRight(node.getRight());
-		   			successor.setLeft(node.getLeft());
-		   			successor.setParent(null);
-		   			setRoot(successor);
-		   			calcHeightLeaf(parent);
-		   			return keepBalanced(parent);
-		   		}
-		   	}
-		   	return 0;
-	   }
-	
-		// goes up tree and fixes problems and performs rotation if necessary.
-	   private int keepBalanced(IAVLNode node) {
-		   int cnt = 0;
-		   while(node!=null) {
-		   	
-	   
-			   int bf = getBalanceFactor(node);
-			   node.setHeight(calcHeight(node));
-			   if(bf == -2) {
-				   int rightBF = getBalanceFactor(node.getRight());
-				   if (rightBF < 1) {
-					   leftRotation(node);
-					   cnt++;
-				   }
-				   else {
-					   rightThenLeftRotation(node);
-					   cnt = cnt +2;
-				   }
+		   }
+		   AVLNode node = findNode(k);
+		   if(node == null) {
+			   if (this.filter != null) {
+				   this.filter.recordFalsePositive();
+			   }
+			   return -1;
+		   }
+		   return removeNode(node);
+	   }
+
+	   // removes node from the tree, returns the number of rebalancing operations
+	   private int removeNode(AVLNode node) {
+		   if (node == this.finger) {
+			   this.finger = null;
+		   }
+		   if (this.cache != null) {
+			   this.cache.remove(node.key);
+		   }
+		   int rotations = deleteNode(node);
+		   if (this.listener != null) {
+			   this.listener.onDelete(this.deleteDepth, this.retraceDepth, this.heightChanges,
+					   rotations - 2 * this.doubleRotations, this.doubleRotations);
+		   }
+		   removeFromFilter(1);
+		   return rotations;
+	   }
+
+	   /**
+	    * public String upsert(int k, String i)
+	    *
+	    * sets the info of key k to i, inserting an item (k, i) if there is none.
+	    * returns the info k had, or null if it was not in the tree.
+	    * one descent; an existing item only has its info replaced, with no rebalancing.
+	    */
+	   public String upsert(int k, String i) {
+		   AVLNode node = descend(k);
+		   if (node != null && node.key == k) {
+			   return replaceInfo(node, i);
+		   }
+		   linkNew(node, k, i, addToSizes(node, 1), false);
+		   return null;
+	   }
+
+	   /**
+	    * public String replace(int k, String i)
+	    *
+	    * sets the info of key k to i if k is in the tree, and does nothing otherwise.
+	    * returns the info k had, or null if it was not in the tree.
+	    * one descent (none if the filter rules k out), and no rebalancing.
+	    */
+	   public String replace(int k, String i) {
+		   if (this.filter != null && !this.filter.mightContain(k)) {
+			   return null;
+		   }
+		   AVLNode node = findNode(k);
+		   if (node == null) {
+			   if (this.filter != null) {
+				   this.filter.recordFalsePositive();
+			   }
+			   return null;
+		   }
+		   return replaceInfo(node, i);
+	   }
+
+	   /**
+	    * public String computeIfAbsent(int k, IntFunction<String> function)
+	    *
+	    * if k is not in the tree, inserts (k, function.apply(k)) unless that is null.
+	    * returns the info of k afterwards (null if nothing was inserted).
+	    * one descent, and rebalancing only if an item is inserted.
+	    * function must not change the tree.
+	    */
+	   public String computeIfAbsent(int k, IntFunction<String> function) {
+		   AVLNode node = descend(k);
+		   if (node != null && node.key == k) {
+			   return node.value;
+		   }
+		   String info = function.apply(k);
+		   if (info != null) {
+			   linkNew(node, k, info, addToSizes(node, 1), false);
+		   }
+		   return info;
+	   }
+
+	   /**
+	    * public String compute(int k, UnaryOperator<String> function)
+	    *
+	    * sets the info of key k to function.apply(info), where info is the info of k or null if k is not
+	    * in the tree. if the result is null, k is deleted (or not inserted), otherwise it is inserted or
+	    * has its info replaced. returns the result.
+	    * one descent, and rebalancing only if an item is inserted or deleted.
+	    * function must not change the tree.
+	    */
+	   public String compute(int k, UnaryOperator<String> function) {
+		   AVLNode node = descend(k);
+		   boolean found = node != null && node.key == k;
+		   String info = function.apply(found ? node.value : null);
+		   if (found) {
+			   if (info == null) {
+				   removeNode(node);
 			   }
-			   if (bf == 2) {
-				   int leftBF = getBalanceFactor(node.getLeft());
-				   if(leftBF > -1) {
-					   rightRotation(node);
-					   cnt++;
-				   }
-				   else {
-					   leftThenRightRotation(node);
-					   cnt = cnt +2;
-				   }
+			   else {
+				   replaceInfo(node, info);
 			   }
-			   node = node.getParent();
 		   }
-		   return cnt;
+		   else if (info != null) {
+			   linkNew(node, k, info, addToSizes(node, 1), false);
+		   }
+		   return info;
 	   }
-   
-   private void setHeightAfterDeleteLeaf(IAVLNode node) {
-	   IAVLNode temp = node;
-	   IAVLNode parent = node.getParent();
-	   if(node.getKey()>parent.getKey()) {
-		   temp = parent.getRight();
+
+	   // sets the info of node (and of its key in the cache, if cached), returns the info it had
+	   private String replaceInfo(AVLNode node, String i) {
+		   String old = node.value;
+		   node.value = i;
+		   if (this.cache != null) {
+			   this.cache.update(node.key, i);
+		   }
+		   return old;
 	   }
-	   else {
-		   temp = parent.getLeft();
+   
+   /**
+    * public Iterator<IAVLNode> iterator()
+    *
+    * Returns an iterator over the nodes of the tree in ascending key order.
+    * The iterator follows parent links from node to node, so it allocates nothing per node
+    * and stopping early costs nothing. The tree must not be changed while iterating.
+    */
+   public Iterator<IAVLNode> iterator() {
+	   return new NodeIterator(this.min, Integer.MAX_VALUE, false);
+   }
+
+   /**
+    * public Iterator<IAVLNode> iteratorFrom(int k)
+    *
+    * Returns an iterator over the nodes with key >= k in ascending key order.
+    */
+   public Iterator<IAVLNode> iteratorFrom(int k) {
+	   return new NodeIterator(ceilingNode(k), Integer.MAX_VALUE, false);
+   }
+
+   /**
+    * public Iterator<IAVLNode> range(int lo, int hi)
+    *
+    * Returns an iterator over the nodes with lo <= key <= hi in ascending key order.
+    * Reading m nodes costs O(log n + m).
+    */
+   public Iterator<IAVLNode> range(int lo, int hi) {
+	   return new NodeIterator(ceilingNode(lo), hi, false);
+   }
+
+   /**
+    * public Iterator<IAVLNode> descendingIterator()
+    *
+    * Returns an iterator over the nodes of the tree in descending key order.
+    */
+   public Iterator<IAVLNode> descendingIterator() {
+	   return new NodeIterator(this.max, Integer.MIN_VALUE, true);
+   }
+
+   /**
+    * public Iterator<IAVLNode> descendingIteratorFrom(int k)
+    *
+    * Returns an iterator over the nodes with key <= k in descending key order.
+    */
+   public Iterator<IAVLNode> descendingIteratorFrom(int k) {
+	   return new NodeIterator(floorNode(k), Integer.MIN_VALUE, true);
+   }
+
+   /**
+    * public Iterator<IAVLNode> descendingRange(int lo, int hi)
+    *
+    * Returns an iterator over the nodes with lo <= key <= hi in descending key order.
+    */
+   public Iterator<IAVLNode> descendingRange(int lo, int hi) {
+	   return new NodeIterator(floorNode(hi), lo, true);
+   }
+
+   // returns the node with the smallest key >= k, or null if there is none
+   private AVLNode ceilingNode(int k) {
+	   AVLNode ret = null;
+	   AVLNode node = this.root;
+	   while (node != null) {
+		   if (node.key == k) {
+			   return node;
+		   }
+		   if (node.key > k) {
+			   ret = node;
+			   node = node.left;
+		   }
+		   else {
+			   node = node.right;
+		   }
 	   }
-	   while(temp.getKey() != root.getKey()) {
-		   temp.setHeight(calcHeight(node));
-		   temp = temp.getParent();
+	   return ret;
+   }
+
+   // returns the node with the largest key <= k, or null if there is none
+   private AVLNode floorNode(int k) {
+	   AVLNode ret = null;
+	   AVLNode node = this.root;
+	   while (node != null) {
+		   if (node.key == k) {
+			   return node;
+		   }
+		   if (node.key < k) {
+			   ret = node;
+			   node = node.right;
+		   }
+		   else {
+			   node = node.left;
+		   }
 	   }
-	   temp.setHeight(calcHeight(temp));
-	   
+	   return ret;
    }
-   
 
-   private IAVLNode nextNode(IAVLNode node) {
-	   if(node.getRight().isRealNode()) {
-		   node = node.getRight();
-		   while(node.getLeft().isRealNode()) {
-			   node = node.getLeft();
+   // walks the tree in key order (or reverse order) from a start node using successor/predecessor,
+   // and stops at the first node past bound.
+   private static class NodeIterator implements Iterator<IAVLNode> {
+	   private AVLNode next;
+	   private final int bound;
+	   private final boolean descending;
+
+	   private NodeIterator(AVLNode start, int bound, boolean descending) {
+		   this.next = start;
+		   this.bound = bound;
+		   this.descending = descending;
+	   }
+
+	   public boolean hasNext() {
+		   if (this.next == null) {
+			   return false;
 		   }
-		   return node;
+		   return this.descending ? this.next.key >= this.bound : this.next.key <= this.bound;
 	   }
-	   else {
-		   IAVLNode temp = node.getParent();
-		   while(temp.getKey() < node.getKey()) {
-			   temp = temp.getParent(); 
-			   }
-		   return temp;
+
+	   public IAVLNode next() {
+		   if (!hasNext()) {
+			   throw new NoSuchElementException();
 		   }
+		   AVLNode ret = this.next;
+		   this.next = this.descending ? predecessor(ret) : successor(ret);
+		   return ret;
 	   }
-	   
+   }
 
    /**
-    * public String min()
+    * public static class BatchStats
     *
-    * Returns the info of the item with the smallest key in the tree,
-    * or null if the tree is empty
+    * What insertAll / deleteAll did:
+    * count - number of keys actually inserted (or deleted)
+    * rotations - number of rotations done while rebalancing, a double rotation counted as 2
+    * joinCost - total complexity of the joins done (sum of |rank difference| + 1 over all joins)
     */
-   public String min()
-   {
-	   if(this.min == null) return null;
-	   return this.min.getValue(); // to be replaced by student code
+   public static class BatchStats extends JoinStats {
+	   private int count;
+
+	   public int getCount() {
+		   return this.count;
+	   }
+
+	   public int getRotations() {
+		   return this.rotations;
+	   }
+
+	   public int getJoinCost() {
+		   return this.joinCost;
+	   }
    }
 
    /**
-    * public String max()
+    * public BatchStats insertAll(int[] sortedKeys, String[] infos)
     *
-    * Returns the info of the item with the largest key in the tree,
-    * or null if the tree is empty
+    * inserts all the items (sortedKeys[i], infos[i]). keys already in the tree keep their info.
+    * splits the tree around the median key of the batch, inserts each half of the batch
+    * into its side recursively and joins the results back, in O(m log(n/m + 1)) for a batch of m keys.
+    * precondition: sortedKeys are sorted and distinct, infos.length == sortedKeys.length
     */
-   public String max()
-   {
-	   if(this.max== null) return null;
-	   return this.max.getValue(); // to be replaced by student code
+   public BatchStats insertAll(int[] sortedKeys, String[] infos) {
+	   BatchStats stats = new BatchStats();
+	   setBatchResult(insertAllRec(this.root, sortedKeys, infos, 0, sortedKeys.length, stats));
+	   for (int k = 0; this.filter != null && k < sortedKeys.length; k++) { // keys that were there are added again
+		   addToFilter(sortedKeys[k]);
+	   }
+	   return stats;
+   }
+
+   /**
+    * public BatchStats deleteAll(int[] sortedKeys)
+    *
+    * deletes all the items with the given keys that are in the tree.
+    * uses the same split around the median and recursive join as insertAll, in O(m log(n/m + 1)).
+    * precondition: sortedKeys are sorted and distinct
+    */
+   public BatchStats deleteAll(int[] sortedKeys) {
+	   BatchStats stats = new BatchStats();
+	   setBatchResult(deleteAllRec(this.root, sortedKeys, 0, sortedKeys.length, stats));
+	   removeFromFilter(stats.count);
+	   return stats;
+   }
+
+   // makes node the root of the tree and sets size, min and max after a batch operation
+   private void setBatchResult(AVLNode node) {
+	   setRoot(node);
+	   this.finger = null;
+	   if (this.cache != null) {
+		   this.cache.clear();
+	   }
+   }
+
+   // inserts keys[lo..hi) into the detached subtree node, returns the new root of the subtree.
+   private AVLNode insertAllRec(AVLNode node, int[] keys, String[] infos, int lo, int hi, BatchStats stats) {
+	   if (lo >= hi) {
+		   return node;
+	   }
+	   if (node == null) {
+		   stats.count += hi - lo;
+		   return buildSorted(hi - lo, Arrays.stream(keys, lo, hi).iterator(), Arrays.asList(infos).subList(lo, hi).iterator());
+	   }
+	   int mid = (lo + hi) >>> 1;
+	   Split<AVLNode> parts = splitNodes(node, keys[mid], stats);
+	   AVLNode x = parts.found;
+	   if (x == null) {
+		   x = new AVLNode(keys[mid], infos[mid]);
+		   stats.count++;
+	   }
+	   AVLNode smaller = insertAllRec(parts.smaller, keys, infos, lo, mid, stats);
+	   AVLNode bigger = insertAllRec(parts.bigger, keys, infos, mid + 1, hi, stats);
+	   return joinNodes(smaller, x, bigger, stats);
+   }
+
+   // deletes keys[lo..hi) from the detached subtree node, returns the new root of the subtree.
+   private AVLNode deleteAllRec(AVLNode node, int[] keys, int lo, int hi, BatchStats stats) {
+	   if (lo >= hi || node == null) {
+		   return node;
+	   }
+	   int mid = (lo + hi) >>> 1;
+	   Split<AVLNode> parts = splitNodes(node, keys[mid], stats);
+	   if (parts.found != null) {
+		   stats.count++;
+	   }
+	   AVLNode smaller = deleteAllRec(parts.smaller, keys, lo, mid, stats);
+	   AVLNode bigger = deleteAllRec(parts.bigger, keys, mid + 1, hi, stats);
+	   return joinNodes(smaller, bigger, stats);
+   }
+
+   // splits the detached subtree node around key k, reusing its nodes (see AbstractAVLTree.splitNodes)
+   private Split<AVLNode> splitNodes(AVLNode node, int k, JoinStats stats) {
+	   AVLNode last = null;
+	   while (node != null && node.key != k) {
+		   last = node;
+		   node = node.key < k ? node.right : node.left;
+	   }
+	   return splitNodes(node, last, last != null && k < last.key, stats);
+   }
+
+   // conflict policies for union and intersection: which info to keep for a key in both trees
+   public static final BinaryOperator<String> KEEP_LEFT = (left, right) -> left;
+   public static final BinaryOperator<String> KEEP_RIGHT = (left, right) -> right;
+
+   // subtrees with more nodes than this (both operands together) are processed in parallel
+   private static final int PARALLEL_CUTOFF = 1 << 12;
+   private static final int UNION = 0;
+   private static final int INTERSECTION = 1;
+   private static final int DIFFERENCE = 2;
+
+   /**
+    * public static AVLTree union(AVLTree t1, AVLTree t2, BinaryOperator<String> merge)
+    *
+    * Returns a tree with the keys of t1 and t2. for a key in both trees the info is
+    * merge.apply(info in t1, info in t2), e.g. KEEP_LEFT or KEEP_RIGHT.
+    * splits t2 around the root key of t1 and combines the two halves recursively, running
+    * the halves of large subtrees as ForkJoinTasks in the common pool. O(m log(n/m + 1)) work.
+    * The nodes of t1 and t2 are reused, so both become empty.
+    * precondition: t1 != t2
+    */
+   public static AVLTree union(AVLTree t1, AVLTree t2, BinaryOperator<String> merge) {
+	   return setOperation(UNION, t1, t2, merge);
+   }
+
+   /**
+    * public static AVLTree intersection(AVLTree t1, AVLTree t2, BinaryOperator<String> merge)
+    *
+    * Returns a tree with the keys that are in both t1 and t2, with info merge.apply(info in t1, info in t2).
+    * Works like union. t1 and t2 become empty.
+    * precondition: t1 != t2
+    */
+   public static AVLTree intersection(AVLTree t1, AVLTree t2, BinaryOperator<String> merge) {
+	   return setOperation(INTERSECTION, t1, t2, merge);
+   }
+
+   /**
+    * public static AVLTree difference(AVLTree t1, AVLTree t2)
+    *
+    * Returns a tree with the items of t1 whose keys are not in t2.
+    * Works like union, splitting t1 around the root key of t2. t1 and t2 become empty.
+    * precondition: t1 != t2
+    */
+   public static AVLTree difference(AVLTree t1, AVLTree t2) {
+	   return setOperation(DIFFERENCE, t1, t2, KEEP_LEFT);
+   }
+
+   // runs a set operation on the roots of t1 and t2 and empties them.
+   // the work is done through a new tree whose root stays virtual meanwhile, so the tasks
+   // share nothing but their (disjoint) subtrees.
+   private static AVLTree setOperation(int op, AVLTree t1, AVLTree t2, BinaryOperator<String> merge) {
+	   AVLTree result = new AVLTree();
+	   AVLNode n1 = t1.root;
+	   AVLNode n2 = t2.root;
+	   t1.clear();
+	   t2.clear();
+	   AVLNode root = ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> result.setOperationRec(op, n1, n2, merge)));
+	   result.setBatchResult(root);
+	   return result;
+   }
+
+   // makes the tree empty (without touching the nodes it had)
+   private void clear() {
+	   setRoot(null);
+	   this.finger = null;
+	   if (this.cache != null) {
+		   this.cache.clear();
+	   }
+	   if (this.filter != null) {
+		   this.filter.clear();
+	   }
+   }
+
+   // applies a set operation to the detached subtrees n1 and n2, returns the root of the result.
+   private AVLNode setOperationRec(int op, AVLNode n1, AVLNode n2, BinaryOperator<String> merge) {
+	   if (n1 == null) {
+		   return op == UNION ? n2 : n1;
+	   }
+	   if (n2 == null) {
+		   return op == INTERSECTION ? n2 : n1;
+	   }
+	   boolean parallel = n1.size + n2.size > PARALLEL_CUTOFF;
+	   // the pivot node is the root of t2 for difference (it is dropped) and the root of t1 otherwise
+	   AVLNode pivot = op == DIFFERENCE ? n2 : n1;
+	   AVLNode other = op == DIFFERENCE ? n1 : n2;
+	   AVLNode pivotLeft = pivot.left;
+	   AVLNode pivotRight = pivot.right;
+	   pivot.left = null;
+	   pivot.right = null;
+	   if (pivotLeft != null) {
+		   pivotLeft.parent = null;
+	   }
+	   if (pivotRight != null) {
+		   pivotRight.parent = null;
+	   }
+	   Split<AVLNode> parts = splitNodes(other, pivot.key, null);
+	   AVLNode l1 = op == DIFFERENCE ? parts.smaller : pivotLeft;
+	   AVLNode l2 = op == DIFFERENCE ? pivotLeft : parts.smaller;
+	   AVLNode r1 = op == DIFFERENCE ? parts.bigger : pivotRight;
+	   AVLNode r2 = op == DIFFERENCE ? pivotRight : parts.bigger;
+	   AVLNode left;
+	   AVLNode right;
+	   if (parallel) {
+		   ForkJoinTask<AVLNode> leftTask = ForkJoinTask.adapt(() -> setOperationRec(op, l1, l2, merge)).fork();
+		   right = setOperationRec(op, r1, r2, merge);
+		   left = leftTask.join();
+	   }
+	   else {
+		   left = setOperationRec(op, l1, l2, merge);
+		   right = setOperationRec(op, r1, r2, merge);
+	   }
+	   if (op == DIFFERENCE || (op == INTERSECTION && parts.found == null)) {
+		   return joinNodes(left, right, null);
+	   }
+	   if (parts.found != null) {
+		   pivot.value = merge.apply(pivot.value, parts.found.value);
+	   }
+	   return joinNodes(left, pivot, right, null);
    }
 
   /**
@@ -577,22 +1210,13 @@ public class AVLTree {
    * Returns a sorted array which contains all keys in the tree,
    * or an empty array if the tree is empty.
    */
-  public void treeToNodeArray (IAVLNode node , IAVLNode [] arr, int [] c){
-  	if (!node.isRealNode()) return;
-  	treeToNodeArray(node.getLeft(),arr,c);
-  	arr [c[0]] = node;
-  	c[0]++;
-  	treeToNodeArray(node.getRight(),arr,c);
-
-  }
 	// return an ordered array of all keys in tree.
   public int[] keysToArray()
   {
-	  IAVLNode [] arr = new IAVLNode [this.size()];
-	  this.treeToNodeArray(this.getRoot(),arr,new int [] {0});
-	  int [] ret = new int [arr.length];
-	  for (int i=0; i< arr.length;i++){
-	  	ret[i] = arr[i].getKey();
+	  int [] ret = new int [this.size()];
+	  int i = 0;
+	  for (AVLNode node = this.min; node != null; node = successor(node)){
+	  	ret[i++] = node.key;
 	  }
 	  return ret;
   }
@@ -606,29 +1230,15 @@ public class AVLTree {
    */
   public String[] infoToArray()
   {
-	  IAVLNode [] arr = new IAVLNode [this.size()];
-	  this.treeToNodeArray(this.getRoot(),arr,new int [] {0});
-	  String [] ret = new String [arr.length];
-	  for (int i=0; i< arr.length;i++){
-		  ret[i] = arr[i].getValue();
+	  String [] ret = new String [this.size()];
+	  int i = 0;
+	  for (AVLNode node = this.min; node != null; node = successor(node)){
+		  ret[i++] = node.value;
 	  }
 	  return ret;
   }
 
 
-   /**
-    * public int size()
-    *
-    * Returns the number of nodes in the tree.
-    *
-    * precondition: none
-    * postcondition: none
-    */
-   public int size()
-   {
-	   return this.size; // to be replaced by student code
-   }
-   
      /**
     * public int getRoot()
     *
@@ -639,208 +1249,155 @@ public class AVLTree {
     */
    public IAVLNode getRoot()
    {
-	   return this.root;
+	   return this.root == null ? this.virtualNode : this.root;
    }
      /**
     * public string split(int x)
     *
     * splits the tree into 2 trees according to the key x. 
     * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
-	  * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
-    * postcondition: none
+    * x does not have to be in the tree; if it is, its item is in neither tree.
+    * the nodes of this tree are reused and this tree becomes empty.
+    * costs O(log n): each ancestor of x's position is joined to one side, and the joins
+    * cost the sum of their height differences, which telescopes to O(log n).
+    * postcondition: size, min and max of both trees are set
     */   
    public AVLTree[] split(int x)
    {
-	   IAVLNode node = search_node(x, this.root);
-	   IAVLNode pred = this.predecessor(node);
-	   IAVLNode suc = this.successor(node);
-	   AVLTree smaller =createSubtree(node.getLeft());
-	   AVLTree bigger = createSubtree(node.getRight());
-	   updateMinMaxSplit(smaller,bigger ,node,pred,suc);
-
-
-	   while(node != this.getRoot()) {
-		   IAVLNode parent = node.getParent();
-		   IAVLNode temp = new AVLNode(parent.getKey(), parent.getValue());	
-		   if(parent.getRight().getKey()  == node.getKey()) {
-			   AVLTree r = createSubtree(parent.getLeft());		   
-			   smaller.join(temp, r);
-		   }
-		   else {
-			   AVLTree r = createSubtree(parent.getRight());
-			   bigger.join(temp, r);
-		   }
-		   node = parent;
+	   AVLNode last = null;
+	   AVLNode node = this.root;
+	   while (node != null && node.key != x) {
+		   last = node;
+		   node = node.key < x ? node.right : node.left;
+	   }
+	   BatchStats stats = this.listener == null ? null : new BatchStats();
+	   AVLTree smaller = new AVLTree();
+	   AVLTree bigger = new AVLTree();
+	   splitInto(node, last, last != null && x < last.key, smaller, bigger, stats);
+	   if (stats != null) {
+		   this.listener.onSplit(stats.joinCost, stats.rotations);
 	   }
-	   smaller.delete(x);
-	   bigger.delete(x);
+	   this.clear();
 	   AVLTree[] array = new AVLTree[2];
 	   array[0] = smaller;
 	   array[1] = bigger;
 	   return array;
    }
-   // given a node creates a subtree with node as it's root.
-	// after the action this tree isn't AVL tree!
-  private AVLTree createSubtree(IAVLNode node) {
-	  AVLTree tree = new AVLTree();
-	  if (!node.isRealNode()) return tree;
-	  tree.setRoot(node);
-	  tree.min = tree.minNode(node);
-	  tree.max = tree.maxNode(node);
-	  return tree;
-  }
 
-  // @pre: keys(smaller)< x < key(larger)
-  private  void updateMinMaxSplit(AVLTree smaller, AVLTree larger , IAVLNode x,IAVLNode pred,IAVLNode suc){
-   	smaller.min = this.min;
-   	smaller.max = pred;
-   	larger.min = suc;
-   	larger.max = this.max;
-  }
    /**
-    * public join(IAVLNode x, AVLTree t)
+    * public int deleteRange(int lo, int hi)
     *
-    * joins t and x with the tree. 	
-    * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
-	  * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
-    * postcondition: none
-    */   
-   public int join(IAVLNode x, AVLTree t)
-   {		
-	   this.size += t.size()+1;
-	   int complex = this.calcComplexity(t);
-   		//Initial check if one or both is empty
-	   if (this.empty()&&t.empty()){
-	   	this.insert(x.getKey(),x.getValue());
-	   	return complex;
-	   }
-	   if  (this.empty()){ //only this is empty
-	   	t.insert(x.getKey(),x.getValue());
-	   	this.root = t.getRoot();
-	   	this.min = t.min;
-	   	this.max=t.max;
-	   	return complex;
-	   }
-	   if (t.empty()){ //only t is empty
-		   this.insert(x.getKey(),x.getValue());
-		   return complex;
-	   }
-   		//Set pointers for larger and smaller trees according to theirs height (Complexity of stage: O(1))
-   		AVLTree higherTree, shorterTree;
-   		if (this.getRoot().getHeight()>t.getRoot().getHeight()){
-   			higherTree = this;
-   			shorterTree = t;
-		}
-   		else{
-   			shorterTree = this;
-   			higherTree = t;
-		}
-   		boolean higher_is_larger = higherTree.getRoot().getKey()>x.getKey();
-	   	updateMinMaxJoin(higherTree,shorterTree,higher_is_larger); // set tree min and max accordingly
-   		int largerTreeHeight = higherTree.getRoot().getHeight();
-	   	int smallerTreeHeight = shorterTree.getRoot().getHeight();
-	   	if (largerTreeHeight-smallerTreeHeight<=1) {//that means we can simply merge
-			simpleMerge(t, x);
-			return complex;
-		}
-	   		if (higher_is_larger){
-	   			x.setRight(higherTree.getRoot());
-				x.setLeft(higherTree.getRoot());
-
-			}
-	   		else{
-				x.getRight().setParent(x);
-				x.getLeft().setParent(x);
-	   		}
-
-   		IAVLNode node = getNodeWithHeight(higherTree,smallerTreeHeight,higher_is_larger);
-   		if (higher_is_larger) {
-			setPointersForJoinLeft(shorterTree.getRoot(), node, x);
-		}
-   		else{
-   			setPointersForJoinRight(shorterTree.getRoot(),node,x);
-		}
-	   this.root = higherTree.root;
-	   setHeightUpTree (x);
-	   keepBalanced(x);
+    * deletes all the items with keys in [lo, hi], returns how many there were.
+    * costs O(log n) whatever their number: the tree is split at lo and at hi, the outer parts are
+    * joined again, and the items in between are dropped as one detached subtree for the garbage collector.
+    * the cache, if any, is scanned once to forget the keys, and the filter counts them as stale.
+    * postcondition: size, min and max are set
+    */
+   public int deleteRange(int lo, int hi) {
+	   return sizeOf(cutRange(lo, hi));
+   }
 
-	   return complex;
+   /**
+    * public AVLTree headTree(int k)
+    *
+    * moves the items with keys < k out of this tree into a new tree, in O(log n) like deleteRange,
+    * and returns it (its size is the number of items moved).
+    * postcondition: size, min and max of both trees are set
+    */
+   public AVLTree headTree(int k) {
+	   if (k == Integer.MIN_VALUE) {
+		   return new AVLTree();
+	   }
+	   return detachedTree(cutRange(Integer.MIN_VALUE, k - 1));
+   }
 
+   /**
+    * public AVLTree tailTree(int k)
+    *
+    * moves the items with keys >= k out of this tree into a new tree, in O(log n), and returns it.
+    * postcondition: size, min and max of both trees are set
+    */
+   public AVLTree tailTree(int k) {
+	   return detachedTree(cutRange(k, Integer.MAX_VALUE));
    }
-	//Calculate the complexity as requested in conditions
-	private int calcComplexity (AVLTree t){
-   	return Math.abs(this.getRoot().getHeight()-t.getRoot().getHeight()) +1;
-	}
-   //Simple merge = check who is bigger and merge. needs to set the root to x
-	private void simpleMerge (AVLTree other, IAVLNode x){
-   	if (this.getRoot().getKey()> other.getRoot().getKey()){
-   		x.setRight(this.getRoot());
-		x.setLeft(other.getRoot());
-	}
-   	else{
-		x.setRight(other.getRoot());
-		x.setLeft(this.getRoot());
-	}
-   	x.getLeft().setParent(x);
-   	x.getRight().setParent(x);
-   	x.setHeight(calcHeight(x));
-   	this.root = x;
-	}
-   // gets pointers to the root of the smaller tree, the node with appropriate height on the left branch of higherTree and x
-	// sets the appropriate pointers that maintains tree relations
-   private static void setPointersForJoinLeft (IAVLNode smallerRoot, IAVLNode foundNode, IAVLNode x){
-	   x.setLeft(smallerRoot);
-	   x.setRight(foundNode);
-	   foundNode.getParent().setLeft(x);
-	   x.setParent(foundNode.getParent());
-	   foundNode.setParent(x);
-	   smallerRoot.setParent(x);
+
+   /**
+    * public AVLTree subTree(int lo, int hi)
+    *
+    * moves the items with keys in [lo, hi] out of this tree into a new tree, in O(log n), and returns it.
+    * postcondition: size, min and max of both trees are set
+    */
+   public AVLTree subTree(int lo, int hi) {
+	   return detachedTree(cutRange(lo, hi));
    }
-	// gets pointers to the root of the smaller tree, the node with appropriate height on the right branch of higherTree and x
-	// sets the appropriate pointers that maintains tree relations
-	private static void setPointersForJoinRight (IAVLNode smallerRoot, IAVLNode foundNode, IAVLNode x){
-		x.setRight(smallerRoot);
-		x.setLeft(foundNode);
-		foundNode.getParent().setRight(x);
-		x.setParent(foundNode.getParent());
-		foundNode.setParent(x);
-		smallerRoot.setParent(x);
-	}
-   //Gets a node and goes upstream in the tree and updates heights with property: node.height = max(node.left.key, node.right.key)+1;
-   private static void setHeightUpTree (IAVLNode node){
-	   while (node!=null){
-		   node.setHeight(calcHeight(node));
-		   node=node.getParent();
+
+   // takes the items with keys in [lo, hi] out of the tree and returns them as a detached subtree
+   // (null if there are none): two splits, a join of the outer parts, and at most two joins to put
+   // the nodes with keys lo and hi back into the middle part, each O(log n).
+   private AVLNode cutRange(int lo, int hi) {
+	   if (lo > hi || this.empty() || hi < this.min.key || lo > this.max.key) {
+		   return null;
+	   }
+	   BatchStats stats = this.listener == null ? null : new BatchStats();
+	   Split<AVLNode> low = splitNodes(this.root, lo, stats);
+	   Split<AVLNode> high = splitNodes(low.bigger, hi, stats);
+	   AVLNode middle = high.smaller;
+	   if (low.found != null) {
+		   middle = joinNodes(null, low.found, middle, stats);
 	   }
+	   if (high.found != null) {
+		   middle = joinNodes(middle, high.found, null, stats);
+	   }
+	   AVLNode rest = joinNodes(low.smaller, high.bigger, stats);
+	   if (stats != null) {
+		   this.listener.onSplit(stats.joinCost, stats.rotations);
+	   }
+	   if (middle != null) {
+		   middle.parent = null;
+	   }
+	   setRoot(rest);
+	   this.finger = null;
+	   if (this.cache != null) {
+		   this.cache.removeRange(lo, hi);
+	   }
+	   removeFromFilter(sizeOf(middle));
+	   return middle;
    }
 
-   //Gets the node from larger tree that satisfies the propery ($ret.getHeight()-shorter.getHeight()== 0 or -1)
-	// node will be on the left branch if longer >x>shorter and on the right branch otherwise (if shorter>x>longer)
-	private static IAVLNode getNodeWithHeight(AVLTree higherTree, int smallerTreeHeight, boolean largerIsBigger){
-		IAVLNode node = higherTree.getRoot();
-		if  (largerIsBigger){
-			while (node.getHeight()-smallerTreeHeight>1){
-				node = node.getLeft();
-			}
-		}
-		else {
-			while (node.getHeight() - smallerTreeHeight > 1) {
-				node = node.getRight();
-			}
-		}
-   		return node;
-	}
+   // returns a new tree of the detached subtree node
+   private static AVLTree detachedTree(AVLNode node) {
+	   AVLTree tree = new AVLTree();
+	   tree.setRoot(node);
+	   return tree;
+   }
 
-	//sets the pointer to the min and max new of the tree after join.
-	private void updateMinMaxJoin (AVLTree higher , AVLTree smaller , boolean higherIsLarger) {
-		if (higherIsLarger) {
-			this.min = smaller.min;
-			this.max = higher.max;
-		} else {
-			this.min = higher.min;
-			this.max = smaller.max;
-		}
-	}
+   /**
+    * public join(IAVLNode x, AVLTree t)
+    *
+    * joins t and x with the tree. 	
+    * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	  * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
+    * postcondition: t is empty
+    */   
+   public int join(IAVLNode x, AVLTree t)
+   {
+	   AVLNode node = (AVLNode) x;
+	   this.finger = null; // the nodes of t move here, and t's finger is one of them
+	   if (this.filter != null && (t.filter == null || !this.filter.union(t.filter))) {
+		   for (AVLNode n = t.min; n != null; n = successor(n)) {
+			   this.filter.add(n.key);
+		   }
+	   }
+	   boolean tBigger = t.root != null ? t.root.key > node.key : this.root == null || this.root.key < node.key;
+	   JoinStats stats = this.listener == null ? null : new JoinStats();
+	   int complex = joinTree(node, t, tBigger, stats);
+	   t.clear(); // its finger, cache and filter were about keys that moved here
+	   addToFilter(node.key);
+	   if (this.listener != null) {
+		   this.listener.onJoin(complex, stats.rotations);
+	   }
+	   return complex;
+   }
 
 
 
@@ -871,35 +1428,32 @@ public class AVLTree {
    * another file.
    * This class can and must be modified.
    * (It must implement IAVLNode)
+   *
+   * A node created with the empty constructor is virtual. Each tree keeps one
+   * virtual node, and getLeft and getRight return it where a node has no child
+   * (the node itself keeps null there), so the virtual node is shared and
+   * immutable: setting its children, parent or height has no effect.
    */
-  public class AVLNode implements IAVLNode {
-	   private int key;
-	   private String info;
-	   private IAVLNode left;
-	   private IAVLNode right;
-	   private IAVLNode parent;
-	   private int height;
+  public class AVLNode extends AbstractAVLTree.TreeNode<String, AVLNode> implements IAVLNode {
+	   private final int key;
 
 	   public AVLNode () {
+	   	super(null);
 	   	this.key =-1;
 	   	this.height =-1;
+	   	this.size = 0;
 	   }
 		public AVLNode (int key, String value){
+			super(value);
 			this.key = key;
-			this.info = value;
-			this.left = new AVLNode();
-			this.left.setParent(this);
-			this.right = new AVLNode();
-			this.right.setParent(this);
-			this.height =0;
 		}
 		
 		public String getInfo() {
-			return this.info;
+			return this.value;
 		}
 		
 		public void setInfo(String info) {
-			this.info = info;
+			this.value = info;
 		}
 
 	   public int getKey() {
@@ -908,30 +1462,33 @@ public class AVLTree {
 
 	   public String getValue() {
 
-		   return this.info; // to be replaced by student code
+		   return this.value; // to be replaced by student code
 	   }
 
 	   public void setLeft(IAVLNode node) {
-		   this.left = node;
+		   if (!isRealNode()) return;
+		   this.left = node == null || !node.isRealNode() ? null : (AVLNode) node;
 
 	   }
 
 	   public IAVLNode getLeft() {
 
-		   return this.left;
+		   return this.left == null && isRealNode() ? AVLTree.this.virtualNode : this.left;
 	   }
 
 	   public void setRight(IAVLNode node) {
-		   this.right = node;
+		   if (!isRealNode()) return;
+		   this.right = node == null || !node.isRealNode() ? null : (AVLNode) node;
 	   }
 
 	   public IAVLNode getRight() {
 
-		   return this.right;
+		   return this.right == null && isRealNode() ? AVLTree.this.virtualNode : this.right;
 	   }
 
 	   public void setParent(IAVLNode node) {
-		   this.parent = node;
+		   if (!isRealNode()) return;
+		   this.parent = node == null || !node.isRealNode() ? null : (AVLNode) node;
 	   }
 
 	   public IAVLNode getParent() {
@@ -945,21 +1502,28 @@ public class AVLTree {
 
 		public void setHeight(int height)
 		{
+		  if (!isRealNode()) return;
 		  this.height= height; // to be replaced by student code
 		}
 		public int getHeight()
 		{
 		  return this.height; // to be replaced by student code
 		}
+		public void setSize(int size)
+		{
+		  if (!isRealNode()) return;
+		  this.size = size;
+		}
+		public int getSize()
+		{
+		  return this.size;
+		}
 		// return the balance factor of a node
 		public int getBalanceFactor(){
 	   	if (!isRealNode()){
 	   		return 0;
 		}
-	   	return this.left.getHeight() - this.right.getHeight();
+	   	return height(this.left) - height(this.right);
 		}
   }
 }
-
-  
-
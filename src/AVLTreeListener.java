@@ -0,0 +1,45 @@
+/**
+ *
+ * AVLTreeListener
+ *
+ * Told by an AVLTree (see AVLTree.setListener) how much work each operation did.
+ * The methods are called on the thread that ran the operation, right before it returns,
+ * so they should be cheap. All methods do nothing by default.
+ *
+ */
+public interface AVLTreeListener {
+
+	/**
+	 * a search visited pathLength nodes.
+	 */
+	default void onSearch(int pathLength) {
+	}
+
+	/**
+	 * a successful insert visited pathLength nodes on the way down, then retraced retraceDepth nodes up,
+	 * promoting (raising the height of) promotions of them and doing the given rotations.
+	 */
+	default void onInsert(int pathLength, int retraceDepth, int promotions, int singleRotations, int doubleRotations) {
+	}
+
+	/**
+	 * a successful delete removed a position pathLength nodes deep, then retraced retraceDepth nodes up,
+	 * demoting (lowering the height of) demotions of them and doing the given rotations.
+	 */
+	default void onDelete(int pathLength, int retraceDepth, int demotions, int singleRotations, int doubleRotations) {
+	}
+
+	/**
+	 * a split did joins of total complexity joinCost (sum of |rank difference| + 1), which rotated rotations times
+	 * (a double rotation counted as 2).
+	 */
+	default void onSplit(int joinCost, int rotations) {
+	}
+
+	/**
+	 * a join had complexity joinCost (|rank difference| + 1) and rotated rotations times
+	 * (a double rotation counted as 2).
+	 */
+	default void onJoin(int joinCost, int rotations) {
+	}
+}
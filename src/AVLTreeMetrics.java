@@ -0,0 +1,275 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ *
+ * AVLTreeMetrics
+ *
+ * An AVLTreeListener that counts rotations, promotions, demotions and split/join work,
+ * and keeps a histogram per operation of path lengths, retrace depths and split/join costs.
+ * It is thread safe, so one instance can listen to many trees (the shards of a ShardedAVLTree,
+ * for example), and it can be registered as a JMX MBean.
+ * Path lengths and retrace depths are bounded by the height of the tree, so the histograms
+ * keep one bucket per value, and values from BUCKETS - 1 up share the last bucket.
+ *
+ */
+public class AVLTreeMetrics implements AVLTreeListener, AVLTreeMetricsMBean {
+
+	public static final int BUCKETS = 128;
+
+	// counts of small non negative values
+	private static final class Histogram {
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+		private void record(int value) {
+			this.counts.incrementAndGet(Math.min(Math.max(value, 0), BUCKETS - 1));
+		}
+
+		// the smallest value v such that at least a fraction p of the recorded values are <= v, or 0 if none
+		private int percentile(double p) {
+			long[] counts = toArray();
+			long total = 0;
+			for (long count : counts) {
+				total += count;
+			}
+			long needed = (long) Math.ceil(p * total);
+			long seen = 0;
+			for (int v = 0; v < BUCKETS; v++) {
+				seen += counts[v];
+				if (seen >= needed && seen > 0) {
+					return v;
+				}
+			}
+			return 0;
+		}
+
+		private int max() {
+			for (int v = BUCKETS - 1; v >= 0; v--) {
+				if (this.counts.get(v) > 0) {
+					return v;
+				}
+			}
+			return 0;
+		}
+
+		private long[] toArray() {
+			long[] ret = new long[BUCKETS];
+			for (int v = 0; v < BUCKETS; v++) {
+				ret[v] = this.counts.get(v);
+			}
+			return ret;
+		}
+
+		private void reset() {
+			for (int v = 0; v < BUCKETS; v++) {
+				this.counts.set(v, 0);
+			}
+		}
+	}
+
+	//Fields
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder inserts = new LongAdder();
+	private final LongAdder deletes = new LongAdder();
+	private final LongAdder splits = new LongAdder();
+	private final LongAdder joins = new LongAdder();
+	private final LongAdder singleRotations = new LongAdder();
+	private final LongAdder doubleRotations = new LongAdder();
+	private final LongAdder promotions = new LongAdder();
+	private final LongAdder demotions = new LongAdder();
+	private final LongAdder splitJoinCost = new LongAdder();
+	private final LongAdder splitJoinRotations = new LongAdder();
+	private final Histogram searchPathLength = new Histogram();
+	private final Histogram insertPathLength = new Histogram();
+	private final Histogram deletePathLength = new Histogram();
+	private final Histogram insertRetraceDepth = new Histogram();
+	private final Histogram deleteRetraceDepth = new Histogram();
+	private final Histogram splitCost = new Histogram();
+	private final Histogram joinCost = new Histogram();
+
+	/**
+	 * public ObjectName register(String name)
+	 *
+	 * registers this instance with the platform MBean server as AvlTrees:type=AVLTreeMetrics,name=name
+	 * and returns the name it got.
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("AvlTrees:type=AVLTreeMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * public static void unregister(ObjectName name)
+	 *
+	 * removes an instance registered with register from the platform MBean server, if it is there.
+	 */
+	public static void unregister(ObjectName name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+	}
+
+	@Override
+	public void onSearch(int pathLength) {
+		this.searches.increment();
+		this.searchPathLength.record(pathLength);
+	}
+
+	@Override
+	public void onInsert(int pathLength, int retraceDepth, int promotions, int singleRotations, int doubleRotations) {
+		this.inserts.increment();
+		this.insertPathLength.record(pathLength);
+		this.insertRetraceDepth.record(retraceDepth);
+		this.promotions.add(promotions);
+		this.singleRotations.add(singleRotations);
+		this.doubleRotations.add(doubleRotations);
+	}
+
+	@Override
+	public void onDelete(int pathLength, int retraceDepth, int demotions, int singleRotations, int doubleRotations) {
+		this.deletes.increment();
+		this.deletePathLength.record(pathLength);
+		this.deleteRetraceDepth.record(retraceDepth);
+		this.demotions.add(demotions);
+		this.singleRotations.add(singleRotations);
+		this.doubleRotations.add(doubleRotations);
+	}
+
+	@Override
+	public void onSplit(int joinCost, int rotations) {
+		this.splits.increment();
+		this.splitJoinCost.add(joinCost);
+		this.splitJoinRotations.add(rotations);
+		this.splitCost.record(joinCost);
+	}
+
+	@Override
+	public void onJoin(int joinCost, int rotations) {
+		this.joins.increment();
+		this.splitJoinCost.add(joinCost);
+		this.splitJoinRotations.add(rotations);
+		this.joinCost.record(joinCost);
+	}
+
+	public long getSearches() {
+		return this.searches.sum();
+	}
+
+	public long getInserts() {
+		return this.inserts.sum();
+	}
+
+	public long getDeletes() {
+		return this.deletes.sum();
+	}
+
+	public long getSplits() {
+		return this.splits.sum();
+	}
+
+	public long getJoins() {
+		return this.joins.sum();
+	}
+
+	public long getSingleRotations() {
+		return this.singleRotations.sum();
+	}
+
+	public long getDoubleRotations() {
+		return this.doubleRotations.sum();
+	}
+
+	public long getPromotions() {
+		return this.promotions.sum();
+	}
+
+	public long getDemotions() {
+		return this.demotions.sum();
+	}
+
+	public long getSplitJoinCost() {
+		return this.splitJoinCost.sum();
+	}
+
+	public long getSplitJoinRotations() {
+		return this.splitJoinRotations.sum();
+	}
+
+	public int getSearchPathLengthP50() {
+		return this.searchPathLength.percentile(0.5);
+	}
+
+	public int getSearchPathLengthP99() {
+		return this.searchPathLength.percentile(0.99);
+	}
+
+	public int getSearchPathLengthMax() {
+		return this.searchPathLength.max();
+	}
+
+	public int getInsertRetraceDepthP99() {
+		return this.insertRetraceDepth.percentile(0.99);
+	}
+
+	public int getDeleteRetraceDepthP99() {
+		return this.deleteRetraceDepth.percentile(0.99);
+	}
+
+	public int getSplitCostP99() {
+		return this.splitCost.percentile(0.99);
+	}
+
+	public int getJoinCostP99() {
+		return this.joinCost.percentile(0.99);
+	}
+
+	public long[] getSearchPathLengthHistogram() {
+		return this.searchPathLength.toArray();
+	}
+
+	public long[] getInsertPathLengthHistogram() {
+		return this.insertPathLength.toArray();
+	}
+
+	public long[] getDeletePathLengthHistogram() {
+		return this.deletePathLength.toArray();
+	}
+
+	public long[] getInsertRetraceDepthHistogram() {
+		return this.insertRetraceDepth.toArray();
+	}
+
+	public long[] getDeleteRetraceDepthHistogram() {
+		return this.deleteRetraceDepth.toArray();
+	}
+
+	public long[] getSplitCostHistogram() {
+		return this.splitCost.toArray();
+	}
+
+	public long[] getJoinCostHistogram() {
+		return this.joinCost.toArray();
+	}
+
+	/**
+	 * public void reset()
+	 *
+	 * sets all counters and histograms back to 0.
+	 */
+	public void reset() {
+		for (LongAdder counter : new LongAdder[] {this.searches, this.inserts, this.deletes, this.splits, this.joins,
+				this.singleRotations, this.doubleRotations, this.promotions, this.demotions, this.splitJoinCost, this.splitJoinRotations}) {
+			counter.reset();
+		}
+		for (Histogram histogram : new Histogram[] {this.searchPathLength, this.insertPathLength, this.deletePathLength,
+				this.insertRetraceDepth, this.deleteRetraceDepth, this.splitCost, this.joinCost}) {
+			histogram.reset();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ * AVLTreeMetricsMBean
+ *
+ * The JMX view of AVLTreeMetrics. Percentiles are the upper end of the bucket that holds them.
+ *
+ */
+public interface AVLTreeMetricsMBean {
+
+	long getSearches();
+
+	long getInserts();
+
+	long getDeletes();
+
+	long getSplits();
+
+	long getJoins();
+
+	long getSingleRotations();
+
+	long getDoubleRotations();
+
+	long getPromotions();
+
+	long getDemotions();
+
+	long getSplitJoinCost();
+
+	long getSplitJoinRotations();
+
+	int getSearchPathLengthP50();
+
+	int getSearchPathLengthP99();
+
+	int getSearchPathLengthMax();
+
+	int getInsertRetraceDepthP99();
+
+	int getDeleteRetraceDepthP99();
+
+	int getSplitCostP99();
+
+	int getJoinCostP99();
+
+	long[] getSearchPathLengthHistogram();
+
+	long[] getInsertPathLengthHistogram();
+
+	long[] getDeletePathLengthHistogram();
+
+	long[] getInsertRetraceDepthHistogram();
+
+	long[] getDeleteRetraceDepthHistogram();
+
+	long[] getSplitCostHistogram();
+
+	long[] getJoinCostHistogram();
+
+	void reset();
+}
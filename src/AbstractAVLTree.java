@@ -0,0 +1,605 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * AbstractAVLTree
+ *
+ * The balancing part of an AVL tree, shared by AVLTree, GenericAVLTree, IntAVLTree and LongAVLTree.
+ * Subclasses own the keys and do the descents, so each can compare its keys
+ * without boxing. This class links and unlinks nodes, rotates, joins and splits subtrees,
+ * and keeps the subtree sizes, size, min and max.
+ * A missing child is null (height -1, size 0), so no key value is reserved for virtual nodes.
+ *
+ */
+public abstract class AbstractAVLTree<V, N extends AbstractAVLTree.TreeNode<V, N>> {
+
+	// a node of the tree, subclasses add the key
+	public static abstract class TreeNode<V, N extends TreeNode<V, N>> {
+		V value;
+		N left;
+		N right;
+		N parent;
+		int height;
+		int size = 1; // number of nodes in the subtree of this node
+
+		protected TreeNode(V value) {
+			this.value = value;
+		}
+
+		public V getValue() {
+			return this.value;
+		}
+	}
+
+	// what the joins of an operation cost: the sum of |height difference| + 1 over the joins,
+	// and the rotations they did (a double rotation counted as 2)
+	static class JoinStats {
+		int joinCost;
+		int rotations;
+	}
+
+	// the parts of a split subtree: the keys smaller than the split key, the detached node with
+	// the split key (null if there is none) and the keys bigger than it, a part is null if empty
+	static final class Split<N> {
+		final N smaller;
+		final N found;
+		final N bigger;
+
+		Split(N smaller, N found, N bigger) {
+			this.smaller = smaller;
+			this.found = found;
+			this.bigger = bigger;
+		}
+	}
+
+	//Fields
+	N root;
+	int size;
+	N min;
+	N max;
+	// what the last insertLeaf or deleteNode did on the way up, for subclasses that report it:
+	// the nodes it retraced, how many of them changed height without a rotation, and its double rotations
+	int retraceDepth;
+	int heightChanges;
+	int doubleRotations;
+	// the depth of the position the last deleteNode removed a node from
+	int deleteDepth;
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == null;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the value of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V min() {
+		return this.min == null ? null : this.min.value;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the value of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V max() {
+		return this.max == null ? null : this.max.value;
+	}
+
+	/**
+	 * public List<V> values()
+	 *
+	 * Returns a list which contains all values in the tree,
+	 * sorted by their respective keys.
+	 */
+	public List<V> values() {
+		List<V> ret = new ArrayList<>(this.size);
+		for (N node = this.min; node != null; node = successor(node)) {
+			ret.add(node.value);
+		}
+		return ret;
+	}
+
+	/**
+	 * public Object[] infoToArray()
+	 *
+	 * Returns an array which contains all values in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public Object[] infoToArray() {
+		Object[] ret = new Object[this.size];
+		int c = 0;
+		for (N node = this.min; node != null; node = successor(node)) {
+			ret[c++] = node.value;
+		}
+		return ret;
+	}
+
+	// height of a node, -1 for a missing child
+	static int height(TreeNode<?, ?> node) {
+		return node == null ? -1 : node.height;
+	}
+
+	// number of nodes in the subtree of node, 0 for a missing child
+	static int sizeOf(TreeNode<?, ?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static int calcHeight(TreeNode<?, ?> node) {
+		return Math.max(height(node.left), height(node.right)) + 1;
+	}
+
+	private static int getBalanceFactor(TreeNode<?, ?> node) {
+		return height(node.left) - height(node.right);
+	}
+
+	// recalculates the height and subtree size of node from its children
+	static void updateNode(TreeNode<?, ?> node) {
+		node.height = calcHeight(node);
+		node.size = sizeOf(node.left) + sizeOf(node.right) + 1;
+	}
+
+	// makes l and r (either may be null) the children of x and updates x
+	static <V, N extends TreeNode<V, N>> void linkChildren(N x, N l, N r) {
+		x.left = l;
+		if (l != null) {
+			l.parent = x;
+		}
+		x.right = r;
+		if (r != null) {
+			r.parent = x;
+		}
+		updateNode(x);
+	}
+
+	// adds delta to the subtree sizes of node and all its ancestors, returns the number of nodes changed
+	static int addToSizes(TreeNode<?, ?> node, int delta) {
+		int count = 0;
+		for (; node != null; node = node.parent) {
+			node.size += delta;
+			count++;
+		}
+		return count;
+	}
+
+	// makes the detached subtree node (null for none) the whole tree and sets size, min and max
+	void setRoot(N node) {
+		this.root = node;
+		if (node == null) {
+			this.size = 0;
+			this.min = null;
+			this.max = null;
+			return;
+		}
+		node.parent = null;
+		this.size = node.size;
+		this.min = minNode(node);
+		this.max = maxNode(node);
+	}
+
+	// links a new node as a child of parent (as the root if parent is null) and rebalances.
+	// the subtree sizes of parent and its ancestors must already count the new node.
+	// returns the number of rotations, a double rotation counted as 2.
+	int insertLeaf(N parent, N node, boolean asRight) {
+		this.size++;
+		node.parent = parent;
+		if (parent == null) {
+			this.root = node;
+			this.min = node;
+			this.max = node;
+		}
+		else if (asRight) {
+			parent.right = node;
+			if (parent == this.max) {
+				this.max = node;
+			}
+		}
+		else {
+			parent.left = node;
+			if (parent == this.min) {
+				this.min = node;
+			}
+		}
+		return retraceInsert(parent);
+	}
+
+	// unlinks a node of the tree, takes it off the subtree sizes and rebalances.
+	// the node is left as a detached single node.
+	// returns the number of rotations, a double rotation counted as 2.
+	int deleteNode(N node) {
+		if (node == this.min) {
+			this.min = successor(node);
+		}
+		if (node == this.max) {
+			this.max = predecessor(node);
+		}
+		this.size--;
+		N parent = node.parent;
+		N retraceFrom;
+		if (node.left == null || node.right == null) { // at most one child - splice node out
+			replaceChild(parent, node, node.left != null ? node.left : node.right);
+			retraceFrom = parent;
+		}
+		else { // 2 children - the successor (leftmost in the right subtree) takes node's place
+			N successor = node.right;
+			while (successor.left != null) {
+				successor = successor.left;
+			}
+			if (successor.parent == node) {
+				retraceFrom = successor;
+			}
+			else {
+				retraceFrom = successor.parent;
+				replaceChild(retraceFrom, successor, successor.right);
+				successor.right = node.right;
+				node.right.parent = successor;
+			}
+			successor.left = node.left;
+			node.left.parent = successor;
+			successor.height = node.height;
+			successor.size = node.size;
+			replaceChild(parent, node, successor);
+		}
+		node.left = null;
+		node.right = null;
+		node.parent = null;
+		node.height = 0;
+		node.size = 1;
+		// every node above the removed position lost one node from its subtree
+		this.deleteDepth = addToSizes(retraceFrom, -1);
+		return retraceDelete(retraceFrom);
+	}
+
+	// returns the node after node in key order, or null
+	static <V, N extends TreeNode<V, N>> N successor(N node) {
+		if (node.right != null) {
+			return minNode(node.right);
+		}
+		N parent = node.parent;
+		while (parent != null && parent.right == node) {
+			node = parent;
+			parent = parent.parent;
+		}
+		return parent;
+	}
+
+	// returns the node before node in key order, or null
+	static <V, N extends TreeNode<V, N>> N predecessor(N node) {
+		if (node.left != null) {
+			return maxNode(node.left);
+		}
+		N parent = node.parent;
+		while (parent != null && parent.left == node) {
+			node = parent;
+			parent = parent.parent;
+		}
+		return parent;
+	}
+
+	// returns the node with the smallest key in the subtree of node
+	static <V, N extends TreeNode<V, N>> N minNode(N node) {
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node;
+	}
+
+	// returns the node with the largest key in the subtree of node
+	static <V, N extends TreeNode<V, N>> N maxNode(N node) {
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node;
+	}
+
+	// goes up from the parent of a new leaf and updates heights.
+	// stops when a height does not change, or after the single (or double) rotation an insert may need,
+	// since a rotation restores the height the subtree had before the insert.
+	private int retraceInsert(N node) {
+		int depth = 0;
+		int promotions = 0;
+		int rotations = 0;
+		while (node != null) {
+			depth++;
+			int bf = getBalanceFactor(node);
+			if (bf == 2 || bf == -2) {
+				rotations = rotateIfNeeded(node);
+				break;
+			}
+			int height = calcHeight(node);
+			if (height == node.height) {
+				break;
+			}
+			node.height = height;
+			promotions++;
+			node = node.parent;
+		}
+		this.retraceDepth = depth;
+		this.heightChanges = promotions;
+		this.doubleRotations = rotations == 2 ? 1 : 0;
+		return rotations;
+	}
+
+	// goes up from the lowest node whose subtree lost a node, fixing heights and rotating.
+	// stops as soon as a subtree (after its rotation, if any) keeps the height it had before the delete.
+	private int retraceDelete(N node) {
+		int cnt = 0;
+		int depth = 0;
+		int demotions = 0;
+		int doubles = 0;
+		while (node != null) {
+			depth++;
+			N parent = node.parent;
+			int oldHeight = node.height;
+			int rotations = rotateIfNeeded(node);
+			N subtreeRoot = node;
+			if (rotations > 0) {
+				cnt += rotations;
+				subtreeRoot = node.parent;
+				if (rotations == 2) {
+					doubles++;
+				}
+			}
+			else {
+				node.height = calcHeight(node);
+			}
+			if (subtreeRoot.height == oldHeight) {
+				break;
+			}
+			if (rotations == 0) {
+				demotions++;
+			}
+			node = parent;
+		}
+		this.retraceDepth = depth;
+		this.heightChanges = demotions;
+		this.doubleRotations = doubles;
+		return cnt;
+	}
+
+	// performs the rotation needed at node if its balance factor is 2 or -2.
+	// returns the number of rotations done: 0, 1, or 2 for a double rotation.
+	private int rotateIfNeeded(N node) {
+		int bf = getBalanceFactor(node);
+		if (bf == -2) {
+			if (getBalanceFactor(node.right) < 1) {
+				leftRotation(node);
+				return 1;
+			}
+			rightRotation(node.right);
+			leftRotation(node);
+			return 2;
+		}
+		if (bf == 2) {
+			if (getBalanceFactor(node.left) > -1) {
+				rightRotation(node);
+				return 1;
+			}
+			leftRotation(node.left);
+			rightRotation(node);
+			return 2;
+		}
+		return 0;
+	}
+
+	// rotates y with its left child, works on detached subtrees too (y with no parent that is not the root)
+	private void rightRotation(N y) {
+		N x = y.left;
+		N b = x.right;
+		replaceChild(y.parent, y, x);
+		y.left = b;
+		if (b != null) {
+			b.parent = y;
+		}
+		x.right = y;
+		y.parent = x;
+		updateNode(y);
+		updateNode(x);
+	}
+
+	// rotates y with its right child
+	private void leftRotation(N y) {
+		N x = y.right;
+		N b = x.left;
+		replaceChild(y.parent, y, x);
+		y.right = b;
+		if (b != null) {
+			b.parent = y;
+		}
+		x.left = y;
+		y.parent = x;
+		updateNode(y);
+		updateNode(x);
+	}
+
+	// puts newChild in the place of oldChild under parent (or as the root if parent is null
+	// and oldChild was the root; a detached subtree just loses its parent).
+	private void replaceChild(N parent, N oldChild, N newChild) {
+		if (parent == null) {
+			if (this.root == oldChild) {
+				this.root = newChild;
+			}
+		}
+		else if (parent.left == oldChild) {
+			parent.left = newChild;
+		}
+		else {
+			parent.right = newChild;
+		}
+		if (newChild != null) {
+			newChild.parent = parent;
+		}
+	}
+
+	// joins the detached subtrees l and r (either may be null) with the detached node x between them
+	// (keys(l) < x < keys(r)). x goes down the spine of the higher subtree to a node of height at most
+	// (shorter height + 1), and the path back up is rebalanced, so the cost is O(|height difference| + 1).
+	// returns the root of the joined subtree. stats may be null.
+	// touches no field of the tree, so joins of disjoint subtrees can run in parallel.
+	N joinNodes(N l, N x, N r, JoinStats stats) {
+		if (l != null) {
+			l.parent = null;
+		}
+		if (r != null) {
+			r.parent = null;
+		}
+		int hl = height(l);
+		int hr = height(r);
+		if (stats != null) {
+			stats.joinCost += Math.abs(hl - hr) + 1;
+		}
+		if (hl > hr + 1) { // x goes down the right spine of l
+			N parent = null;
+			N c = l;
+			while (height(c) > hr + 1) {
+				parent = c;
+				c = c.right;
+			}
+			linkChildren(x, c, r);
+			parent.right = x;
+			x.parent = parent;
+			return retraceJoin(parent, stats);
+		}
+		if (hr > hl + 1) { // x goes down the left spine of r
+			N parent = null;
+			N c = r;
+			while (height(c) > hl + 1) {
+				parent = c;
+				c = c.left;
+			}
+			linkChildren(x, l, c);
+			parent.left = x;
+			x.parent = parent;
+			return retraceJoin(parent, stats);
+		}
+		linkChildren(x, l, r);
+		x.parent = null;
+		return x;
+	}
+
+	// joins the detached subtrees l and r (keys(l) < keys(r)) when there is no node between them:
+	// the minimum of r is split out and used as the middle node. returns the root of the joined subtree.
+	N joinNodes(N l, N r, JoinStats stats) {
+		if (r == null) {
+			return l;
+		}
+		if (l == null) {
+			return r;
+		}
+		Split<N> rest = splitNodes(minNode(r), null, false, stats);
+		return joinNodes(l, rest.found, rest.bigger, stats);
+	}
+
+	// goes up from node to the root of its detached subtree, updating heights and sizes and rotating.
+	// returns the root of the subtree.
+	private N retraceJoin(N node, JoinStats stats) {
+		while (true) {
+			updateNode(node);
+			int rotations = rotateIfNeeded(node);
+			if (rotations > 0) {
+				node = node.parent;
+				if (stats != null) {
+					stats.rotations += rotations;
+				}
+			}
+			if (node.parent == null) {
+				return node;
+			}
+			node = node.parent;
+		}
+	}
+
+	// splits the detached subtree holding the position a subclass descended to, reusing its nodes.
+	// the position is found, the node with the split key, or if there is none (found is null) the missing
+	// child of last on its left (toLeft) or right side; last is null for an empty subtree.
+	// every ancestor of the position is joined, with its far subtree, to the side it belongs to,
+	// so the cost is O(log n). stats may be null.
+	Split<N> splitNodes(N found, N last, boolean toLeft, JoinStats stats) {
+		N smaller = null;
+		N bigger = null;
+		N parent;
+		boolean fromLeft;
+		if (found != null) {
+			smaller = found.left;
+			bigger = found.right;
+			parent = found.parent;
+			fromLeft = parent != null && parent.left == found;
+			found.left = null;
+			found.right = null;
+			found.parent = null;
+			updateNode(found);
+		}
+		else {
+			parent = last;
+			fromLeft = toLeft;
+		}
+		while (parent != null) {
+			N up = parent.parent;
+			boolean upFromLeft = up != null && up.left == parent;
+			if (fromLeft) {
+				bigger = joinNodes(bigger, parent, parent.right, stats);
+			}
+			else {
+				smaller = joinNodes(parent.left, parent, smaller, stats);
+			}
+			parent = up;
+			fromLeft = upFromLeft;
+		}
+		if (smaller != null) {
+			smaller.parent = null;
+		}
+		if (bigger != null) {
+			bigger.parent = null;
+		}
+		return new Split<>(smaller, found, bigger);
+	}
+
+	// splits the whole tree at the position a subclass descended to (see splitNodes): the smaller keys go
+	// to the empty tree smaller, the bigger ones to the empty tree bigger, and this tree becomes empty.
+	// returns the detached node with the split key, or null.
+	N splitInto(N found, N last, boolean toLeft, AbstractAVLTree<V, N> smaller, AbstractAVLTree<V, N> bigger,
+			JoinStats stats) {
+		Split<N> parts = splitNodes(found, last, toLeft, stats);
+		setRoot(null);
+		smaller.setRoot(parts.smaller);
+		bigger.setRoot(parts.bigger);
+		return parts.found;
+	}
+
+	// joins the detached node x and the tree t (t != this) with this tree. the keys of t are all bigger
+	// than x if tBigger, and smaller otherwise; the keys of this tree are on the other side. t becomes empty.
+	// returns the complexity of the join, |height difference| + 1 (an empty tree has height -1).
+	int joinTree(N x, AbstractAVLTree<V, N> t, boolean tBigger, JoinStats stats) {
+		int complex = Math.abs(height(this.root) - height(t.root)) + 1;
+		N smaller = tBigger ? this.root : t.root;
+		N bigger = tBigger ? t.root : this.root;
+		N newMin = tBigger ? this.min : t.min;
+		N newMax = tBigger ? t.max : this.max;
+		int newSize = this.size + t.size + 1;
+		t.setRoot(null);
+		this.root = joinNodes(smaller, x, bigger, stats);
+		this.size = newSize;
+		this.min = newMin == null ? x : newMin;
+		this.max = newMax == null ? x : newMax;
+		return complex;
+	}
+}
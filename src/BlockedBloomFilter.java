@@ -0,0 +1,195 @@
+import java.util.Arrays;
+
+/**
+ *
+ * BlockedBloomFilter
+ *
+ * A Bloom filter of int keys that an AVLTree can keep alongside its nodes (see AVLTree.setFilter), so that
+ * searches and deletes of keys that are certainly absent return without a descent.
+ * It is blocked: a key hashes to one block of BLOCK_BITS bits (a cache line) and sets PROBES bits in it,
+ * so a query reads one block instead of PROBES random words.
+ * It is sized for capacity keys at BITS_PER_KEY bits each, about 1% false positives when full.
+ * Keys can not be removed from a Bloom filter, so removed keys only count as stale until the filter
+ * is rebuilt with reset and the keys that are left.
+ * Queries only change the counters, so concurrent queries are safe but may lose counts.
+ *
+ */
+public class BlockedBloomFilter {
+
+	public static final int BITS_PER_KEY = 10;
+	public static final int BLOCK_BITS = 512;
+	public static final int PROBES = 6;
+
+	private static final int BLOCK_WORDS = BLOCK_BITS / Long.SIZE;
+
+	//Fields
+	private long[] words;
+	private int blocks;
+	private int capacity;
+	private long stale;
+	private long negatives;
+	private long falsePositives;
+
+	//Constructor for an empty filter sized for capacity keys
+	public BlockedBloomFilter(int capacity) {
+		reset(capacity);
+	}
+
+	/**
+	 * public void reset(int capacity)
+	 *
+	 * empties the filter and sizes it for capacity keys. The counters are kept.
+	 */
+	public void reset(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		int blocks = (int) Math.max(1, ((long) capacity * BITS_PER_KEY + BLOCK_BITS - 1) / BLOCK_BITS);
+		if (blocks == this.blocks) {
+			Arrays.fill(this.words, 0);
+		}
+		else {
+			this.words = new long[blocks * BLOCK_WORDS];
+			this.blocks = blocks;
+		}
+		this.capacity = capacity;
+		this.stale = 0;
+	}
+
+	// the first word of the block of key k
+	private int blockStart(int k) {
+		return (int) (((k * 0x9E3779B9) & 0xFFFFFFFFL) * this.blocks >>> 32) * BLOCK_WORDS;
+	}
+
+	// PROBES bit positions in the block, 9 bits each
+	private static long probes(int k) {
+		long h = k * 0xC2B2AE3D27D4EB4FL;
+		h ^= h >>> 29;
+		h *= 0x165667B19E3779F9L;
+		return h ^ (h >>> 32);
+	}
+
+	/**
+	 * public void add(int k)
+	 *
+	 * adds key k.
+	 */
+	public void add(int k) {
+		int start = blockStart(k);
+		long h = probes(k);
+		for (int p = 0; p < PROBES; p++, h >>>= 9) {
+			int bit = (int) h & (BLOCK_BITS - 1);
+			this.words[start + (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * public boolean mightContain(int k)
+	 *
+	 * returns false if k was certainly not added since the last reset (a negative), true if it may have been.
+	 */
+	public boolean mightContain(int k) {
+		int start = blockStart(k);
+		long h = probes(k);
+		for (int p = 0; p < PROBES; p++, h >>>= 9) {
+			int bit = (int) h & (BLOCK_BITS - 1);
+			if ((this.words[start + (bit >>> 6)] & (1L << bit)) == 0) {
+				this.negatives++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * public void recordFalsePositive()
+	 *
+	 * counts a key that mightContain let through and that was then not found.
+	 */
+	public void recordFalsePositive() {
+		this.falsePositives++;
+	}
+
+	/**
+	 * public void addStale(long removed)
+	 *
+	 * counts keys that were removed from the set but are still in the filter.
+	 */
+	public void addStale(long removed) {
+		this.stale += removed;
+	}
+
+	/**
+	 * public boolean union(BlockedBloomFilter other)
+	 *
+	 * adds every key of other (and its stale count) to this filter in O(size of the filter),
+	 * if both have the same number of blocks. Returns false, and changes nothing, if they do not.
+	 */
+	public boolean union(BlockedBloomFilter other) {
+		if (other.blocks != this.blocks) {
+			return false;
+		}
+		for (int w = 0; w < this.words.length; w++) {
+			this.words[w] |= other.words[w];
+		}
+		this.stale += other.stale;
+		return true;
+	}
+
+	/**
+	 * public void clear()
+	 *
+	 * removes all keys. The size and the counters are kept.
+	 */
+	public void clear() {
+		Arrays.fill(this.words, 0);
+		this.stale = 0;
+	}
+
+	/**
+	 * public int capacity()
+	 *
+	 * returns the number of keys the filter is sized for.
+	 */
+	public int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * public long getStale()
+	 *
+	 * returns the number of removed keys that are still in the filter.
+	 */
+	public long getStale() {
+		return this.stale;
+	}
+
+	public long getNegatives() {
+		return this.negatives;
+	}
+
+	public long getFalsePositives() {
+		return this.falsePositives;
+	}
+
+	/**
+	 * public double getFalsePositiveRate()
+	 *
+	 * returns the fraction of the absent keys queried that mightContain let through:
+	 * falsePositives / (falsePositives + negatives), or 0 before the first absent key.
+	 */
+	public double getFalsePositiveRate() {
+		long absent = this.falsePositives + this.negatives;
+		return absent == 0 ? 0 : this.falsePositives / (double) absent;
+	}
+
+	/**
+	 * public void resetCounters()
+	 *
+	 * sets negatives and falsePositives back to 0.
+	 */
+	public void resetCounters() {
+		this.negatives = 0;
+		this.falsePositives = 0;
+	}
+}
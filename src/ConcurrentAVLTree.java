@@ -0,0 +1,196 @@
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ *
+ * ConcurrentAVLTree
+ *
+ * A thread safe facade over AVLTree, guarded by a StampedLock.
+ * search, min, max and size first read without locking (optimistic reads) and validate
+ * the stamp afterwards, retrying a few times and then falling back to a read lock.
+ * Mutations take the write lock; a sorted batch is applied under a single write lock.
+ *
+ */
+public class ConcurrentAVLTree {
+
+	// optimistic attempts before a reader falls back to the read lock
+	private static final int OPTIMISTIC_TRIES = 3;
+	// no AVL tree of up to 2^31 nodes is higher than this, a longer walk means a rotation was seen half done
+	private static final int MAX_DEPTH = 64;
+
+	//Fields
+	private final AVLTree tree;
+	private final StampedLock lock = new StampedLock();
+
+	//Constructor for new empty tree
+	public ConcurrentAVLTree() {
+		this(new AVLTree());
+	}
+
+	//Constructor that guards an existing tree, which must not be used directly afterwards
+	public ConcurrentAVLTree(AVLTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		return read(() -> optimisticSearch(k));
+	}
+
+	// walks down from the root like AVLTree.search, but gives up (returns null) after MAX_DEPTH steps.
+	// without the lock the result is only used if the stamp is still valid afterwards.
+	private String optimisticSearch(int k) {
+		AVLTree.IAVLNode node = this.tree.getRoot();
+		for (int depth = 0; depth < MAX_DEPTH && node != null && node.isRealNode(); depth++) {
+			if (node.getKey() == k) {
+				return node.getValue();
+			}
+			node = node.getKey() < k ? node.getRight() : node.getLeft();
+		}
+		return null;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return read(this.tree::min);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return read(this.tree::max);
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return read(this.tree::size);
+	}
+
+	// reads a value with optimistic reads (retried a few times), or under the read lock if they keep failing
+	private <T> T read(Supplier<T> reader) {
+		for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+			long stamp = this.lock.tryOptimisticRead();
+			if (stamp == 0) {
+				continue;
+			}
+			try {
+				T ret = reader.get();
+				if (this.lock.validate(stamp)) {
+					return ret;
+				}
+			}
+			catch (RuntimeException e) {
+				// a writer changed the tree under us, the stamp is invalid - retry
+			}
+		}
+		long stamp = this.lock.readLock();
+		try {
+			return reader.get();
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, read under the read lock.
+	 */
+	public int[] keysToArray() {
+		long stamp = this.lock.readLock();
+		try {
+			return this.tree.keysToArray();
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item under the write lock, see AVLTree.insert.
+	 */
+	public int insert(int k, String i) {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.insert(k, i);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item under the write lock, see AVLTree.delete.
+	 */
+	public int delete(int k) {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.delete(k);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public AVLTree.BatchStats insertAll(int[] sortedKeys, String[] infos)
+	 *
+	 * inserts a sorted batch under one write lock acquisition, see AVLTree.insertAll.
+	 */
+	public AVLTree.BatchStats insertAll(int[] sortedKeys, String[] infos) {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.insertAll(sortedKeys, infos);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public AVLTree.BatchStats deleteAll(int[] sortedKeys)
+	 *
+	 * deletes a sorted batch under one write lock acquisition, see AVLTree.deleteAll.
+	 */
+	public AVLTree.BatchStats deleteAll(int[] sortedKeys) {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.deleteAll(sortedKeys);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+}
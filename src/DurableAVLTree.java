@@ -0,0 +1,734 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableAVLTree
+ *
+ * A thread safe AVLTree that survives the process dying. Every successful insert and delete is
+ * appended to a write-ahead log in a directory, and every checkpointEvery updates the whole tree is
+ * written as a snapshot (see AVLTree.writeSnapshot) and the log before it is deleted.
+ * open loads the last snapshot and replays the log written after it.
+ *
+ * Updates append their log record to a buffer under the tree's lock. A background thread writes
+ * the buffer to the log and, depending on the SyncPolicy, fsyncs it, so the records of all the
+ * updates made while one batch was being written go out together with the next (group commit).
+ * Log records carry a CRC32, so a record torn by a crash ends the replay instead of corrupting the tree.
+ *
+ * Once a log write fails the log is not written again and every later update, sync and checkpoint fails.
+ * The log is first cut back to where the failed batch started, so recovery can not replay a part of it.
+ * With EVERY_COMMIT the updates whose records were not written are then undone in the tree, newest first,
+ * so an update that throws leaves no trace in memory or on disk. If the log can not be cut back, the
+ * updates of the failed batch may or may not be recovered: they are kept in the tree, and their inserts
+ * and deletes throw saying so. With the other policies an update returns before its record is written,
+ * so the updates that returned stay in the tree even if their records are lost.
+ *
+ * Log files are named log-N and snapshots snapshot-N: snapshot-N holds the tree as it was when
+ * log-N was started, so recovery replays log-N, log-N+1, ... on top of it.
+ *
+ */
+public class DurableAVLTree implements Closeable {
+
+	/**
+	 * When an update is on disk.
+	 * EVERY_COMMIT: insert and delete return only after their record was fsynced. Concurrent updates share fsyncs.
+	 * INTERVAL: records are written and fsynced every syncIntervalMillis, a machine crash loses at most that much.
+	 * NONE: records are written every syncIntervalMillis and left to the OS, they survive the process but not the machine.
+	 */
+	public enum SyncPolicy {
+		EVERY_COMMIT, INTERVAL, NONE
+	}
+
+	public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+	public static final int DEFAULT_CHECKPOINT_EVERY = 1 << 20;
+
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final int RECORD_OVERHEAD = 1 + 4 + 4 + 4; // type, key, info length, crc
+	// the writer is woken before its interval ends when this much is buffered
+	private static final int FLUSH_BYTES = 1 << 20;
+	private static final Pattern LOG_NAME = Pattern.compile("log-(\\d+)");
+	private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)");
+
+	//Fields
+	private final AVLTree tree;
+	private final Path dir;
+	private final SyncPolicy policy;
+	private final long syncIntervalMillis;
+	private final int checkpointEvery;
+	// guards the tree and everything below up to ioLock
+	private final Object lock = new Object();
+	private byte[] pending = new byte[1 << 12]; // records not written yet
+	private int pendingLength;
+	private byte[] spare = new byte[1 << 12]; // the batch being written, swapped with pending
+	private int spareLength;
+	private long spareLast; // number of the last record in spare
+	private long appended; // records appended so far
+	private long written; // records written (and fsynced, unless the policy is NONE)
+	private int sinceCheckpoint; // records appended since the last checkpoint started
+	private boolean checkpointQueued;
+	private boolean closed;
+	private IOException failure; // the first write that failed, every later call fails with it
+	// the last record of a failed batch that could not be cut off the log, so it may be on disk
+	private long unsureLast;
+	// with EVERY_COMMIT, how to undo the last undoLength updates appended: delete the key of an INSERT,
+	// put back the info of a DELETE. the entries of written records are dropped after every batch.
+	private byte[] undoTypes = new byte[16];
+	private int[] undoKeys = new int[16];
+	private String[] undoInfos = new String[16];
+	private int undoLength;
+	private final CRC32 crc = new CRC32();
+	// held while writing to the log, so batches are written in order and the log can be switched safely
+	private final Object ioLock = new Object();
+	private FileChannel log;
+	private long logNumber;
+	// one checkpoint at a time
+	private final Object checkpointLock = new Object();
+	private final Thread writer;
+	private final ExecutorService checkpointer;
+
+	private DurableAVLTree(AVLTree tree, Path dir, SyncPolicy policy, long syncIntervalMillis, int checkpointEvery,
+			FileChannel log, long logNumber) {
+		this.tree = tree;
+		this.dir = dir;
+		this.policy = policy;
+		this.syncIntervalMillis = syncIntervalMillis;
+		this.checkpointEvery = checkpointEvery;
+		this.log = log;
+		this.logNumber = logNumber;
+		this.writer = new Thread(this::writeLoop, "DurableAVLTree-writer-" + dir.getFileName());
+		this.writer.setDaemon(true);
+		this.checkpointer = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "DurableAVLTree-checkpoint-" + dir.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.writer.start();
+	}
+
+	/**
+	 * public static DurableAVLTree open(Path dir) throws IOException
+	 *
+	 * opens the tree stored in dir, or creates an empty one, with the INTERVAL policy,
+	 * DEFAULT_SYNC_INTERVAL_MILLIS and DEFAULT_CHECKPOINT_EVERY.
+	 */
+	public static DurableAVLTree open(Path dir) throws IOException {
+		return open(dir, SyncPolicy.INTERVAL, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_EVERY);
+	}
+
+	/**
+	 * public static DurableAVLTree open(Path dir, SyncPolicy policy, long syncIntervalMillis, int checkpointEvery) throws IOException
+	 *
+	 * opens the tree stored in dir, or creates an empty one: loads the last snapshot and replays the logs after it.
+	 * a torn record at the end of the last log (a crash while writing it) is cut off.
+	 * checkpointEvery is the number of updates between automatic checkpoints, 0 for none.
+	 * throws IOException if a snapshot or a log other than the last one is corrupt.
+	 */
+	public static DurableAVLTree open(Path dir, SyncPolicy policy, long syncIntervalMillis, int checkpointEvery) throws IOException {
+		if (syncIntervalMillis <= 0 || checkpointEvery < 0) {
+			throw new IllegalArgumentException("syncIntervalMillis must be positive and checkpointEvery not negative");
+		}
+		Files.createDirectories(dir);
+		List<Long> logs = new ArrayList<>();
+		long snapshot = -1;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				Matcher matcher;
+				if ((matcher = LOG_NAME.matcher(name)).matches()) {
+					logs.add(Long.parseLong(matcher.group(1)));
+				}
+				else if ((matcher = SNAPSHOT_NAME.matcher(name)).matches()) {
+					snapshot = Math.max(snapshot, Long.parseLong(matcher.group(1)));
+				}
+				else if (name.endsWith(".tmp")) { // a snapshot that was not finished
+					Files.delete(file);
+				}
+			}
+		}
+		Collections.sort(logs);
+		AVLTree tree = snapshot < 0 ? new AVLTree() : AVLTree.loadSnapshot(snapshotPath(dir, snapshot));
+		long first = Math.max(snapshot, 0);
+		long last = first;
+		for (int index = 0; index < logs.size(); index++) {
+			long number = logs.get(index);
+			if (number < first) { // already in the snapshot, the checkpoint that wrote it did not get to delete it
+				Files.delete(logPath(dir, number));
+				continue;
+			}
+			replay(tree, logPath(dir, number), index == logs.size() - 1);
+			last = number;
+		}
+		deleteSnapshotsBefore(dir, snapshot);
+		FileChannel log = openLog(dir, last);
+		return new DurableAVLTree(tree, dir, policy, syncIntervalMillis, checkpointEvery, log, last);
+	}
+
+	private static Path logPath(Path dir, long number) {
+		return dir.resolve("log-" + number);
+	}
+
+	private static Path snapshotPath(Path dir, long number) {
+		return dir.resolve("snapshot-" + number);
+	}
+
+	private static FileChannel openLog(Path dir, long number) throws IOException {
+		FileChannel log = FileChannel.open(logPath(dir, number),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		syncDirectory(dir);
+		return log;
+	}
+
+	// makes the creation, renaming and deletion of files in dir durable
+	private static void syncDirectory(Path dir) throws IOException {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	// applies the records of a log to tree. a bad record ends the last log (it is cut off there) and is an error in any other
+	private static void replay(AVLTree tree, Path path, boolean last) throws IOException {
+		ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(path));
+		CRC32 crc = new CRC32();
+		while (records.remaining() > 0) {
+			int start = records.position();
+			boolean valid = records.remaining() >= RECORD_OVERHEAD;
+			byte type = 0;
+			int key = 0;
+			int length = 0;
+			if (valid) {
+				type = records.get();
+				key = records.getInt();
+				length = records.getInt();
+				valid = (type == INSERT || type == DELETE) && length >= -1 && records.remaining() >= Math.max(length, 0) + 4;
+			}
+			if (valid) {
+				crc.reset();
+				crc.update(records.array(), start, RECORD_OVERHEAD - 4 + Math.max(length, 0));
+				records.position(start + RECORD_OVERHEAD - 4 + Math.max(length, 0));
+				valid = records.getInt() == (int) crc.getValue();
+			}
+			if (!valid) {
+				if (!last) {
+					throw new IOException("corrupt record at " + start + " in " + path);
+				}
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					channel.truncate(start);
+					channel.force(true);
+				}
+				return;
+			}
+			if (type == INSERT) {
+				String info = length < 0 ? null : new String(records.array(), start + 9, length, StandardCharsets.UTF_8);
+				tree.insert(key, info);
+			}
+			else {
+				tree.delete(key);
+			}
+		}
+	}
+
+	private static void deleteSnapshotsBefore(Path dir, long number) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*")) {
+			for (Path file : files) {
+				Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+				if (matcher.matches() && Long.parseLong(matcher.group(1)) < number) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		synchronized (this.lock) {
+			return this.tree.search(k);
+		}
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		synchronized (this.lock) {
+			return this.tree.min();
+		}
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		synchronized (this.lock) {
+			return this.tree.max();
+		}
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		synchronized (this.lock) {
+			return this.tree.size();
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		synchronized (this.lock) {
+			return this.tree.keysToArray();
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		synchronized (this.lock) {
+			return this.tree.infoToArray();
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree and logs it.
+	 * returns the number of rebalancing operations, or -1 if an item with key k already exists in the tree.
+	 * with the EVERY_COMMIT policy returns after the insert is on disk.
+	 * throws UncheckedIOException if writing the log failed, now or before. With EVERY_COMMIT the insert is then undone,
+	 * unless its record could not be cut off the log: then it is kept, as it may or may not be recovered.
+	 */
+	public int insert(int k, String i) {
+		synchronized (this.lock) {
+			checkUsable();
+			int ret = this.tree.insert(k, i);
+			if (ret != -1) {
+				long record = append(INSERT, k, i);
+				pushUndo(INSERT, k, null);
+				commit(record);
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there, and logs it.
+	 * returns the number of rebalancing operations, or -1 if an item with key k was not found in the tree.
+	 * with the EVERY_COMMIT policy returns after the delete is on disk.
+	 * throws UncheckedIOException if writing the log failed, now or before. With EVERY_COMMIT the delete is then undone,
+	 * unless its record could not be cut off the log: then it is kept, as it may or may not be recovered.
+	 */
+	public int delete(int k) {
+		synchronized (this.lock) {
+			checkUsable();
+			String old = this.policy == SyncPolicy.EVERY_COMMIT ? this.tree.peek(k) : null;
+			int ret = this.tree.delete(k);
+			if (ret != -1) {
+				long record = append(DELETE, k, null);
+				pushUndo(DELETE, k, old);
+				commit(record);
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * public void sync()
+	 *
+	 * returns after all updates made so far are written and fsynced.
+	 * throws IllegalStateException if the tree was closed, and IOException if writing the log failed, now or before.
+	 */
+	public void sync() throws IOException {
+		synchronized (this.ioLock) {
+			synchronized (this.lock) {
+				checkOpen();
+			}
+			writePending(true);
+		}
+	}
+
+	/**
+	 * public void checkpoint() throws IOException
+	 *
+	 * writes a snapshot of the tree and deletes the logs it makes unnecessary.
+	 * updates wait only while the tree is copied, the snapshot is written without the lock.
+	 */
+	public void checkpoint() throws IOException {
+		synchronized (this.checkpointLock) {
+			int[] keys;
+			String[] infos;
+			long number;
+			synchronized (this.ioLock) {
+				// the records of everything copied go to the old log, later ones to the new log
+				synchronized (this.lock) {
+					checkOpen();
+					checkWritable();
+					keys = this.tree.keysToArray();
+					infos = this.tree.infoToArray();
+					this.sinceCheckpoint = 0;
+					takePending();
+				}
+				writeBatch(true);
+				number = this.logNumber + 1;
+				FileChannel next = openLog(this.dir, number);
+				this.log.close();
+				this.log = next;
+				this.logNumber = number;
+			}
+			Path snapshot = snapshotPath(this.dir, number);
+			Path tmp = this.dir.resolve(snapshot.getFileName() + ".tmp");
+			AVLTree.fromSorted(keys, infos).writeSnapshot(tmp);
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory(this.dir);
+			long old = number - 1;
+			while (old >= 0 && Files.deleteIfExists(logPath(this.dir, old))) {
+				old--;
+			}
+			deleteSnapshotsBefore(this.dir, number);
+		}
+	}
+
+	/**
+	 * public void close() throws IOException
+	 *
+	 * waits for a running checkpoint, writes and fsyncs the log and stops the background threads.
+	 * the tree can not be used afterwards.
+	 * throws IOException if writing the log failed, now or before.
+	 */
+	public void close() throws IOException {
+		synchronized (this.lock) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			this.lock.notifyAll();
+		}
+		this.checkpointer.shutdown();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				this.checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+				this.writer.join();
+				break;
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this.ioLock) {
+			try {
+				writePending(true);
+			}
+			finally {
+				this.log.close();
+			}
+		}
+	}
+
+	// call with lock held
+	private void checkUsable() {
+		checkOpen();
+		if (this.failure != null) {
+			throw new UncheckedIOException("an earlier log write failed", this.failure);
+		}
+	}
+
+	private void checkOpen() {
+		if (this.closed) {
+			throw new IllegalStateException("closed");
+		}
+	}
+
+	// after a failed write nothing more is written, so the records that were not written stay unwritten
+	// and rollBack can undo them. call with lock held
+	private void checkWritable() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("an earlier log write failed", this.failure);
+		}
+	}
+
+	// adds a record to the pending buffer and returns its number. call with lock held
+	private long append(byte type, int k, String i) {
+		byte[] info = i == null ? null : i.getBytes(StandardCharsets.UTF_8);
+		int length = RECORD_OVERHEAD + (info == null ? 0 : info.length);
+		if (this.pendingLength + length > this.pending.length) {
+			this.pending = Arrays.copyOf(this.pending, Math.max(this.pendingLength + length, 2 * this.pending.length));
+		}
+		byte[] b = this.pending;
+		int p = this.pendingLength;
+		b[p] = type;
+		putInt(b, p + 1, k);
+		putInt(b, p + 5, info == null ? -1 : info.length);
+		if (info != null) {
+			System.arraycopy(info, 0, b, p + 9, info.length);
+		}
+		this.crc.reset();
+		this.crc.update(b, p, length - 4);
+		putInt(b, p + length - 4, (int) this.crc.getValue());
+		this.pendingLength += length;
+		if (this.checkpointEvery > 0 && ++this.sinceCheckpoint >= this.checkpointEvery && !this.checkpointQueued) {
+			this.checkpointQueued = true;
+			this.checkpointer.execute(this::autoCheckpoint);
+		}
+		return ++this.appended;
+	}
+
+	private static void putInt(byte[] b, int p, int v) {
+		b[p] = (byte) (v >>> 24);
+		b[p + 1] = (byte) (v >>> 16);
+		b[p + 2] = (byte) (v >>> 8);
+		b[p + 3] = (byte) v;
+	}
+
+	// remembers how to undo the update of the record just appended, with EVERY_COMMIT. call with lock held
+	private void pushUndo(byte type, int k, String old) {
+		if (this.policy != SyncPolicy.EVERY_COMMIT) {
+			return;
+		}
+		if (this.undoLength == this.undoKeys.length) {
+			int capacity = 2 * this.undoLength;
+			this.undoTypes = Arrays.copyOf(this.undoTypes, capacity);
+			this.undoKeys = Arrays.copyOf(this.undoKeys, capacity);
+			this.undoInfos = Arrays.copyOf(this.undoInfos, capacity);
+		}
+		this.undoTypes[this.undoLength] = type;
+		this.undoKeys[this.undoLength] = k;
+		this.undoInfos[this.undoLength] = old;
+		this.undoLength++;
+	}
+
+	// drops the undo entries of the records written so far. call with lock held
+	private void dropUndo() {
+		int unwritten = (int) Math.min(this.undoLength, this.appended - this.written);
+		int drop = this.undoLength - unwritten;
+		if (drop == 0) {
+			return;
+		}
+		System.arraycopy(this.undoTypes, drop, this.undoTypes, 0, unwritten);
+		System.arraycopy(this.undoKeys, drop, this.undoKeys, 0, unwritten);
+		System.arraycopy(this.undoInfos, drop, this.undoInfos, 0, unwritten);
+		Arrays.fill(this.undoInfos, unwritten, this.undoLength, null);
+		this.undoLength = unwritten;
+	}
+
+	// after a failed write, undoes the updates whose records were not written, newest first, and drops
+	// their records. the updates up to unsureLast are kept, their records may be on disk.
+	// the first caller undoes all of them. call with lock held
+	private void rollBack() {
+		dropUndo();
+		// the undo entries belong to the last undoLength records appended
+		long first = this.appended - this.undoLength + 1;
+		int keep = (int) Math.max(0, Math.min(this.undoLength, this.unsureLast - first + 1));
+		for (int j = this.undoLength - 1; j >= keep; j--) {
+			if (this.undoTypes[j] == INSERT) {
+				this.tree.delete(this.undoKeys[j]);
+			}
+			else {
+				this.tree.insert(this.undoKeys[j], this.undoInfos[j]);
+			}
+		}
+		Arrays.fill(this.undoInfos, 0, this.undoLength, null);
+		this.undoLength = 0;
+		this.pendingLength = 0;
+	}
+
+	// wakes the writer when needed and, with EVERY_COMMIT, waits until record is written. call with lock held
+	private void commit(long record) {
+		if (this.policy == SyncPolicy.EVERY_COMMIT || this.pendingLength >= FLUSH_BYTES) {
+			this.lock.notifyAll();
+		}
+		if (this.policy != SyncPolicy.EVERY_COMMIT) {
+			return;
+		}
+		boolean interrupted = false;
+		while (this.written < record && this.failure == null) {
+			try {
+				this.lock.wait();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.written < record) {
+			rollBack();
+			if (record <= this.unsureLast) {
+				throw new UncheckedIOException("writing the log failed, the update may or may not be recovered", this.failure);
+			}
+			checkUsable();
+		}
+	}
+
+	private void autoCheckpoint() {
+		try {
+			checkpoint();
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+		catch (IllegalStateException e) { // closed meanwhile
+		}
+		finally {
+			synchronized (this.lock) {
+				this.checkpointQueued = false;
+			}
+		}
+	}
+
+	private void fail(IOException e) {
+		synchronized (this.lock) {
+			if (this.failure == null) {
+				this.failure = e;
+			}
+			this.lock.notifyAll();
+		}
+	}
+
+	// the writer thread: waits for records (EVERY_COMMIT) or for the interval, then writes them
+	private void writeLoop() {
+		try {
+			while (true) {
+				synchronized (this.lock) {
+					if (this.policy == SyncPolicy.EVERY_COMMIT) {
+						while (this.pendingLength == 0 && !this.closed) {
+							this.lock.wait();
+						}
+					}
+					else if (!this.closed && this.pendingLength < FLUSH_BYTES) {
+						this.lock.wait(this.syncIntervalMillis);
+					}
+					if (this.closed) {
+						return; // close writes the rest
+					}
+					if (this.pendingLength == 0) {
+						continue;
+					}
+				}
+				synchronized (this.ioLock) {
+					writePending(this.policy != SyncPolicy.NONE);
+				}
+			}
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+		catch (InterruptedException e) {
+			fail(new IOException("log writer interrupted", e));
+		}
+	}
+
+	// writes the pending records to the log as one batch. call with ioLock held, but not lock
+	private void writePending(boolean force) throws IOException {
+		synchronized (this.lock) {
+			checkWritable();
+			takePending();
+		}
+		writeBatch(force);
+	}
+
+	// moves the pending records to the spare buffer, which only writeBatch reads. call with ioLock and lock held
+	private void takePending() {
+		byte[] batch = this.pending;
+		this.pending = this.spare;
+		this.spare = batch;
+		this.spareLength = this.pendingLength;
+		this.spareLast = this.appended;
+		this.pendingLength = 0;
+	}
+
+	// writes the records taken by takePending. a batch that fails is cut off the log again, so recovery
+	// does not replay updates rollBack undoes. call with ioLock held, but not lock
+	private void writeBatch(boolean force) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(this.spare, 0, this.spareLength);
+		long start;
+		try {
+			start = this.log.size();
+		}
+		catch (IOException e) {
+			fail(e);
+			throw e;
+		}
+		try {
+			while (buffer.hasRemaining()) {
+				this.log.write(buffer);
+			}
+			if (force) {
+				this.log.force(false);
+			}
+		}
+		catch (IOException e) {
+			try {
+				this.log.truncate(start);
+				this.log.force(true);
+			}
+			catch (IOException cutFailure) {
+				e.addSuppressed(cutFailure);
+				IOException unsure = new IOException("writing the log failed and the batch could not be cut off, "
+						+ "records " + (this.written + 1) + " to " + this.spareLast + " may or may not be recovered", e);
+				synchronized (this.lock) {
+					this.unsureLast = this.spareLast;
+				}
+				fail(unsure);
+				throw unsure;
+			}
+			fail(e);
+			throw e;
+		}
+		synchronized (this.lock) {
+			this.written = this.spareLast;
+			dropUndo();
+			this.lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *
+ * GenericAVLTree
+ *
+ * An AVL tree with distinct keys of type K, ordered by a Comparator, and values of type V.
+ * For int and long keys use IntAVLTree and LongAVLTree, which avoid boxing the keys.
+ *
+ */
+public class GenericAVLTree<K, V> extends AbstractAVLTree<V, GenericAVLTree.Node<K, V>> {
+
+	public static final class Node<K, V> extends AbstractAVLTree.TreeNode<V, Node<K, V>> {
+		final K key;
+
+		Node(K key, V value) {
+			super(value);
+			this.key = key;
+		}
+
+		public K getKey() {
+			return this.key;
+		}
+	}
+
+	private final Comparator<? super K> comparator;
+
+	//Constructor for new empty tree ordered by the given comparator
+	public GenericAVLTree(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+	}
+
+	//Constructor for new empty tree ordered by the natural order of the keys
+	@SuppressWarnings("unchecked")
+	public GenericAVLTree() {
+		this((Comparator<? super K>) Comparator.naturalOrder());
+	}
+
+	/**
+	 * public V search(K k)
+	 *
+	 * returns the value of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(K k) {
+		Node<K, V> node = searchNode(k);
+		return node == null ? null : node.value;
+	}
+
+	// returns the node with key k, or null
+	private Node<K, V> searchNode(K k) {
+		Node<K, V> node = this.root;
+		while (node != null) {
+			int cmp = this.comparator.compare(node.key, k);
+			if (cmp == 0) {
+				return node;
+			}
+			node = cmp < 0 ? node.right : node.left;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(K k, V v)
+	 *
+	 * inserts an item with key k and value v to the tree.
+	 * returns the number of rebalancing operations (a double-rotation is counted as 2),
+	 * or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(K k, V v) {
+		Node<K, V> parent = null;
+		Node<K, V> node = this.root;
+		int cmp = 0;
+		while (node != null) {
+			cmp = this.comparator.compare(node.key, k);
+			if (cmp == 0) {
+				return -1;
+			}
+			parent = node;
+			node = cmp < 0 ? node.right : node.left;
+		}
+		addToSizes(parent, 1);
+		return insertLeaf(parent, new Node<>(k, v), cmp < 0);
+	}
+
+	/**
+	 * public int delete(K k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations (a double-rotation is counted as 2),
+	 * or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(K k) {
+		Node<K, V> node = searchNode(k);
+		if (node == null) {
+			return -1;
+		}
+		return deleteNode(node);
+	}
+
+	/**
+	 * public GenericAVLTree<K, V>[] split(K x)
+	 *
+	 * splits the tree into 2 trees according to the key x, in O(log n).
+	 * Returns an array [t1, t2] with two trees (ordered by the same comparator), keys(t1) < x < keys(t2).
+	 * x does not have to be in the tree; if it is, its item is in neither tree.
+	 * the nodes of this tree are reused and this tree becomes empty.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public GenericAVLTree<K, V>[] split(K x) {
+		GenericAVLTree<K, V>[] ret = new GenericAVLTree[] {
+				new GenericAVLTree<K, V>(this.comparator), new GenericAVLTree<K, V>(this.comparator)};
+		Node<K, V> last = null;
+		Node<K, V> node = this.root;
+		int cmp = 0;
+		while (node != null) {
+			cmp = this.comparator.compare(node.key, x);
+			if (cmp == 0) {
+				break;
+			}
+			last = node;
+			node = cmp < 0 ? node.right : node.left;
+		}
+		splitInto(node, last, cmp > 0, ret[0], ret[1], null);
+		return ret;
+	}
+
+	/**
+	 * public int join(K k, V v, GenericAVLTree<K, V> t)
+	 *
+	 * joins t and a new item (k, v) with the tree.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(), t != this, and t is ordered by the same
+	 * comparator. t/tree might be empty (rank = -1). t becomes empty.
+	 */
+	public int join(K k, V v, GenericAVLTree<K, V> t) {
+		boolean tBigger = t.root != null ? this.comparator.compare(t.root.key, k) > 0
+				: this.root == null || this.comparator.compare(this.root.key, k) < 0;
+		return joinTree(new Node<>(k, v), t, tBigger, null);
+	}
+
+	/**
+	 * public List<K> keys()
+	 *
+	 * Returns a sorted list which contains all keys in the tree.
+	 */
+	public List<K> keys() {
+		List<K> ret = new ArrayList<>(this.size);
+		for (Node<K, V> node = this.min; node != null; node = successor(node)) {
+			ret.add(node.key);
+		}
+		return ret;
+	}
+}
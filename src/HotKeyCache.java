@@ -0,0 +1,215 @@
+import java.util.Arrays;
+
+/**
+ *
+ * HotKeyCache
+ *
+ * A fixed-size cache from int keys to infos that an AVLTree can keep in front of search (see AVLTree.setCache).
+ * It is open addressed over primitive arrays: a key hashes to a set of WAYS neighbouring slots and can only
+ * be in one of them, so a lookup reads at most WAYS consecutive ints and no node.
+ * When a set is full the slot to evict is chosen by CLOCK: every hit sets the slot's reference bit, and the
+ * set's hand skips (and clears) referenced slots until it finds one that was not used since it last passed.
+ * Like AVLTree it is not thread safe.
+ *
+ */
+public class HotKeyCache {
+
+	public static final int WAYS = 8;
+
+	private static final byte EMPTY = 0;
+	private static final byte PRESENT = 1;
+	private static final byte REFERENCED = 2;
+
+	//Fields
+	private final int[] keys;
+	private final String[] infos;
+	private final byte[] states;
+	private final byte[] hands; // the clock hand of every set
+	private final int setMask;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	//Constructor for a cache of at least capacity entries, rounded up to a power of two sets of WAYS slots
+	public HotKeyCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		int sets = Integer.highestOneBit(Math.max((capacity + WAYS - 1) / WAYS, 1));
+		if (sets * WAYS < capacity) {
+			sets <<= 1;
+		}
+		this.keys = new int[sets * WAYS];
+		this.infos = new String[sets * WAYS];
+		this.states = new byte[sets * WAYS];
+		this.hands = new byte[sets];
+		this.setMask = sets - 1;
+	}
+
+	// the first slot of the set of key k
+	private int setStart(int k) {
+		int h = k * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & this.setMask) * WAYS;
+	}
+
+	// returns the slot of key k, or -1
+	private int slotOf(int k) {
+		int start = setStart(k);
+		for (int slot = start; slot < start + WAYS; slot++) {
+			if (this.states[slot] != EMPTY && this.keys[slot] == k) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * public int lookup(int k)
+	 *
+	 * returns the slot of key k and marks it used (a hit), or -1 if k is not cached (a miss).
+	 * the info is then read with infoAt.
+	 */
+	public int lookup(int k) {
+		int slot = slotOf(k);
+		if (slot < 0) {
+			this.misses++;
+			return -1;
+		}
+		this.states[slot] = REFERENCED;
+		this.hits++;
+		return slot;
+	}
+
+	/**
+	 * public String infoAt(int slot)
+	 *
+	 * returns the info in a slot returned by lookup.
+	 */
+	public String infoAt(int slot) {
+		return this.infos[slot];
+	}
+
+	/**
+	 * public void put(int k, String i)
+	 *
+	 * caches info i for key k, replacing the info k had, or evicting an entry if k's set is full.
+	 */
+	public void put(int k, String i) {
+		int slot = slotOf(k);
+		if (slot < 0) {
+			slot = freeSlot(setStart(k));
+			this.keys[slot] = k;
+			this.states[slot] = PRESENT;
+		}
+		this.infos[slot] = i;
+	}
+
+	// returns an empty slot of the set at start, evicting with CLOCK if there is none
+	private int freeSlot(int start) {
+		for (int slot = start; slot < start + WAYS; slot++) {
+			if (this.states[slot] == EMPTY) {
+				return slot;
+			}
+		}
+		int set = start / WAYS;
+		int hand = this.hands[set];
+		while (this.states[start + hand] == REFERENCED) {
+			this.states[start + hand] = PRESENT;
+			hand = (hand + 1) & (WAYS - 1);
+		}
+		this.hands[set] = (byte) ((hand + 1) & (WAYS - 1));
+		this.evictions++;
+		return start + hand;
+	}
+
+	/**
+	 * public void update(int k, String i)
+	 *
+	 * sets the info of key k to i if k is cached, and does nothing otherwise.
+	 */
+	public void update(int k, String i) {
+		int slot = slotOf(k);
+		if (slot >= 0) {
+			this.infos[slot] = i;
+		}
+	}
+
+	/**
+	 * public void remove(int k)
+	 *
+	 * removes key k from the cache, if it is there.
+	 */
+	public void remove(int k) {
+		int slot = slotOf(k);
+		if (slot >= 0) {
+			this.states[slot] = EMPTY;
+			this.infos[slot] = null;
+		}
+	}
+
+	/**
+	 * public void removeRange(int lo, int hi)
+	 *
+	 * removes the keys in [lo, hi] from the cache, in O(capacity).
+	 */
+	public void removeRange(int lo, int hi) {
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.states[slot] != EMPTY && this.keys[slot] >= lo && this.keys[slot] <= hi) {
+				this.states[slot] = EMPTY;
+				this.infos[slot] = null;
+			}
+		}
+	}
+
+	/**
+	 * public void clear()
+	 *
+	 * removes all entries. The counters are kept.
+	 */
+	public void clear() {
+		Arrays.fill(this.states, EMPTY);
+		Arrays.fill(this.infos, null);
+	}
+
+	/**
+	 * public int capacity()
+	 *
+	 * returns the number of slots.
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * public double getHitRate()
+	 *
+	 * returns hits / (hits + misses), or 0 before the first lookup.
+	 */
+	public double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : this.hits / (double) lookups;
+	}
+
+	/**
+	 * public void resetCounters()
+	 *
+	 * sets hits, misses and evictions back to 0.
+	 */
+	public void resetCounters() {
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+	}
+}
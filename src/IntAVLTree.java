@@ -0,0 +1,84 @@
+/**
+ *
+ * IntAVLTree
+ *
+ * An AVL tree with distinct int keys and values of type V.
+ * Keys are compared as primitives, and every int (including -1) can be used as a key.
+ *
+ */
+public class IntAVLTree<V> extends PrimitiveAVLTree<V> {
+
+	/**
+	 * public V search(int k)
+	 *
+	 * returns the value of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(int k) {
+		return get(k);
+	}
+
+	/**
+	 * public int insert(int k, V v)
+	 *
+	 * inserts an item with key k and value v to the tree.
+	 * returns the number of rebalancing operations (a double-rotation is counted as 2),
+	 * or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, V v) {
+		return insertKey(k, v);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations (a double-rotation is counted as 2),
+	 * or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		return deleteKey(k);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] ret = new int[this.size];
+		int c = 0;
+		for (Node<V> node = this.min; node != null; node = successor(node)) {
+			ret[c++] = (int) node.key;
+		}
+		return ret;
+	}
+
+	/**
+	 * public IntAVLTree<V>[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x, in O(log n).
+	 * Returns an array [t1, t2] with two trees, keys(t1) < x < keys(t2).
+	 * x does not have to be in the tree; if it is, its item is in neither tree.
+	 * the nodes of this tree are reused and this tree becomes empty.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public IntAVLTree<V>[] split(int x) {
+		IntAVLTree<V>[] ret = new IntAVLTree[] {new IntAVLTree<V>(), new IntAVLTree<V>()};
+		splitKey(x, ret[0], ret[1]);
+		return ret;
+	}
+
+	/**
+	 * public int join(int k, V v, IntAVLTree<V> t)
+	 *
+	 * joins t and a new item (k, v) with the tree.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(), t != this. t/tree might be empty (rank = -1).
+	 * t becomes empty.
+	 */
+	public int join(int k, V v, IntAVLTree<V> t) {
+		return joinKey(k, v, t);
+	}
+}
@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+/**
+ *
+ * IntAvlArena
+ *
+ * An AVL tree with distinct integer keys and String info, like AVLTree,
+ * that keeps its nodes in parallel primitive arrays instead of node objects.
+ * A node is an int index into the arrays. Index 0 is the virtual node (height -1).
+ * The tree itself is RecordAVLTree, shared with MappedAVLTree; this class only keeps the arrays.
+ *
+ * Per entry this costs 3 ints (key, left, right), 1 byte (height) and
+ * one info reference, about 17 bytes with compressed oops, against about 40 bytes
+ * for an AVLNode object. There is no parent index: updates keep the path they went down.
+ *
+ * Trees returned by split share their arena with the tree that was split,
+ * so split and join move nodes between trees without copying them.
+ *
+ */
+public class IntAvlArena extends RecordAVLTree<IntAvlArena.Store> {
+
+	// the arrays grow by at least this many slots at a time
+	private static final int CHUNK_SIZE = 1024;
+
+	// storage shared by all trees created from the same arena
+	static final class Store implements RecordStore {
+		private int[] key;
+		private int[] left;
+		private int[] right;
+		private byte[] height;
+		private String[] info;
+		private int used; // slots handed out so far, slot 0 is the virtual node
+		private int freeHead; // head of the free list, chained through left[]
+
+		private Store(int capacity) {
+			capacity = Math.max(capacity, 1);
+			this.key = new int[capacity];
+			this.left = new int[capacity];
+			this.right = new int[capacity];
+			this.height = new byte[capacity];
+			this.info = new String[capacity];
+			this.height[NIL] = -1;
+			this.used = 1;
+			this.freeHead = NIL;
+		}
+
+		@Override
+		public int key(int node) {
+			return this.key[node];
+		}
+
+		@Override
+		public int left(int node) {
+			return this.left[node];
+		}
+
+		@Override
+		public int right(int node) {
+			return this.right[node];
+		}
+
+		@Override
+		public int height(int node) {
+			return this.height[node];
+		}
+
+		@Override
+		public String info(int node) {
+			return this.info[node];
+		}
+
+		@Override
+		public void setLeft(int node, int left) {
+			this.left[node] = left;
+		}
+
+		@Override
+		public void setRight(int node, int right) {
+			this.right[node] = right;
+		}
+
+		@Override
+		public void setHeight(int node, int height) {
+			this.height[node] = (byte) height;
+		}
+
+		// returns a free slot for a new leaf, reusing deleted slots first
+		@Override
+		public int allocate(int k, String i) {
+			int node;
+			if (this.freeHead != NIL) {
+				node = this.freeHead;
+				this.freeHead = this.left[node];
+			}
+			else {
+				if (this.used == this.key.length) {
+					grow();
+				}
+				node = this.used++;
+			}
+			this.key[node] = k;
+			this.info[node] = i;
+			this.left[node] = NIL;
+			this.right[node] = NIL;
+			this.height[node] = 0;
+			return node;
+		}
+
+		// puts a slot on the free list
+		@Override
+		public void free(int node) {
+			this.info[node] = null;
+			this.left[node] = this.freeHead;
+			this.freeHead = node;
+		}
+
+		// slots handed out so far, the virtual node not counted
+		int slotsEverUsed() {
+			return this.used - 1;
+		}
+
+		// slots handed out and not on the free list, the virtual node not counted
+		int slotsInUse() {
+			int ret = this.used - 1;
+			for (int node = this.freeHead; node != NIL; node = this.left[node]) {
+				ret--;
+			}
+			return ret;
+		}
+
+		private void grow() {
+			int capacity = this.key.length + Math.max(CHUNK_SIZE, this.key.length >> 1);
+			this.key = Arrays.copyOf(this.key, capacity);
+			this.left = Arrays.copyOf(this.left, capacity);
+			this.right = Arrays.copyOf(this.right, capacity);
+			this.height = Arrays.copyOf(this.height, capacity);
+			this.info = Arrays.copyOf(this.info, capacity);
+		}
+	}
+
+	//Constructor for new empty tree with its own arena
+	public IntAvlArena() {
+		this(new Store(CHUNK_SIZE));
+	}
+
+	//Constructor for new empty tree with its own arena, sized for the given number of entries
+	public IntAvlArena(int expectedSize) {
+		this(new Store(expectedSize + 1));
+	}
+
+	private IntAvlArena(Store store) {
+		super(store);
+	}
+
+	/**
+	 * public IntAvlArena[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+	 * The item with key x, if there is one, is removed. This tree becomes empty.
+	 * Both trees share this tree's arena.
+	 */
+	public IntAvlArena[] split(int x) {
+		IntAvlArena[] ret = new IntAvlArena[] {new IntAvlArena(this.store), new IntAvlArena(this.store)};
+		splitInto(x, ret[0], ret[1]);
+		return ret;
+	}
+
+	/**
+	 * public int join(int k, String i, IntAvlArena t)
+	 *
+	 * joins t and a new item (k, i) with the tree.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(). t/tree might be empty (rank = -1).
+	 * If t uses a different arena its nodes are copied into this tree's arena first, and their slots in
+	 * t's arena are freed. t becomes empty.
+	 */
+	public int join(int k, String i, IntAvlArena t) {
+		return joinTree(k, i, t);
+	}
+}
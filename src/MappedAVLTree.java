@@ -0,0 +1,498 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * MappedAVLTree
+ *
+ * An AVL tree with distinct integer keys and String info, like IntAvlArena,
+ * that keeps its nodes in a memory-mapped file instead of the heap, so it can hold more entries than fit in memory.
+ * A node is an int index of a fixed-size record: its key, the offset of its info and two versions of its children and height.
+ * The tree itself is RecordAVLTree, shared with IntAvlArena; this class only keeps the files.
+ * Infos are UTF-8 strings appended to a second mapped file, path + ".values". The space of deleted infos is not reused.
+ *
+ * force() writes everything, then the root and the allocator state to the older of two checksummed header slots,
+ * so the files always hold the tree as of the last force(). Each force starts a new epoch. A version is tagged with
+ * the epoch it was written in: the first change to a record in an epoch goes to its older version, so the version
+ * the last force() wrote stays as it was, and further changes in the epoch go to the same one. The records of the
+ * forced tree that are freed are only reused after the next force. open takes the newest valid header slot, so after
+ * a crash it returns the tree of the last force(): it drops the versions written since then and puts the records
+ * the tree does not reach back on the free list.
+ *
+ * Trees returned by split share this tree's files, so split and join move nodes between trees without copying them.
+ * The files hold the root of one tree: the one returned by open until force() is called on another tree.
+ * Reopening gives that tree back. The nodes of the other trees stay allocated in the files, unless the
+ * process dies before close().
+ *
+ */
+public class MappedAVLTree extends RecordAVLTree<MappedAVLTree.Store> implements Closeable {
+
+	// the node file starts with a header page, then records in segments of 2^SEGMENT_SHIFT records
+	private static final int MAGIC = 0x41564c4d; // "AVLM"
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 4096;
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_DIRTY = 8; // records were changed after the newest slot was written
+	// the two header slots are in different disk sectors, so a torn header write can break only one of them
+	private static final int H_SLOTS = 512;
+	private static final int SLOT_BYTES = 512;
+	private static final int S_EPOCH = 0;
+	private static final int S_ROOT = 4;
+	private static final int S_SIZE = 8;
+	private static final int S_USED = 12;
+	private static final int S_FREE_HEAD = 16;
+	private static final int S_VALUE_END = 24;
+	private static final int S_CRC = 32; // CRC32 of the slot's bytes before it
+
+	private static final int RECORD_BYTES = 48;
+	private static final int KEY = 0;
+	private static final int BORN = 4; // the epoch the record was allocated in
+	private static final int VALUE = 8; // offset of the info in the value file, -1 for null
+	// two versions of 16 bytes, so neither crosses a disk sector. a free record is chained through LEFT of the first
+	private static final int VERSIONS = 16;
+	private static final int VERSION_BYTES = 16;
+	private static final int LEFT = 0;
+	private static final int RIGHT = 4;
+	private static final int EPOCH = 8; // the epoch the version was written in, 0 for none
+	private static final int HEIGHT = 12;
+	private static final int SEGMENT_SHIFT = 20;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+	private static final long SEGMENT_BYTES = (long) RECORD_BYTES << SEGMENT_SHIFT;
+
+	// the value file is mapped in segments of VALUE_SEGMENT_BYTES, an info never crosses a segment boundary
+	private static final int VALUE_SHIFT = 26;
+	private static final int VALUE_SEGMENT_BYTES = 1 << VALUE_SHIFT;
+
+	// storage shared by all trees created from the same files
+	static final class Store implements RecordStore {
+		private final FileChannel nodes;
+		private final FileChannel values;
+		private final MappedByteBuffer header;
+		private MappedByteBuffer[] nodeSegments = new MappedByteBuffer[0];
+		private MappedByteBuffer[] valueSegments = new MappedByteBuffer[0];
+		private int used; // slots handed out so far, slot 0 is the virtual node
+		private int freeHead; // head of the free list
+		private long valueEnd; // where the next info goes in the value file
+		private int epoch; // one more than the epoch of the newest header slot
+		private int[] retired = new int[16]; // records of the forced tree freed in this epoch, reused after force
+		private int retiredCount;
+		private boolean dirty; // the header says so on disk
+		private final CRC32 crc = new CRC32();
+
+		private Store(FileChannel nodes, FileChannel values) throws IOException {
+			this.nodes = nodes;
+			this.values = values;
+			this.header = map(nodes, 0, HEADER_BYTES);
+		}
+
+		private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		}
+
+		private MappedByteBuffer segment(int node) {
+			return this.nodeSegments[node >>> SEGMENT_SHIFT];
+		}
+
+		private static int offset(int node, int field) {
+			return (node & SEGMENT_MASK) * RECORD_BYTES + field;
+		}
+
+		// returns the offset of the newest version of node
+		private int version(MappedByteBuffer segment, int node) {
+			int first = offset(node, VERSIONS);
+			int second = first + VERSION_BYTES;
+			return segment.getInt(second + EPOCH) > segment.getInt(first + EPOCH) ? second : first;
+		}
+
+		// returns the offset of the version of node this epoch writes: the newest one if it is of this epoch,
+		// otherwise the older one, which gets the newest one's fields
+		private int writeVersion(MappedByteBuffer segment, int node) {
+			modify();
+			int newest = version(segment, node);
+			if (segment.getInt(newest + EPOCH) == this.epoch) {
+				return newest;
+			}
+			int older = newest == offset(node, VERSIONS) ? newest + VERSION_BYTES : newest - VERSION_BYTES;
+			segment.putInt(older + LEFT, segment.getInt(newest + LEFT));
+			segment.putInt(older + RIGHT, segment.getInt(newest + RIGHT));
+			segment.put(older + HEIGHT, segment.get(newest + HEIGHT));
+			segment.putInt(older + EPOCH, this.epoch);
+			return older;
+		}
+
+		@Override
+		public int key(int node) {
+			return segment(node).getInt(offset(node, KEY));
+		}
+
+		@Override
+		public int left(int node) {
+			MappedByteBuffer segment = segment(node);
+			return segment.getInt(version(segment, node) + LEFT);
+		}
+
+		@Override
+		public int right(int node) {
+			MappedByteBuffer segment = segment(node);
+			return segment.getInt(version(segment, node) + RIGHT);
+		}
+
+		@Override
+		public int height(int node) {
+			MappedByteBuffer segment = segment(node);
+			return segment.get(version(segment, node) + HEIGHT);
+		}
+
+		@Override
+		public void setLeft(int node, int left) {
+			MappedByteBuffer segment = segment(node);
+			segment.putInt(writeVersion(segment, node) + LEFT, left);
+		}
+
+		@Override
+		public void setRight(int node, int right) {
+			MappedByteBuffer segment = segment(node);
+			segment.putInt(writeVersion(segment, node) + RIGHT, right);
+		}
+
+		@Override
+		public void setHeight(int node, int height) {
+			MappedByteBuffer segment = segment(node);
+			segment.put(writeVersion(segment, node) + HEIGHT, (byte) height);
+		}
+
+		@Override
+		public String info(int node) {
+			long at = segment(node).getLong(offset(node, VALUE));
+			if (at < 0) {
+				return null;
+			}
+			MappedByteBuffer segment = this.valueSegments[(int) (at >>> VALUE_SHIFT)];
+			int position = (int) (at & (VALUE_SEGMENT_BYTES - 1));
+			byte[] bytes = new byte[segment.getInt(position)];
+			segment.get(position + 4, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		// appends i to the value file and returns its offset, or -1 if i is null
+		private long appendInfo(String i) {
+			if (i == null) {
+				return -1;
+			}
+			byte[] bytes = i.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > VALUE_SEGMENT_BYTES - 4) {
+				throw new IllegalArgumentException("info longer than " + (VALUE_SEGMENT_BYTES - 4) + " bytes");
+			}
+			if ((this.valueEnd & (VALUE_SEGMENT_BYTES - 1)) + 4 + bytes.length > VALUE_SEGMENT_BYTES) {
+				this.valueEnd = ((this.valueEnd >>> VALUE_SHIFT) + 1) << VALUE_SHIFT;
+			}
+			int index = (int) (this.valueEnd >>> VALUE_SHIFT);
+			if (index == this.valueSegments.length) {
+				this.valueSegments = Arrays.copyOf(this.valueSegments, index + 1);
+				this.valueSegments[index] = mapOrThrow(this.values, (long) index << VALUE_SHIFT, VALUE_SEGMENT_BYTES);
+			}
+			MappedByteBuffer segment = this.valueSegments[index];
+			int position = (int) (this.valueEnd & (VALUE_SEGMENT_BYTES - 1));
+			segment.putInt(position, bytes.length);
+			segment.put(position + 4, bytes);
+			long at = this.valueEnd;
+			this.valueEnd += 4 + bytes.length;
+			return at;
+		}
+
+		// returns a new leaf, allocated in this epoch
+		@Override
+		public int allocate(int k, String i) {
+			long value = appendInfo(i);
+			int node = take();
+			MappedByteBuffer segment = segment(node);
+			segment.putInt(offset(node, KEY), k);
+			segment.putInt(offset(node, BORN), this.epoch);
+			segment.putLong(offset(node, VALUE), value);
+			int first = offset(node, VERSIONS);
+			segment.putInt(first + LEFT, NIL);
+			segment.putInt(first + RIGHT, NIL);
+			segment.put(first + HEIGHT, (byte) 0);
+			segment.putInt(first + EPOCH, this.epoch);
+			segment.putInt(first + VERSION_BYTES + EPOCH, 0);
+			return node;
+		}
+
+		// puts a record allocated in this epoch on the free list, and keeps one of the forced tree until the next force
+		@Override
+		public void free(int node) {
+			if (segment(node).getInt(offset(node, BORN)) == this.epoch) {
+				chain(node);
+				return;
+			}
+			if (this.retiredCount == this.retired.length) {
+				this.retired = Arrays.copyOf(this.retired, 2 * this.retiredCount);
+			}
+			this.retired[this.retiredCount++] = node;
+		}
+
+		private void chain(int node) {
+			segment(node).putInt(offset(node, VERSIONS + LEFT), this.freeHead);
+			this.freeHead = node;
+		}
+
+		// returns a slot to write a record in, reusing freed slots first
+		private int take() {
+			modify();
+			if (this.freeHead != NIL) {
+				int node = this.freeHead;
+				this.freeHead = segment(node).getInt(offset(node, VERSIONS + LEFT));
+				return node;
+			}
+			if (this.used == Integer.MAX_VALUE) {
+				throw new IllegalStateException("node file is full");
+			}
+			growNodes(this.used + 1);
+			return this.used++;
+		}
+
+		// maps node segments until the first count slots are mapped
+		private void growNodes(int count) {
+			int needed = (int) ((count + (long) SEGMENT_MASK) >>> SEGMENT_SHIFT);
+			if (needed <= this.nodeSegments.length) {
+				return;
+			}
+			int index = this.nodeSegments.length;
+			this.nodeSegments = Arrays.copyOf(this.nodeSegments, needed);
+			for (; index < needed; index++) {
+				this.nodeSegments[index] = mapOrThrow(this.nodes, HEADER_BYTES + index * SEGMENT_BYTES, SEGMENT_BYTES);
+			}
+		}
+
+		private static MappedByteBuffer mapOrThrow(FileChannel channel, long position, long size) {
+			try {
+				return map(channel, position, size);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// called before a record is written: the files are about to stop matching the newest header slot
+		private void modify() {
+			if (!this.dirty) {
+				this.header.putInt(H_DIRTY, 1);
+				this.header.force();
+				this.dirty = true;
+			}
+		}
+
+		// writes all mapped pages, then root and the allocator state to the older header slot, which makes them
+		// the ones open returns. a new epoch starts and the records retired in the last one are freed.
+		private void force(int root, int size) {
+			for (MappedByteBuffer segment : this.valueSegments) {
+				segment.force();
+			}
+			for (MappedByteBuffer segment : this.nodeSegments) {
+				segment.force();
+			}
+			int slot = H_SLOTS + (this.epoch & 1) * SLOT_BYTES;
+			this.header.putInt(slot + S_EPOCH, this.epoch);
+			this.header.putInt(slot + S_ROOT, root);
+			this.header.putInt(slot + S_SIZE, size);
+			this.header.putInt(slot + S_USED, this.used);
+			this.header.putInt(slot + S_FREE_HEAD, this.freeHead);
+			this.header.putLong(slot + S_VALUE_END, this.valueEnd);
+			this.header.putInt(slot + S_CRC, slotCrc(slot));
+			this.header.force();
+			this.epoch++;
+			if (this.retiredCount == 0) {
+				if (this.dirty) {
+					this.header.putInt(H_DIRTY, 0);
+					this.header.force();
+					this.dirty = false;
+				}
+				return;
+			}
+			// not in the forced tree any more. the free list on disk does not have them, so the header is dirty
+			modify();
+			for (int j = 0; j < this.retiredCount; j++) {
+				chain(this.retired[j]);
+			}
+			this.retiredCount = 0;
+		}
+
+		private int slotCrc(int slot) {
+			byte[] bytes = new byte[S_CRC];
+			this.header.get(slot, bytes);
+			this.crc.reset();
+			this.crc.update(bytes);
+			return (int) this.crc.getValue();
+		}
+
+		// returns the valid header slot with the newest epoch, or -1
+		private int newestSlot() {
+			int ret = -1;
+			for (int slot = H_SLOTS; slot < H_SLOTS + 2 * SLOT_BYTES; slot += SLOT_BYTES) {
+				int epoch = this.header.getInt(slot + S_EPOCH);
+				if (epoch > 0 && this.header.getInt(slot + S_CRC) == slotCrc(slot)
+						&& (ret < 0 || epoch > this.header.getInt(ret + S_EPOCH))) {
+					ret = slot;
+				}
+			}
+			return ret;
+		}
+
+		// after a crash: drops the versions written after the newest header slot from the records of the tree at
+		// root, and puts every slot below used that the tree does not reach on the free list
+		private void recover(int root) {
+			BitSet reached = new BitSet(this.used);
+			mark(root, reached);
+			this.freeHead = NIL;
+			for (int node = this.used - 1; node > NIL; node--) {
+				if (!reached.get(node)) {
+					chain(node);
+				}
+			}
+		}
+
+		private void mark(int node, BitSet reached) {
+			if (node == NIL) {
+				return;
+			}
+			reached.set(node);
+			MappedByteBuffer segment = segment(node);
+			for (int at = offset(node, VERSIONS); at < offset(node, VERSIONS + 2 * VERSION_BYTES); at += VERSION_BYTES) {
+				if (segment.getInt(at + EPOCH) >= this.epoch) {
+					segment.putInt(at + EPOCH, 0);
+				}
+			}
+			mark(left(node), reached);
+			mark(right(node), reached);
+		}
+	}
+
+	private MappedAVLTree(Store store) {
+		super(store);
+	}
+
+	/**
+	 * public static MappedAVLTree open(Path path) throws IOException
+	 *
+	 * opens the tree stored in path and path + ".values", or creates an empty one if path does not exist.
+	 * if the process died before the last change was forced, returns the tree of the last force().
+	 * throws IOException if the files are not a tree.
+	 */
+	public static MappedAVLTree open(Path path) throws IOException {
+		boolean exists = Files.exists(path);
+		Path valuePath = path.resolveSibling(path.getFileName() + ".values");
+		FileChannel nodes = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		FileChannel values = null;
+		try {
+			values = FileChannel.open(valuePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			Store store = new Store(nodes, values);
+			MappedAVLTree tree = new MappedAVLTree(store);
+			if (!exists) {
+				store.used = 1;
+				store.epoch = 1;
+				store.growNodes(1);
+				store.setHeight(NIL, -1);
+				store.header.putInt(H_MAGIC, MAGIC);
+				store.header.putInt(H_VERSION, VERSION);
+				store.force(NIL, 0);
+				return tree;
+			}
+			if (store.header.getInt(H_MAGIC) != MAGIC || store.header.getInt(H_VERSION) != VERSION) {
+				throw new IOException("not a MappedAVLTree file of version " + VERSION + ": " + path);
+			}
+			int slot = store.newestSlot();
+			if (slot < 0) {
+				throw new IOException("no valid header: " + path);
+			}
+			store.epoch = store.header.getInt(slot + S_EPOCH) + 1;
+			store.used = store.header.getInt(slot + S_USED);
+			store.freeHead = store.header.getInt(slot + S_FREE_HEAD);
+			store.valueEnd = store.header.getLong(slot + S_VALUE_END);
+			store.growNodes(store.used);
+			int valueSegments = (int) ((store.valueEnd + VALUE_SEGMENT_BYTES - 1) >>> VALUE_SHIFT);
+			store.valueSegments = new MappedByteBuffer[valueSegments];
+			for (int index = 0; index < valueSegments; index++) {
+				store.valueSegments[index] = Store.map(values, (long) index << VALUE_SHIFT, VALUE_SEGMENT_BYTES);
+			}
+			tree.root = store.header.getInt(slot + S_ROOT);
+			tree.size = store.header.getInt(slot + S_SIZE);
+			if (store.header.getInt(H_DIRTY) != 0) {
+				store.dirty = true;
+				store.recover(tree.root);
+			}
+			return tree;
+		}
+		catch (IOException | RuntimeException e) {
+			nodes.close();
+			if (values != null) {
+				values.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * public void force()
+	 *
+	 * writes all changes to disk and makes this tree the one open returns for these files.
+	 * when it returns the files hold this tree, even if the process dies right after.
+	 */
+	public void force() {
+		this.store.force(this.root, this.size);
+	}
+
+	/**
+	 * public void close() throws IOException
+	 *
+	 * forces this tree (see force()) and closes the files. No tree sharing the files can be used after that.
+	 */
+	public void close() throws IOException {
+		force();
+		if (this.store.dirty) { // the records freed by the first force are only on the free list of the second
+			force();
+		}
+		this.store.nodes.close();
+		this.store.values.close();
+	}
+
+	/**
+	 * public MappedAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+	 * The item with key x, if there is one, is removed. This tree becomes empty.
+	 * Both trees share this tree's files.
+	 */
+	public MappedAVLTree[] split(int x) {
+		MappedAVLTree[] ret = new MappedAVLTree[] {new MappedAVLTree(this.store), new MappedAVLTree(this.store)};
+		splitInto(x, ret[0], ret[1]);
+		return ret;
+	}
+
+	/**
+	 * public int join(int k, String i, MappedAVLTree t)
+	 *
+	 * joins t and a new item (k, i) with the tree.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(). t/tree might be empty (rank = -1).
+	 * If t uses different files its nodes are copied into this tree's files first, and freed in t's files.
+	 * t becomes empty.
+	 */
+	public int join(int k, String i, MappedAVLTree t) {
+		return joinTree(k, i, t);
+	}
+}
@@ -0,0 +1,825 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * OptimisticAVLTree
+ *
+ * A concurrent AVL tree with distinct integer keys and info, after the relaxed balance tree of
+ * Bronson, Casper, Chafi and Olukotun ("A Practical Concurrent Binary Search Tree", PPoPP 2010).
+ * Every node has its own lock and a version, which changes when a rotation moves the node
+ * down (its range of keys shrinks) or when the node is unlinked.
+ * Searches take no locks. They go down hand over hand: read a child, then check that the
+ * parent's version did not change, and go back one level if it did.
+ * insert and delete lock only the node they change (and its parent when unlinking it),
+ * a rotation locks only the parent and the nodes it moves, so updates in disjoint subtrees
+ * do not wait for each other.
+ * A deleted node with two children stays in the tree as a routing node (info null) and is
+ * unlinked once it has at most one child. Heights are fixed and rotations done after every
+ * update, so whenever no update is running the tree is an AVL tree.
+ *
+ */
+public class OptimisticAVLTree {
+
+	// version bits. a node's version only changes while the node is locked.
+	private static final long UNLINKED = 1L;
+	private static final long SHRINKING = 2L;
+	private static final long SHRINK_COUNT_INCR = 4L;
+
+	// results of nodeCondition, any other result is the height the node should have
+	private static final int UNLINK_REQUIRED = -1;
+	private static final int REBALANCE_REQUIRED = -2;
+	private static final int NOTHING_REQUIRED = -3;
+
+	// spins on a node being rotated before yielding the processor
+	private static final int SPIN_COUNT = 100;
+
+	// returned by the attempt methods when they have to be retried from the level above
+	private static final String RETRY = new String("retry");
+
+	// a node of the tree. a missing child is null, and a leaf has height 1.
+	private static final class Node {
+		private final int key;
+		private volatile String info; // null for a routing node
+		private volatile int height;
+		private volatile long version;
+		private volatile Node parent;
+		private volatile Node left;
+		private volatile Node right;
+
+		private Node(int key, String info, Node parent) {
+			this.key = key;
+			this.info = info;
+			this.height = 1;
+			this.parent = parent;
+		}
+
+		private Node child(int dir) {
+			return dir < 0 ? this.left : this.right;
+		}
+
+		private void setChild(int dir, Node node) {
+			if (dir < 0) {
+				this.left = node;
+			}
+			else {
+				this.right = node;
+			}
+		}
+	}
+
+	//Fields
+	// the real root is the right child of rootHolder, whose version never changes
+	private final Node rootHolder = new Node(Integer.MIN_VALUE, null, null);
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 * The count is updated right after each insert and delete, so it is exact whenever no update is running.
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * never blocks.
+	 */
+	public String search(int k) {
+		while (true) {
+			String ret = attemptSearch(k, this.rootHolder, 1, this.rootHolder.version);
+			if (ret != RETRY) {
+				return ret;
+			}
+		}
+	}
+
+	// looks for k below node, coming from node to its child in direction dir.
+	// node was reached with version nodeV, if it changed node may no longer cover k and RETRY is returned.
+	private static String attemptSearch(int k, Node node, int dir, long nodeV) {
+		while (true) {
+			Node child = node.child(dir);
+			if (node.version != nodeV) {
+				return RETRY;
+			}
+			if (child == null) {
+				return null;
+			}
+			if (child.key == k) {
+				return child.info;
+			}
+			long childV = child.version;
+			if ((childV & SHRINKING) != 0) {
+				waitUntilNotChanging(child);
+			}
+			else if (!isUnlinked(childV) && child == node.child(dir)) {
+				if (node.version != nodeV) {
+					return RETRY;
+				}
+				String ret = attemptSearch(k, child, k < child.key ? -1 : 1, childV);
+				if (ret != RETRY) {
+					return ret;
+				}
+			}
+		}
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return extreme(-1);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return extreme(1);
+	}
+
+	private String extreme(int dir) {
+		while (true) {
+			Node root = this.rootHolder.right;
+			if (root == null) {
+				return null;
+			}
+			long rootV = root.version;
+			if ((rootV & SHRINKING) != 0) {
+				waitUntilNotChanging(root);
+			}
+			else if (!isUnlinked(rootV) && root == this.rootHolder.right) {
+				String ret = attemptExtreme(dir, root, rootV);
+				if (ret != RETRY) {
+					return ret;
+				}
+			}
+		}
+	}
+
+	// node was reached from the root going only in direction dir, so it is the extreme node if it has no child there.
+	// this is checked under node's lock, since adding a child to node needs that lock.
+	private String attemptExtreme(int dir, Node node, long nodeV) {
+		while (true) {
+			Node child = node.child(dir);
+			if (node.version != nodeV) {
+				return RETRY;
+			}
+			if (child == null) {
+				synchronized (node) {
+					if (node.version != nodeV) {
+						return RETRY;
+					}
+					if (node.child(dir) != null) {
+						continue;
+					}
+					String info = node.info;
+					if (info != null) {
+						return info;
+					}
+				}
+				// a routing node that lost a child and is about to be unlinked - help unlink it
+				fixHeightAndRebalance(node);
+				continue;
+			}
+			long childV = child.version;
+			if ((childV & SHRINKING) != 0) {
+				waitUntilNotChanging(child);
+			}
+			else if (!isUnlinked(childV) && child == node.child(dir)) {
+				if (node.version != nodeV) {
+					return RETRY;
+				}
+				String ret = attemptExtreme(dir, child, childV);
+				if (ret != RETRY) {
+					return ret;
+				}
+			}
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the tree.
+	 * returns 0 if the item was inserted.
+	 * If an item with key k already exists in the tree, returns -1 and leaves it unchanged.
+	 * Rebalancing is done by the inserting thread before it returns, possibly together with other threads,
+	 * so the number of rebalancing operations is not reported.
+	 * precondition: i != null
+	 */
+	public int insert(int k, String i) {
+		Objects.requireNonNull(i);
+		if (update(k, i) != null) {
+			return -1;
+		}
+		this.size.incrementAndGet();
+		return 0;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * returns 0 if the item was deleted.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		if (update(k, null) == null) {
+			return -1;
+		}
+		this.size.decrementAndGet();
+		return 0;
+	}
+
+	// inserts (k, newInfo) if k is not in the tree, or deletes k if newInfo is null.
+	// returns the info k had before, null if it was not in the tree.
+	private String update(int k, String newInfo) {
+		while (true) {
+			Node root = this.rootHolder.right;
+			if (root == null) {
+				if (newInfo == null || attemptInsertIntoEmpty(k, newInfo)) {
+					return null;
+				}
+			}
+			else {
+				long rootV = root.version;
+				if ((rootV & SHRINKING) != 0) {
+					waitUntilNotChanging(root);
+				}
+				else if (!isUnlinked(rootV) && root == this.rootHolder.right) {
+					String ret = attemptUpdate(k, newInfo, this.rootHolder, root, rootV);
+					if (ret != RETRY) {
+						return ret;
+					}
+				}
+			}
+		}
+	}
+
+	private boolean attemptInsertIntoEmpty(int k, String i) {
+		synchronized (this.rootHolder) {
+			if (this.rootHolder.right != null) {
+				return false;
+			}
+			this.rootHolder.right = new Node(k, i, this.rootHolder);
+			return true;
+		}
+	}
+
+	// like attemptSearch, going down from node which was reached from parent with version nodeV.
+	private String attemptUpdate(int k, String newInfo, Node parent, Node node, long nodeV) {
+		if (k == node.key) {
+			return attemptNodeUpdate(newInfo, parent, node);
+		}
+		int dir = k < node.key ? -1 : 1;
+		while (true) {
+			Node child = node.child(dir);
+			if (node.version != nodeV) {
+				return RETRY;
+			}
+			if (child == null) {
+				if (newInfo == null) {
+					return null;
+				}
+				Node damaged;
+				synchronized (node) {
+					if (node.version != nodeV) {
+						return RETRY;
+					}
+					if (node.child(dir) != null) {
+						continue;
+					}
+					node.setChild(dir, new Node(k, newInfo, node));
+					damaged = fixHeight(node);
+				}
+				fixHeightAndRebalance(damaged);
+				return null;
+			}
+			long childV = child.version;
+			if ((childV & SHRINKING) != 0) {
+				waitUntilNotChanging(child);
+			}
+			else if (!isUnlinked(childV) && child == node.child(dir)) {
+				if (node.version != nodeV) {
+					return RETRY;
+				}
+				String ret = attemptUpdate(k, newInfo, node, child, childV);
+				if (ret != RETRY) {
+					return ret;
+				}
+			}
+		}
+	}
+
+	// node has the key being updated. a delete unlinks node if it has at most one child,
+	// otherwise it turns node into a routing node. an insert only fills a routing node.
+	private String attemptNodeUpdate(String newInfo, Node parent, Node node) {
+		if (newInfo == null) {
+			if (node.info == null) {
+				return null;
+			}
+			if (node.left == null || node.right == null) {
+				String prev;
+				Node damaged;
+				synchronized (parent) {
+					if (isUnlinked(parent.version) || node.parent != parent) {
+						return RETRY;
+					}
+					synchronized (node) {
+						prev = node.info;
+						if (prev == null) {
+							return null;
+						}
+						if (!attemptUnlink(parent, node)) {
+							return RETRY;
+						}
+					}
+					damaged = fixHeight(parent);
+				}
+				fixHeightAndRebalance(damaged);
+				return prev;
+			}
+		}
+		synchronized (node) {
+			if (isUnlinked(node.version)) {
+				return RETRY;
+			}
+			String prev = node.info;
+			if (newInfo == null) {
+				if (prev != null && (node.left == null || node.right == null)) {
+					return RETRY; // lost a child since it was checked, unlink it instead
+				}
+				node.info = null;
+			}
+			else if (prev == null) {
+				node.info = newInfo;
+			}
+			return prev;
+		}
+	}
+
+	// splices node (with at most one child) out from under parent. both must be locked.
+	private static boolean attemptUnlink(Node parent, Node node) {
+		Node parentLeft = parent.left;
+		if (parentLeft != node && parent.right != node) {
+			return false;
+		}
+		Node left = node.left;
+		Node right = node.right;
+		if (left != null && right != null) {
+			return false;
+		}
+		Node splice = left != null ? left : right;
+		if (parentLeft == node) {
+			parent.left = splice;
+		}
+		else {
+			parent.right = splice;
+		}
+		if (splice != null) {
+			splice.parent = parent;
+		}
+		node.version = UNLINKED;
+		node.info = null;
+		return true;
+	}
+
+	private static boolean isUnlinked(long version) {
+		return (version & UNLINKED) != 0;
+	}
+
+	private static void waitUntilNotChanging(Node node) {
+		long version = node.version;
+		if ((version & SHRINKING) == 0) {
+			return;
+		}
+		for (int i = 0; i < SPIN_COUNT && node.version == version; i++) {
+			Thread.onSpinWait();
+		}
+		while (node.version == version) {
+			Thread.yield();
+		}
+	}
+
+	private static int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	// what node needs: to be unlinked (a routing node with at most one child), a rotation,
+	// a new height (returned as is), or nothing.
+	private static int nodeCondition(Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.info == null) {
+			return UNLINK_REQUIRED;
+		}
+		int hl = height(left);
+		int hr = height(right);
+		int bf = hl - hr;
+		if (bf < -1 || bf > 1) {
+			return REBALANCE_REQUIRED;
+		}
+		int height = Math.max(hl, hr) + 1;
+		return height != node.height ? height : NOTHING_REQUIRED;
+	}
+
+	// fixes the height of a locked node if that is all it needs.
+	// returns the next node to repair: node itself if it needs more than a new height,
+	// its parent if its height changed, or null.
+	private static Node fixHeight(Node node) {
+		int c = nodeCondition(node);
+		switch (c) {
+			case REBALANCE_REQUIRED:
+			case UNLINK_REQUIRED:
+				return node;
+			case NOTHING_REQUIRED:
+				return null;
+			default:
+				node.height = c;
+				return node.parent;
+		}
+	}
+
+	// goes up from node fixing heights, rotating and unlinking routing nodes, until nothing changes.
+	// each step locks only the nodes it changes.
+	// a rotation may return a node below the ones it changed without fixing the nodes above,
+	// so once a rotation was done this goes on up to the root.
+	private void fixHeightAndRebalance(Node node) {
+		boolean rotated = false;
+		while (node != null && node.parent != null) {
+			int c = nodeCondition(node);
+			if (isUnlinked(node.version)) {
+				return;
+			}
+			Node next = null;
+			if (c == REBALANCE_REQUIRED || c == UNLINK_REQUIRED) {
+				next = node;
+				Node parent = node.parent;
+				synchronized (parent) {
+					if (!isUnlinked(parent.version) && node.parent == parent) {
+						rotated |= c == REBALANCE_REQUIRED;
+						synchronized (node) {
+							next = rebalance(parent, node);
+						}
+					}
+				}
+			}
+			else if (c != NOTHING_REQUIRED) {
+				synchronized (node) {
+					next = fixHeight(node);
+				}
+			}
+			// after a rotation or an unlink node.parent is the node now above it
+			node = next == null && rotated ? node.parent : next;
+		}
+	}
+
+	// parent and node are locked. returns the next node to repair, like fixHeight.
+	private static Node rebalance(Node parent, Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.info == null) {
+			return attemptUnlink(parent, node) ? fixHeight(parent) : node;
+		}
+		int hl = height(left);
+		int hr = height(right);
+		int bf = hl - hr;
+		if (bf > 1) {
+			return rebalanceToRight(parent, node, left, hr);
+		}
+		if (bf < -1) {
+			return rebalanceToLeft(parent, node, right, hl);
+		}
+		int height = Math.max(hl, hr) + 1;
+		if (height != node.height) {
+			node.height = height;
+			return fixHeight(parent);
+		}
+		return null;
+	}
+
+	// node is left heavy. locks its left child (and that child's right child for a double rotation).
+	private static Node rebalanceToRight(Node parent, Node node, Node left, int hr) {
+		synchronized (left) {
+			if (left.height - hr <= 1) {
+				return node; // changed since it was read, look again
+			}
+			Node leftRight = left.right;
+			int hll = height(left.left);
+			int hlr = height(leftRight);
+			if (hll >= hlr) {
+				return rightRotation(parent, node, left, hr, hll, leftRight, hlr);
+			}
+			synchronized (leftRight) {
+				hlr = leftRight.height;
+				if (hll >= hlr) {
+					return rightRotation(parent, node, left, hr, hll, leftRight, hlr);
+				}
+				int hlrl = height(leftRight.left);
+				int bf = hll - hlrl;
+				if (bf >= -1 && bf <= 1 && !((hll == 0 || hlrl == 0) && left.info == null)) {
+					return doubleRightRotation(parent, node, left, hr, hll, leftRight, hlrl);
+				}
+				// the left child would be damaged by a double rotation, rotate only it now, node is rotated later
+				return leftRotation(node, left, leftRight, hll, height(leftRight.right), leftRight.left, hlrl);
+			}
+		}
+	}
+
+	// mirror of rebalanceToRight
+	private static Node rebalanceToLeft(Node parent, Node node, Node right, int hl) {
+		synchronized (right) {
+			if (hl - right.height >= -1) {
+				return node;
+			}
+			Node rightLeft = right.left;
+			int hrr = height(right.right);
+			int hrl = height(rightLeft);
+			if (hrr >= hrl) {
+				return leftRotation(parent, node, right, hl, hrr, rightLeft, hrl);
+			}
+			synchronized (rightLeft) {
+				hrl = rightLeft.height;
+				if (hrr >= hrl) {
+					return leftRotation(parent, node, right, hl, hrr, rightLeft, hrl);
+				}
+				int hrlr = height(rightLeft.right);
+				int bf = hrr - hrlr;
+				if (bf >= -1 && bf <= 1 && !((hrr == 0 || hrlr == 0) && right.info == null)) {
+					return doubleLeftRotation(parent, node, right, hl, hrr, rightLeft, hrlr);
+				}
+				return rightRotation(node, right, rightLeft, hrr, height(rightLeft.left), rightLeft.right, hrlr);
+			}
+		}
+	}
+
+	// rotates node with its left child x, relinking like AVLTree.rightRotation.
+	// node moves down, so it is marked shrinking until it is relinked.
+	// returns the next node to repair.
+	private static Node rightRotation(Node parent, Node node, Node x, int hr, int hxl, Node b, int hb) {
+		long nodeV = node.version;
+		Node parentLeft = parent.left;
+		node.version = nodeV | SHRINKING;
+		node.left = b;
+		if (b != null) {
+			b.parent = node;
+		}
+		x.right = node;
+		node.parent = x;
+		if (parentLeft == node) {
+			parent.left = x;
+		}
+		else {
+			parent.right = x;
+		}
+		x.parent = parent;
+		int nodeHeight = Math.max(hb, hr) + 1;
+		node.height = nodeHeight;
+		x.height = Math.max(hxl, nodeHeight) + 1;
+		node.version = nodeV + SHRINK_COUNT_INCR;
+
+		int bf = hb - hr;
+		if (bf < -1 || bf > 1 || ((b == null || hr == 0) && node.info == null)) {
+			return node;
+		}
+		bf = hxl - nodeHeight;
+		if (bf < -1 || bf > 1 || (hxl == 0 && x.info == null)) {
+			return x;
+		}
+		return fixHeight(parent);
+	}
+
+	// rotates node with its right child x, relinking like AVLTree.leftRotation.
+	private static Node leftRotation(Node parent, Node node, Node x, int hl, int hxr, Node b, int hb) {
+		long nodeV = node.version;
+		Node parentLeft = parent.left;
+		node.version = nodeV | SHRINKING;
+		node.right = b;
+		if (b != null) {
+			b.parent = node;
+		}
+		x.left = node;
+		node.parent = x;
+		if (parentLeft == node) {
+			parent.left = x;
+		}
+		else {
+			parent.right = x;
+		}
+		x.parent = parent;
+		int nodeHeight = Math.max(hl, hb) + 1;
+		node.height = nodeHeight;
+		x.height = Math.max(hxr, nodeHeight) + 1;
+		node.version = nodeV + SHRINK_COUNT_INCR;
+
+		int bf = hb - hl;
+		if (bf < -1 || bf > 1 || ((b == null || hl == 0) && node.info == null)) {
+			return node;
+		}
+		bf = hxr - nodeHeight;
+		if (bf < -1 || bf > 1 || (hxr == 0 && x.info == null)) {
+			return x;
+		}
+		return fixHeight(parent);
+	}
+
+	// left rotation of the left child x followed by a right rotation of node, in one step.
+	// y (the right child of x) takes node's place, node and x both move down.
+	private static Node doubleRightRotation(Node parent, Node node, Node x, int hr, int hxl, Node y, int hyl) {
+		long nodeV = node.version;
+		long xV = x.version;
+		Node parentLeft = parent.left;
+		Node yl = y.left;
+		Node yr = y.right;
+		int hyr = height(yr);
+		node.version = nodeV | SHRINKING;
+		x.version = xV | SHRINKING;
+		node.left = yr;
+		if (yr != null) {
+			yr.parent = node;
+		}
+		x.right = yl;
+		if (yl != null) {
+			yl.parent = x;
+		}
+		y.left = x;
+		x.parent = y;
+		y.right = node;
+		node.parent = y;
+		if (parentLeft == node) {
+			parent.left = y;
+		}
+		else {
+			parent.right = y;
+		}
+		y.parent = parent;
+		int nodeHeight = Math.max(hyr, hr) + 1;
+		node.height = nodeHeight;
+		int xHeight = Math.max(hxl, hyl) + 1;
+		x.height = xHeight;
+		y.height = Math.max(xHeight, nodeHeight) + 1;
+		node.version = nodeV + SHRINK_COUNT_INCR;
+		x.version = xV + SHRINK_COUNT_INCR;
+
+		int bf = hyr - hr;
+		if (bf < -1 || bf > 1 || ((yr == null || hr == 0) && node.info == null)) {
+			return node;
+		}
+		bf = xHeight - nodeHeight;
+		if (bf < -1 || bf > 1) {
+			return y;
+		}
+		return fixHeight(parent);
+	}
+
+	// mirror of doubleRightRotation
+	private static Node doubleLeftRotation(Node parent, Node node, Node x, int hl, int hxr, Node y, int hyr) {
+		long nodeV = node.version;
+		long xV = x.version;
+		Node parentLeft = parent.left;
+		Node yl = y.left;
+		Node yr = y.right;
+		int hyl = height(yl);
+		node.version = nodeV | SHRINKING;
+		x.version = xV | SHRINKING;
+		node.right = yl;
+		if (yl != null) {
+			yl.parent = node;
+		}
+		x.left = yr;
+		if (yr != null) {
+			yr.parent = x;
+		}
+		y.right = x;
+		x.parent = y;
+		y.left = node;
+		node.parent = y;
+		if (parentLeft == node) {
+			parent.left = y;
+		}
+		else {
+			parent.right = y;
+		}
+		y.parent = parent;
+		int nodeHeight = Math.max(hl, hyl) + 1;
+		node.height = nodeHeight;
+		int xHeight = Math.max(hyr, hxr) + 1;
+		x.height = xHeight;
+		y.height = Math.max(nodeHeight, xHeight) + 1;
+		node.version = nodeV + SHRINK_COUNT_INCR;
+		x.version = xV + SHRINK_COUNT_INCR;
+
+		int bf = hyl - hl;
+		if (bf < -1 || bf > 1 || ((yl == null || hl == 0) && node.info == null)) {
+			return node;
+		}
+		bf = xHeight - nodeHeight;
+		if (bf < -1 || bf > 1) {
+			return y;
+		}
+		return fixHeight(parent);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * The walk is not atomic, it is exact whenever no update is running.
+	 */
+	public int[] keysToArray() {
+		List<Node> nodes = nodesInOrder();
+		int[] ret = new int[nodes.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = nodes.get(i).key;
+		}
+		return ret;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * The walk is not atomic, it is exact whenever no update is running.
+	 */
+	public String[] infoToArray() {
+		List<Node> nodes = nodesInOrder();
+		String[] ret = new String[nodes.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = nodes.get(i).info;
+		}
+		return ret;
+	}
+
+	/**
+	 * public boolean isAVL()
+	 *
+	 * returns true if and only if the stored height of every node is 1 + the larger height of its children,
+	 * every balance factor is -1, 0 or 1, every child points back to its parent and the keys are in order.
+	 * The walk is not atomic, it is only meaningful when no update is running.
+	 */
+	public boolean isAVL() {
+		Node root = this.rootHolder.right;
+		return root == null || (root.parent == this.rootHolder && checkedHeight(root, Long.MIN_VALUE, Long.MAX_VALUE) >= 0);
+	}
+
+	// returns the height of the subtree, or -1 if it breaks an invariant of isAVL. its keys must be in (lo, hi).
+	private static int checkedHeight(Node node, long lo, long hi) {
+		if (node == null) {
+			return 0;
+		}
+		if (node.key <= lo || node.key >= hi
+				|| (node.left != null && node.left.parent != node) || (node.right != null && node.right.parent != node)) {
+			return -1;
+		}
+		int hl = checkedHeight(node.left, lo, node.key);
+		int hr = checkedHeight(node.right, node.key, hi);
+		if (hl < 0 || hr < 0 || hl - hr < -1 || hl - hr > 1 || node.height != Math.max(hl, hr) + 1) {
+			return -1;
+		}
+		return node.height;
+	}
+
+	private List<Node> nodesInOrder() {
+		List<Node> ret = new ArrayList<>(Math.max(size(), 0));
+		addInOrder(this.rootHolder.right, ret);
+		return ret;
+	}
+
+	// adds the nodes of the subtree that are not routing nodes
+	private static void addInOrder(Node node, List<Node> nodes) {
+		if (node == null) {
+			return;
+		}
+		addInOrder(node.left, nodes);
+		if (node.info != null) {
+			nodes.add(node);
+		}
+		addInOrder(node.right, nodes);
+	}
+}
@@ -0,0 +1,320 @@
+/**
+ *
+ * PersistentAVLTree
+ *
+ * An immutable AVL tree with distinct integer keys and info.
+ * insert, delete, split and join leave the tree they are called on unchanged and return
+ * a new version. Only the O(log n) nodes on the changed paths are copied, the rest of
+ * the nodes are shared between versions. Nodes have no parent pointers, which is what
+ * makes the sharing possible. Every version stays readable for as long as it is referenced.
+ *
+ */
+public final class PersistentAVLTree {
+
+	// an immutable node, height and subtree size are computed when it is created
+	private static final class Node {
+		private final int key;
+		private final String info;
+		private final Node left;
+		private final Node right;
+		private final int height;
+		private final int size;
+
+		private Node(int key, String info, Node left, Node right) {
+			this.key = key;
+			this.info = info;
+			this.left = left;
+			this.right = right;
+			this.height = Math.max(height(left), height(right)) + 1;
+			this.size = size(left) + size(right) + 1;
+		}
+	}
+
+	// the empty tree
+	public static final PersistentAVLTree EMPTY = new PersistentAVLTree(null);
+
+	//Fields
+	private final Node root;
+
+	private PersistentAVLTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * public PersistentAVLTree snapshot()
+	 *
+	 * Returns a version that will not change, in O(1).
+	 * Versions are immutable, so this is the version itself.
+	 */
+	public PersistentAVLTree snapshot() {
+		return this;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == null;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return size(this.root);
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Node node = this.root;
+		while (node != null) {
+			if (node.key == k) {
+				return node.info;
+			}
+			node = node.key < k ? node.right : node.left;
+		}
+		return null;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		Node node = this.root;
+		if (node == null) {
+			return null;
+		}
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node.info;
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		Node node = this.root;
+		if (node == null) {
+			return null;
+		}
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node.info;
+	}
+
+	/**
+	 * public PersistentAVLTree insert(int k, String i)
+	 *
+	 * Returns a version with the item (k, i) added, copying the path to the new leaf.
+	 * if an item with key k already exists, returns this version.
+	 */
+	public PersistentAVLTree insert(int k, String i) {
+		Node newRoot = insert(this.root, k, i);
+		return newRoot == this.root ? this : new PersistentAVLTree(newRoot);
+	}
+
+	/**
+	 * public PersistentAVLTree delete(int k)
+	 *
+	 * Returns a version without the item with key k, copying the path to it.
+	 * if there is no such item, returns this version.
+	 */
+	public PersistentAVLTree delete(int k) {
+		Node newRoot = delete(this.root, k);
+		return newRoot == this.root ? this : new PersistentAVLTree(newRoot);
+	}
+
+	/**
+	 * public PersistentAVLTree[] split(int x)
+	 *
+	 * Returns an array [t1, t2] with two versions. keys(t1) < x < keys(t2).
+	 * x does not have to be in the tree. copies O(log n) nodes.
+	 */
+	public PersistentAVLTree[] split(int x) {
+		Node[] parts = split(this.root, x);
+		return new PersistentAVLTree[] {new PersistentAVLTree(parts[0]), new PersistentAVLTree(parts[1])};
+	}
+
+	/**
+	 * public PersistentAVLTree join(int k, String i, PersistentAVLTree t)
+	 *
+	 * Returns a version with the items of this tree, the item (k, i) and the items of t.
+	 * copies O(|tree.rank - t.rank| + 1) nodes.
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys().
+	 */
+	public PersistentAVLTree join(int k, String i, PersistentAVLTree t) {
+		boolean thisIsSmaller = this.root == null ? t.root != null && t.root.key > k : this.root.key < k;
+		if (thisIsSmaller) {
+			return new PersistentAVLTree(join(this.root, k, i, t.root));
+		}
+		return new PersistentAVLTree(join(t.root, k, i, this.root));
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] ret = new int[size()];
+		keysToArray(this.root, ret, 0);
+		return ret;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] ret = new String[size()];
+		infoToArray(this.root, ret, 0);
+		return ret;
+	}
+
+	private static int height(Node node) {
+		return node == null ? -1 : node.height;
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	// fills arr from index c with the keys of the subtree in order, returns the next free index
+	private static int keysToArray(Node node, int[] arr, int c) {
+		if (node == null) {
+			return c;
+		}
+		c = keysToArray(node.left, arr, c);
+		arr[c++] = node.key;
+		return keysToArray(node.right, arr, c);
+	}
+
+	// fills arr from index c with the infos of the subtree in key order, returns the next free index
+	private static int infoToArray(Node node, String[] arr, int c) {
+		if (node == null) {
+			return c;
+		}
+		c = infoToArray(node.left, arr, c);
+		arr[c++] = node.info;
+		return infoToArray(node.right, arr, c);
+	}
+
+	// returns the subtree with the given root item and children, rotated if their heights differ by 2.
+	// the rotations create new nodes instead of changing the old ones.
+	private static Node balance(int key, String info, Node left, Node right) {
+		int bf = height(left) - height(right);
+		if (bf > 1) {
+			if (height(left.left) < height(left.right)) { // left-right case
+				Node lr = left.right;
+				return new Node(lr.key, lr.info,
+						new Node(left.key, left.info, left.left, lr.left),
+						new Node(key, info, lr.right, right));
+			}
+			return new Node(left.key, left.info, left.left, new Node(key, info, left.right, right));
+		}
+		if (bf < -1) {
+			if (height(right.right) < height(right.left)) { // right-left case
+				Node rl = right.left;
+				return new Node(rl.key, rl.info,
+						new Node(key, info, left, rl.left),
+						new Node(right.key, right.info, rl.right, right.right));
+			}
+			return new Node(right.key, right.info, new Node(key, info, left, right.left), right.right);
+		}
+		return new Node(key, info, left, right);
+	}
+
+	// returns node itself if k is already in the subtree
+	private static Node insert(Node node, int k, String i) {
+		if (node == null) {
+			return new Node(k, i, null, null);
+		}
+		if (k == node.key) {
+			return node;
+		}
+		if (k < node.key) {
+			Node left = insert(node.left, k, i);
+			return left == node.left ? node : balance(node.key, node.info, left, node.right);
+		}
+		Node right = insert(node.right, k, i);
+		return right == node.right ? node : balance(node.key, node.info, node.left, right);
+	}
+
+	// returns node itself if k is not in the subtree
+	private static Node delete(Node node, int k) {
+		if (node == null) {
+			return null;
+		}
+		if (k < node.key) {
+			Node left = delete(node.left, k);
+			return left == node.left ? node : balance(node.key, node.info, left, node.right);
+		}
+		if (k > node.key) {
+			Node right = delete(node.right, k);
+			return right == node.right ? node : balance(node.key, node.info, node.left, right);
+		}
+		if (node.left == null) {
+			return node.right;
+		}
+		if (node.right == null) {
+			return node.left;
+		}
+		// 2 children - the successor takes node's place
+		Node successor = node.right;
+		while (successor.left != null) {
+			successor = successor.left;
+		}
+		return balance(successor.key, successor.info, node.left, delete(node.right, successor.key));
+	}
+
+	// joins l and r (keys(l) < k < keys(r)) with a new node (k, i) between them.
+	// goes down the spine of the higher tree, copying it, until the heights are within 1.
+	private static Node join(Node l, int k, String i, Node r) {
+		if (height(l) > height(r) + 1) {
+			return balance(l.key, l.info, l.left, join(l.right, k, i, r));
+		}
+		if (height(r) > height(l) + 1) {
+			return balance(r.key, r.info, join(l, k, i, r.left), r.right);
+		}
+		return new Node(k, i, l, r);
+	}
+
+	// returns {subtree of keys < x, subtree of keys > x}
+	private static Node[] split(Node node, int x) {
+		if (node == null) {
+			return new Node[] {null, null};
+		}
+		if (x == node.key) {
+			return new Node[] {node.left, node.right};
+		}
+		if (x < node.key) {
+			Node[] parts = split(node.left, x);
+			parts[1] = join(parts[1], node.key, node.info, node.right);
+			return parts;
+		}
+		Node[] parts = split(node.right, x);
+		parts[0] = join(node.left, node.key, node.info, parts[0]);
+		return parts;
+	}
+}
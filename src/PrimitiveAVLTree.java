@@ -0,0 +1,76 @@
+/**
+ *
+ * PrimitiveAVLTree
+ *
+ * The descents of IntAVLTree and LongAVLTree. Keys are kept and compared as long primitives,
+ * so an int key is only widened, never boxed, and the two trees share one copy of the code.
+ * The subclasses only give it their public, typed methods.
+ *
+ */
+abstract class PrimitiveAVLTree<V> extends AbstractAVLTree<V, PrimitiveAVLTree.Node<V>> {
+
+	static final class Node<V> extends AbstractAVLTree.TreeNode<V, Node<V>> {
+		final long key;
+
+		Node(long key, V value) {
+			super(value);
+			this.key = key;
+		}
+	}
+
+	// returns the node with key k, or null
+	final Node<V> searchNode(long k) {
+		Node<V> node = this.root;
+		while (node != null && node.key != k) {
+			node = node.key < k ? node.right : node.left;
+		}
+		return node;
+	}
+
+	// returns the value of key k, or null
+	final V get(long k) {
+		Node<V> node = searchNode(k);
+		return node == null ? null : node.value;
+	}
+
+	// inserts (k, v), returns the number of rotations or -1 if k is already in the tree
+	final int insertKey(long k, V v) {
+		Node<V> parent = null;
+		Node<V> node = this.root;
+		while (node != null) {
+			if (node.key == k) {
+				return -1;
+			}
+			parent = node;
+			node = node.key < k ? node.right : node.left;
+		}
+		addToSizes(parent, 1);
+		return insertLeaf(parent, new Node<>(k, v), parent != null && parent.key < k);
+	}
+
+	// deletes key k, returns the number of rotations or -1 if k is not in the tree
+	final int deleteKey(long k) {
+		Node<V> node = searchNode(k);
+		if (node == null) {
+			return -1;
+		}
+		return deleteNode(node);
+	}
+
+	// moves the keys < x to smaller and the keys > x to bigger (both empty), this tree becomes empty
+	final void splitKey(long x, PrimitiveAVLTree<V> smaller, PrimitiveAVLTree<V> bigger) {
+		Node<V> last = null;
+		Node<V> node = this.root;
+		while (node != null && node.key != x) {
+			last = node;
+			node = node.key < x ? node.right : node.left;
+		}
+		splitInto(node, last, last != null && x < last.key, smaller, bigger, null);
+	}
+
+	// joins t and a new item (k, v) with this tree, returns the complexity of the join
+	final int joinKey(long k, V v, PrimitiveAVLTree<V> t) {
+		boolean tBigger = t.root != null ? t.root.key > k : this.root == null || this.root.key < k;
+		return joinTree(new Node<>(k, v), t, tBigger, null);
+	}
+}
@@ -0,0 +1,471 @@
+import java.util.Arrays;
+
+/**
+ *
+ * RecordAVLTree
+ *
+ * The AVL tree of IntAvlArena and MappedAVLTree: distinct integer keys and String info, with the nodes kept
+ * in the records of a RecordStore. The subclasses only pick the store and give it their typed split and join.
+ * Records have no parent, so insert, delete, split and join keep the path they went down in an array.
+ *
+ */
+abstract class RecordAVLTree<S extends RecordStore> {
+
+	// the virtual node
+	static final int NIL = 0;
+	// an AVL tree of 2^31 nodes is less than 46 high
+	private static final int MAX_DEPTH = 64;
+
+	//Fields
+	final S store;
+	int root;
+	int size; // -1 when unknown (after split), counted on demand
+	private final int[] path = new int[MAX_DEPTH]; // the nodes from the root down, of the running operation
+	private int rotations; // rotations done so far, read to count the rotations of one operation
+
+	//Constructor for an empty tree in store
+	RecordAVLTree(S store) {
+		this.store = store;
+		this.root = NIL;
+		this.size = 0;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == NIL;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		S s = this.store;
+		int node = this.root;
+		while (node != NIL) {
+			int key = s.key(node);
+			if (key == k) {
+				return s.info(node);
+			}
+			node = key < k ? s.right(node) : s.left(node);
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations (a double-rotation is counted as 2),
+	 * or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		S s = this.store;
+		int depth = 0;
+		int node = this.root;
+		while (node != NIL) {
+			int key = s.key(node);
+			if (key == k) {
+				return -1;
+			}
+			this.path[depth++] = node;
+			node = key < k ? s.right(node) : s.left(node);
+		}
+		int before = this.rotations;
+		node = s.allocate(k, i);
+		if (depth == 0) {
+			this.root = node;
+		}
+		else {
+			int parent = this.path[depth - 1];
+			if (s.key(parent) < k) {
+				s.setRight(parent, node);
+			}
+			else {
+				s.setLeft(parent, node);
+			}
+			this.root = retrace(depth);
+		}
+		if (this.size >= 0) {
+			this.size++;
+		}
+		return this.rotations - before;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations (a double-rotation is counted as 2),
+	 * or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		S s = this.store;
+		int depth = 0;
+		int node = this.root;
+		while (node != NIL && s.key(node) != k) {
+			this.path[depth++] = node;
+			node = s.key(node) < k ? s.right(node) : s.left(node);
+		}
+		if (node == NIL) {
+			return -1;
+		}
+		int before = this.rotations;
+		int left = s.left(node);
+		int right = s.right(node);
+		int replacement; // takes node's place
+		int retraceDepth;
+		if (left == NIL || right == NIL) { // at most one child - splice node out
+			replacement = left != NIL ? left : right;
+			retraceDepth = depth;
+		}
+		else { // 2 children - the successor takes node's place, path[depth] is kept for it
+			int last = depth + 1;
+			this.path[last] = right;
+			while (s.left(this.path[last]) != NIL) {
+				this.path[last + 1] = s.left(this.path[last]);
+				last++;
+			}
+			replacement = this.path[last];
+			if (last > depth + 1) {
+				s.setLeft(this.path[last - 1], s.right(replacement));
+				s.setRight(replacement, this.path[depth + 1]);
+			}
+			s.setLeft(replacement, left);
+			s.setHeight(replacement, s.height(node));
+			this.path[depth] = replacement;
+			retraceDepth = last;
+		}
+		if (depth == 0) {
+			this.root = replacement;
+		}
+		else {
+			replaceChild(this.path[depth - 1], node, replacement);
+		}
+		s.free(node);
+		if (this.size >= 0) {
+			this.size--;
+		}
+		if (retraceDepth > 0) {
+			this.root = retrace(retraceDepth);
+		}
+		return this.rotations - before;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		int node = this.root;
+		if (node == NIL) {
+			return null;
+		}
+		while (this.store.left(node) != NIL) {
+			node = this.store.left(node);
+		}
+		return this.store.info(node);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		int node = this.root;
+		if (node == NIL) {
+			return null;
+		}
+		while (this.store.right(node) != NIL) {
+			node = this.store.right(node);
+		}
+		return this.store.info(node);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] ret = nodesInOrder();
+		for (int c = 0; c < ret.length; c++) {
+			ret[c] = this.store.key(ret[c]);
+		}
+		return ret;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		int[] nodes = nodesInOrder();
+		String[] ret = new String[nodes.length];
+		for (int c = 0; c < ret.length; c++) {
+			ret[c] = this.store.info(nodes[c]);
+		}
+		return ret;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * After a split the size is counted once, in O(n), on the first call.
+	 */
+	public int size() {
+		if (this.size < 0) {
+			this.size = count(this.root);
+		}
+		return this.size;
+	}
+
+	private int count(int node) {
+		return node == NIL ? 0 : 1 + count(this.store.left(node)) + count(this.store.right(node));
+	}
+
+	private int[] nodesInOrder() {
+		int[] ret = new int[size()];
+		addInOrder(this.root, ret, 0);
+		return ret;
+	}
+
+	// puts the nodes of the subtree into nodes from index c on, returns the index after the last one
+	private int addInOrder(int node, int[] nodes, int c) {
+		if (node == NIL) {
+			return c;
+		}
+		c = addInOrder(this.store.left(node), nodes, c);
+		nodes[c++] = node;
+		return addInOrder(this.store.right(node), nodes, c);
+	}
+
+	// moves the keys < x to smaller and the keys > x to bigger (both empty, in the same store).
+	// the item with key x, if there is one, is removed. this tree becomes empty.
+	final void splitInto(int x, RecordAVLTree<S> smaller, RecordAVLTree<S> bigger) {
+		S s = this.store;
+		int depth = 0;
+		int node = this.root;
+		while (node != NIL && s.key(node) != x) {
+			this.path[depth++] = node;
+			node = s.key(node) < x ? s.right(node) : s.left(node);
+		}
+		int[] ancestors = Arrays.copyOf(this.path, depth); // joinNodes uses path
+		int l = NIL;
+		int r = NIL;
+		if (node != NIL) {
+			l = s.left(node);
+			r = s.right(node);
+			s.free(node);
+		}
+		// every ancestor, with the subtree on its far side, goes to the tree on its side of x
+		for (int j = depth - 1; j >= 0; j--) {
+			int p = ancestors[j];
+			if (x < s.key(p)) {
+				r = joinNodes(r, p, s.right(p));
+			}
+			else {
+				l = joinNodes(s.left(p), p, l);
+			}
+		}
+		smaller.root = l;
+		smaller.size = l == NIL ? 0 : -1;
+		bigger.root = r;
+		bigger.size = r == NIL ? 0 : -1;
+		this.root = NIL;
+		this.size = 0;
+	}
+
+	// joins t and a new item (k, i) with this tree, t becomes empty. returns the complexity of the join.
+	// if t is in another store its nodes are copied into this tree's store and freed in t's.
+	final int joinTree(int k, String i, RecordAVLTree<S> t) {
+		S s = this.store;
+		int other = t.root;
+		if (t.store != s) {
+			other = copySubtree(t.store, t.root);
+			freeSubtree(t.store, t.root);
+		}
+		int complex = Math.abs(s.height(this.root) - s.height(other)) + 1;
+		int mid = s.allocate(k, i);
+		boolean thisIsSmaller = this.root == NIL ? other != NIL && s.key(other) > k : s.key(this.root) < k;
+		int newSize = this.size < 0 || t.size < 0 ? -1 : this.size + t.size + 1;
+		if (thisIsSmaller) {
+			this.root = joinNodes(this.root, mid, other);
+		}
+		else {
+			this.root = joinNodes(other, mid, this.root);
+		}
+		this.size = newSize;
+		t.root = NIL;
+		t.size = 0;
+		return complex;
+	}
+
+	// joins the subtrees rooted at l and r (keys(l) < key(mid) < keys(r)) using mid, returns the new root
+	private int joinNodes(int l, int mid, int r) {
+		S s = this.store;
+		int hl = s.height(l);
+		int hr = s.height(r);
+		if (hl > hr + 1) { // mid goes down the right spine of l
+			int depth = 0;
+			int c = l;
+			while (s.height(c) > hr + 1) {
+				this.path[depth++] = c;
+				c = s.right(c);
+			}
+			link(mid, c, r);
+			s.setRight(this.path[depth - 1], mid);
+			return retrace(depth);
+		}
+		if (hr > hl + 1) { // mid goes down the left spine of r
+			int depth = 0;
+			int c = r;
+			while (s.height(c) > hl + 1) {
+				this.path[depth++] = c;
+				c = s.left(c);
+			}
+			link(mid, l, c);
+			s.setLeft(this.path[depth - 1], mid);
+			return retrace(depth);
+		}
+		link(mid, l, r);
+		return mid;
+	}
+
+	// goes up from path[depth - 1] to path[0] fixing heights and rotating until a subtree keeps its height.
+	// returns the root of the subtree that was rooted at path[0].
+	private int retrace(int depth) {
+		S s = this.store;
+		for (int j = depth - 1; j >= 0; j--) {
+			int node = this.path[j];
+			int oldHeight = s.height(node);
+			int top = rebalance(node);
+			if (top != node) {
+				if (j == 0) {
+					this.path[0] = top;
+				}
+				else {
+					replaceChild(this.path[j - 1], node, top);
+				}
+			}
+			if (s.height(top) == oldHeight) {
+				break;
+			}
+		}
+		return this.path[0];
+	}
+
+	// sets the height of node, rotating first if its balance factor is 2 or -2.
+	// returns the root of the subtree that was rooted at node.
+	private int rebalance(int node) {
+		S s = this.store;
+		int bf = s.height(s.left(node)) - s.height(s.right(node));
+		if (bf == 2) {
+			int l = s.left(node);
+			if (s.height(s.left(l)) < s.height(s.right(l))) {
+				s.setLeft(node, rotateLeft(l));
+				this.rotations++;
+			}
+			this.rotations++;
+			return rotateRight(node);
+		}
+		if (bf == -2) {
+			int r = s.right(node);
+			if (s.height(s.right(r)) < s.height(s.left(r))) {
+				s.setRight(node, rotateRight(r));
+				this.rotations++;
+			}
+			this.rotations++;
+			return rotateLeft(node);
+		}
+		updateHeight(node);
+		return node;
+	}
+
+	// rotates y with its left child x, returns x. the caller links x in y's place.
+	private int rotateRight(int y) {
+		S s = this.store;
+		int x = s.left(y);
+		s.setLeft(y, s.right(x));
+		updateHeight(y);
+		s.setRight(x, y);
+		updateHeight(x);
+		return x;
+	}
+
+	// rotates y with its right child x, returns x. the caller links x in y's place.
+	private int rotateLeft(int y) {
+		S s = this.store;
+		int x = s.right(y);
+		s.setRight(y, s.left(x));
+		updateHeight(y);
+		s.setLeft(x, y);
+		updateHeight(x);
+		return x;
+	}
+
+	// makes l and r the children of node and sets its height
+	private void link(int node, int l, int r) {
+		this.store.setLeft(node, l);
+		this.store.setRight(node, r);
+		updateHeight(node);
+	}
+
+	private void updateHeight(int node) {
+		S s = this.store;
+		s.setHeight(node, Math.max(s.height(s.left(node)), s.height(s.right(node))) + 1);
+	}
+
+	// puts newChild in the place of oldChild under parent
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if (this.store.left(parent) == oldChild) {
+			this.store.setLeft(parent, newChild);
+		}
+		else {
+			this.store.setRight(parent, newChild);
+		}
+	}
+
+	// copies the subtree rooted at node of another store into this one, returns the copy's root.
+	// the children are copied before they are linked: copying them may grow this store.
+	private int copySubtree(RecordStore from, int node) {
+		if (node == NIL) {
+			return NIL;
+		}
+		S s = this.store;
+		int copy = s.allocate(from.key(node), from.info(node));
+		s.setHeight(copy, from.height(node));
+		int left = copySubtree(from, from.left(node));
+		int right = copySubtree(from, from.right(node));
+		s.setLeft(copy, left);
+		s.setRight(copy, right);
+		return copy;
+	}
+
+	// gives the records of the subtree rooted at node back to its store
+	private static void freeSubtree(RecordStore from, int node) {
+		if (node == NIL) {
+			return;
+		}
+		int left = from.left(node);
+		int right = from.right(node);
+		freeSubtree(from, left);
+		freeSubtree(from, right);
+		from.free(node);
+	}
+}
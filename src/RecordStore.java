@@ -0,0 +1,41 @@
+/**
+ *
+ * RecordStore
+ *
+ * Where a RecordAVLTree keeps its nodes: fixed-size records, each named by an int.
+ * Record 0 is the virtual node, its height is -1 and it is never changed.
+ * A record holds a key, the left and right children, a height and an info. There is no parent:
+ * the tree remembers the path it went down, so a record only changes when its own subtree does.
+ *
+ * The tree changes records in place. A store that has to keep an older state of the tree, like
+ * MappedAVLTree keeps the one of the last force(), does that itself below the setters.
+ *
+ */
+interface RecordStore {
+
+	int key(int node);
+
+	int left(int node);
+
+	int right(int node);
+
+	int height(int node);
+
+	String info(int node);
+
+	void setLeft(int node, int left);
+
+	void setRight(int node, int right);
+
+	void setHeight(int node, int height);
+
+	/**
+	 * returns a new leaf with key k and info i: no children and height 0.
+	 */
+	int allocate(int k, String i);
+
+	/**
+	 * gives node back to the store. the store may reuse it right away or later.
+	 */
+	void free(int node);
+}
@@ -0,0 +1,533 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *
+ * ShardedAVLTree
+ *
+ * A thread safe tree that partitions the keys into ranges. Each range is held by its own
+ * AVLTree (a shard) with its own read/write lock, so updates to different ranges run in parallel.
+ * The shard of a key is found by binary search in a sorted array of the shards' lowest keys.
+ * A shard that grows past splitThreshold items is split around its median with AVLTree.split,
+ * and a shard that shrinks below a quarter of that is merged with a neighbour with AVLTree.join,
+ * if the two together have at most half of splitThreshold items. Both take O(log n).
+ * Resharding publishes a new (immutable) layout and retires the shards it replaced.
+ * An operation that locks a retired shard looks its key up again in the new layout.
+ *
+ */
+public class ShardedAVLTree {
+
+	public static final int DEFAULT_SPLIT_THRESHOLD = 1 << 16;
+
+	// one key range and its tree
+	private static final class Shard {
+		private final AVLTree tree;
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private boolean retired; // set under the write lock once the shard is no longer in the layout
+		private final LongAdder reads = new LongAdder();
+		private final LongAdder writes = new LongAdder();
+		private final LongAdder contended = new LongAdder();
+
+		private Shard(AVLTree tree) {
+			this.tree = tree;
+		}
+	}
+
+	// the shards in key order. shards[i] holds the keys k with lowKeys[i] <= k < lowKeys[i + 1].
+	private static final class Layout {
+		private final int[] lowKeys;
+		private final Shard[] shards;
+
+		private Layout(int[] lowKeys, Shard[] shards) {
+			this.lowKeys = lowKeys;
+			this.shards = shards;
+		}
+
+		private int indexOf(int k) {
+			int i = Arrays.binarySearch(this.lowKeys, k);
+			return i >= 0 ? i : -i - 2;
+		}
+
+		// returns a layout with the count shards from index replaced
+		private Layout replace(int index, int count, int[] newLowKeys, Shard[] newShards) {
+			int length = this.shards.length - count + newShards.length;
+			int[] lowKeys = new int[length];
+			Shard[] shards = new Shard[length];
+			System.arraycopy(this.lowKeys, 0, lowKeys, 0, index);
+			System.arraycopy(this.shards, 0, shards, 0, index);
+			System.arraycopy(newLowKeys, 0, lowKeys, index, newShards.length);
+			System.arraycopy(newShards, 0, shards, index, newShards.length);
+			System.arraycopy(this.lowKeys, index + count, lowKeys, index + newShards.length, this.shards.length - index - count);
+			System.arraycopy(this.shards, index + count, shards, index + newShards.length, this.shards.length - index - count);
+			return new Layout(lowKeys, shards);
+		}
+	}
+
+	/**
+	 * public static class ShardStats
+	 *
+	 * The state of one shard when shardStats() was called: its key range, size,
+	 * how many reads and writes went to it, and how many of them had to wait for its lock.
+	 */
+	public static class ShardStats {
+		private final int lowKey;
+		private final int size;
+		private final long reads;
+		private final long writes;
+		private final long contended;
+
+		private ShardStats(int lowKey, int size, long reads, long writes, long contended) {
+			this.lowKey = lowKey;
+			this.size = size;
+			this.reads = reads;
+			this.writes = writes;
+			this.contended = contended;
+		}
+
+		public int getLowKey() {
+			return this.lowKey;
+		}
+
+		public int getSize() {
+			return this.size;
+		}
+
+		public long getReads() {
+			return this.reads;
+		}
+
+		public long getWrites() {
+			return this.writes;
+		}
+
+		public long getContended() {
+			return this.contended;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + this.lowKey + "..) size=" + this.size + " reads=" + this.reads
+					+ " writes=" + this.writes + " contended=" + this.contended;
+		}
+	}
+
+	//Fields
+	private volatile Layout layout;
+	private final Object reshardLock = new Object(); // held while the layout is replaced
+	private final int splitThreshold;
+	private final int mergeThreshold;
+	private final AtomicInteger size = new AtomicInteger();
+	private volatile int splits;
+	private volatile int merges;
+
+	//Constructor for new empty tree with one shard
+	public ShardedAVLTree() {
+		this(DEFAULT_SPLIT_THRESHOLD);
+	}
+
+	//Constructor for new empty tree whose shards are split when they have more than splitThreshold items
+	public ShardedAVLTree(int splitThreshold) {
+		if (splitThreshold < 4) {
+			throw new IllegalArgumentException("splitThreshold must be at least 4: " + splitThreshold);
+		}
+		this.splitThreshold = splitThreshold;
+		this.mergeThreshold = splitThreshold / 4;
+		this.layout = new Layout(new int[] {Integer.MIN_VALUE}, new Shard[] {new Shard(new AVLTree())});
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in all shards.
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Shard shard = lockShard(k, false);
+		try {
+			shard.reads.increment();
+			return shard.tree.peek(k); // search would move the shard's finger, which other readers share
+		}
+		finally {
+			shard.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item to the shard of k under its write lock, see AVLTree.insert.
+	 * splits the shard afterwards if it has grown past splitThreshold.
+	 */
+	public int insert(int k, String i) {
+		Shard shard = lockShard(k, true);
+		int ret;
+		int shardSize;
+		try {
+			shard.writes.increment();
+			ret = shard.tree.insert(k, i);
+			shardSize = shard.tree.size();
+		}
+		finally {
+			shard.lock.writeLock().unlock();
+		}
+		if (ret != -1) {
+			this.size.incrementAndGet();
+			if (shardSize > this.splitThreshold) {
+				splitShard(k);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item from the shard of k under its write lock, see AVLTree.delete.
+	 * merges the shard with a neighbour afterwards if both are small.
+	 */
+	public int delete(int k) {
+		Shard shard = lockShard(k, true);
+		int ret;
+		int shardSize;
+		try {
+			shard.writes.increment();
+			ret = shard.tree.delete(k);
+			shardSize = shard.tree.size();
+		}
+		finally {
+			shard.lock.writeLock().unlock();
+		}
+		if (ret != -1) {
+			this.size.decrementAndGet();
+			if (shardSize < this.mergeThreshold) {
+				mergeShard(k);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return extreme(true);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return extreme(false);
+	}
+
+	// the min of the first non empty shard, or the max of the last one
+	private String extreme(boolean first) {
+		retry:
+		while (true) {
+			Shard[] shards = this.layout.shards;
+			for (int j = 0; j < shards.length; j++) {
+				Shard shard = shards[first ? j : shards.length - 1 - j];
+				Lock lock = shard.lock.readLock();
+				lock.lock();
+				try {
+					if (shard.retired) {
+						continue retry;
+					}
+					if (!shard.tree.empty()) {
+						return first ? shard.tree.min() : shard.tree.max();
+					}
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * All shards are read locked together, so the array is a consistent snapshot.
+	 */
+	public int[] keysToArray() {
+		Shard[] shards = lockAll();
+		try {
+			int length = 0;
+			for (Shard shard : shards) {
+				length += shard.tree.size();
+			}
+			int[] ret = new int[length];
+			int c = 0;
+			for (Shard shard : shards) {
+				int[] keys = shard.tree.keysToArray();
+				System.arraycopy(keys, 0, ret, c, keys.length);
+				c += keys.length;
+			}
+			return ret;
+		}
+		finally {
+			unlockAll(shards);
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * All shards are read locked together, so the array is a consistent snapshot.
+	 */
+	public String[] infoToArray() {
+		Shard[] shards = lockAll();
+		try {
+			int length = 0;
+			for (Shard shard : shards) {
+				length += shard.tree.size();
+			}
+			String[] ret = new String[length];
+			int c = 0;
+			for (Shard shard : shards) {
+				String[] infos = shard.tree.infoToArray();
+				System.arraycopy(infos, 0, ret, c, infos.length);
+				c += infos.length;
+			}
+			return ret;
+		}
+		finally {
+			unlockAll(shards);
+		}
+	}
+
+	/**
+	 * public List<ShardStats> shardStats()
+	 *
+	 * Returns the state of every shard, in key order.
+	 * Each shard is read on its own, so the list is not one snapshot while updates are running.
+	 */
+	public List<ShardStats> shardStats() {
+		Shard[] shards = this.layout.shards;
+		int[] lowKeys = this.layout.lowKeys;
+		List<ShardStats> ret = new ArrayList<>(shards.length);
+		for (int j = 0; j < shards.length; j++) {
+			Shard shard = shards[j];
+			int shardSize;
+			shard.lock.readLock().lock();
+			try {
+				shardSize = shard.tree.size();
+			}
+			finally {
+				shard.lock.readLock().unlock();
+			}
+			ret.add(new ShardStats(lowKeys[j], shardSize, shard.reads.sum(), shard.writes.sum(), shard.contended.sum()));
+		}
+		return ret;
+	}
+
+	/**
+	 * public double skew()
+	 *
+	 * Returns the size of the largest shard divided by the average shard size,
+	 * 1 when the items are spread evenly, or 0 if the tree is empty.
+	 */
+	public double skew() {
+		List<ShardStats> stats = shardStats();
+		long total = 0;
+		int largest = 0;
+		for (ShardStats shard : stats) {
+			total += shard.getSize();
+			largest = Math.max(largest, shard.getSize());
+		}
+		return total == 0 ? 0 : largest * (double) stats.size() / total;
+	}
+
+	/**
+	 * public int shardCount()
+	 *
+	 * Returns the number of shards.
+	 */
+	public int shardCount() {
+		return this.layout.shards.length;
+	}
+
+	/**
+	 * public int getSplits()
+	 *
+	 * Returns the number of shard splits done so far.
+	 */
+	public int getSplits() {
+		return this.splits;
+	}
+
+	/**
+	 * public int getMerges()
+	 *
+	 * Returns the number of shard merges done so far.
+	 */
+	public int getMerges() {
+		return this.merges;
+	}
+
+	// returns the shard that holds k, locked. counts the acquisition as contended if it had to wait.
+	private Shard lockShard(int k, boolean write) {
+		while (true) {
+			Layout layout = this.layout;
+			Shard shard = layout.shards[layout.indexOf(k)];
+			Lock lock = write ? shard.lock.writeLock() : shard.lock.readLock();
+			if (!lock.tryLock()) {
+				shard.contended.increment();
+				lock.lock();
+			}
+			if (!shard.retired) {
+				return shard;
+			}
+			lock.unlock(); // replaced while we waited, the new layout is already published
+		}
+	}
+
+	// read locks all shards of the current layout in key order
+	private Shard[] lockAll() {
+		while (true) {
+			Shard[] shards = this.layout.shards;
+			int locked = 0;
+			while (locked < shards.length) {
+				shards[locked].lock.readLock().lock();
+				if (shards[locked].retired) {
+					break;
+				}
+				locked++;
+			}
+			if (locked == shards.length) {
+				return shards;
+			}
+			shards[locked].lock.readLock().unlock();
+			for (int j = 0; j < locked; j++) {
+				shards[j].lock.readLock().unlock();
+			}
+		}
+	}
+
+	private static void unlockAll(Shard[] shards) {
+		for (Shard shard : shards) {
+			shard.lock.readLock().unlock();
+		}
+	}
+
+	// splits the shard of k around its median, if it is still bigger than splitThreshold
+	private void splitShard(int k) {
+		synchronized (this.reshardLock) {
+			Layout layout = this.layout;
+			int index = layout.indexOf(k);
+			Shard shard = layout.shards[index];
+			shard.lock.writeLock().lock();
+			try {
+				AVLTree tree = shard.tree;
+				if (tree.size() <= this.splitThreshold) {
+					return;
+				}
+				int pivot = tree.select(tree.size() / 2 + 1);
+				String info = tree.peek(pivot);
+				AVLTree[] parts = tree.split(pivot);
+				parts[1].insert(pivot, info);
+				this.layout = layout.replace(index, 1, new int[] {layout.lowKeys[index], pivot},
+						new Shard[] {new Shard(parts[0]), new Shard(parts[1])});
+				shard.retired = true;
+				this.splits++;
+			}
+			finally {
+				shard.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	// merges the shard of k with its smaller neighbour, if it is still small and the two together are
+	// at most half of splitThreshold (so the merged shard is not split again soon)
+	private void mergeShard(int k) {
+		synchronized (this.reshardLock) {
+			Layout layout = this.layout;
+			Shard[] shards = layout.shards;
+			if (shards.length == 1) {
+				return;
+			}
+			int index = layout.indexOf(k);
+			int left;
+			if (index == 0) {
+				left = 0;
+			}
+			else if (index == shards.length - 1) {
+				left = index - 1;
+			}
+			else {
+				// sizes read without the locks, only to pick a neighbour
+				left = shards[index - 1].tree.size() <= shards[index + 1].tree.size() ? index - 1 : index;
+			}
+			Shard smaller = shards[left];
+			Shard bigger = shards[left + 1];
+			smaller.lock.writeLock().lock();
+			bigger.lock.writeLock().lock();
+			try {
+				int own = shards[index].tree.size();
+				if (own >= this.mergeThreshold || smaller.tree.size() + bigger.tree.size() > this.splitThreshold / 2) {
+					return;
+				}
+				AVLTree merged = join(smaller.tree, bigger.tree);
+				this.layout = layout.replace(left, 2, new int[] {layout.lowKeys[left]}, new Shard[] {new Shard(merged)});
+				smaller.retired = true;
+				bigger.retired = true;
+				this.merges++;
+			}
+			finally {
+				bigger.lock.writeLock().unlock();
+				smaller.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	// joins two trees with keys(smaller) < keys(bigger), using the minimum of bigger as the middle item.
+	// returns the joined tree, which is one of the two.
+	private static AVLTree join(AVLTree smaller, AVLTree bigger) {
+		if (bigger.empty()) {
+			return smaller;
+		}
+		if (smaller.empty()) {
+			return bigger;
+		}
+		int k = bigger.select(1);
+		String info = bigger.min();
+		bigger.delete(k);
+		smaller.join(bigger.new AVLNode(k, info), bigger);
+		return smaller;
+	}
+}